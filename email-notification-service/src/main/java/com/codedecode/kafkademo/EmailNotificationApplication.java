@@ -2,8 +2,6 @@ package com.codedecode.kafkademo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
-import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
 public class EmailNotificationApplication {
@@ -11,9 +9,4 @@ public class EmailNotificationApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(EmailNotificationApplication.class, args);
 	}
-
-    @Bean
-    RestTemplate restTemplate() {
-        return new RestTemplate();
-    }
 }
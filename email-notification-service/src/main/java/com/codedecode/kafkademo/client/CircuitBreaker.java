@@ -0,0 +1,151 @@
+package com.codedecode.kafkademo.client;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/*
+* Count based circuit breaker:
+*
+* CLOSED    every call is permitted, the outcome of the last slidingWindowSize calls is kept. Once at least
+*           minimumCalls were made and failureRateThreshold percent of them failed (or took slowCallDuration
+*           or longer), the breaker opens
+* OPEN      no call is permitted, after openDuration the breaker half-opens (on the next tryAcquirePermission
+*           or through halfOpenIfDue, whichever comes first)
+* HALF_OPEN halfOpenProbes calls are permitted, the breaker closes when all of them succeed
+*           and opens again at the first failed one
+* */
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier nanoTime;
+    private final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+
+    // all fields below are guarded by this
+    private final boolean[] failedCalls;
+    private int nextCall;
+    private int recordedCalls;
+    private int recordedFailures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int permittedProbes;
+    private int succeededProbes;
+
+    CircuitBreaker(int failureRateThreshold, int slidingWindowSize, int minimumCalls, Duration slowCallDuration,
+                   Duration openDuration, int halfOpenProbes, LongSupplier nanoTime) {
+        if (slidingWindowSize < 1 || minimumCalls < 1 || minimumCalls > slidingWindowSize || halfOpenProbes < 1) {
+            throw new IllegalArgumentException("slidingWindowSize >= minimumCalls >= 1 and halfOpenProbes >= 1 are required");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.failedCalls = new boolean[slidingWindowSize];
+        this.minimumCalls = minimumCalls;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenProbes = halfOpenProbes;
+        this.nanoTime = nanoTime;
+    }
+
+    /*
+    * Listeners are called after the transition, outside of the breaker's lock
+    * */
+    void onStateChange(Consumer<State> listener) {
+        listeners.add(listener);
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    boolean tryAcquirePermission() {
+        boolean permitted;
+        State transition = null;
+        synchronized (this) {
+            if (state == State.OPEN && nanoTime.getAsLong() - openedAt >= openNanos) {
+                transition = halfOpen();
+            }
+            if (state == State.HALF_OPEN) {
+                permitted = permittedProbes < halfOpenProbes;
+                if (permitted) {
+                    permittedProbes++;
+                }
+            } else {
+                permitted = state == State.CLOSED;
+            }
+        }
+        notifyListeners(transition);
+        return permitted;
+    }
+
+    void onResult(long durationNanos, boolean failed) {
+        boolean failedOrSlow = failed || durationNanos >= slowCallNanos;
+        State transition = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                if (failedOrSlow) {
+                    transition = open();
+                } else if (++succeededProbes >= halfOpenProbes) {
+                    transition = close();
+                }
+            } else if (state == State.CLOSED) {
+                if (recordedCalls == failedCalls.length) {
+                    recordedFailures -= failedCalls[nextCall] ? 1 : 0;
+                } else {
+                    recordedCalls++;
+                }
+                failedCalls[nextCall] = failedOrSlow;
+                recordedFailures += failedOrSlow ? 1 : 0;
+                nextCall = (nextCall + 1) % failedCalls.length;
+                if (recordedCalls >= minimumCalls && recordedFailures * 100L >= (long) failureRateThreshold * recordedCalls) {
+                    transition = open();
+                }
+            }
+            // results of calls that were made before the breaker opened are ignored
+        }
+        notifyListeners(transition);
+    }
+
+    void halfOpenIfDue() {
+        State transition = null;
+        synchronized (this) {
+            if (state == State.OPEN && nanoTime.getAsLong() - openedAt >= openNanos) {
+                transition = halfOpen();
+            }
+        }
+        notifyListeners(transition);
+    }
+
+    private State open() {
+        state = State.OPEN;
+        openedAt = nanoTime.getAsLong();
+        return state;
+    }
+
+    private State halfOpen() {
+        state = State.HALF_OPEN;
+        permittedProbes = 0;
+        succeededProbes = 0;
+        return state;
+    }
+
+    private State close() {
+        state = State.CLOSED;
+        nextCall = 0;
+        recordedCalls = 0;
+        recordedFailures = 0;
+        return state;
+    }
+
+    private void notifyListeners(State transition) {
+        if (transition != null) {
+            listeners.forEach(listener -> listener.accept(transition));
+        }
+    }
+}
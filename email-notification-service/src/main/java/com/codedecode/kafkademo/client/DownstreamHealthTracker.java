@@ -0,0 +1,120 @@
+package com.codedecode.kafkademo.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Keeps track of the remote microservice's health with a CircuitBreaker around every NotificationClient call.
+*
+* Without it a degraded service is still called for every record: each failure blocks the consumer thread in
+* DefaultErrorHandler's back off, up to 15s per record. Here, once the breaker opens, all listener containers
+* pause their partitions and no record is polled until the breaker half-opens after open-duration. The containers
+* are then resumed, the first records are the probes: if they succeed the breaker closes, if one fails the
+* containers are paused again. Records rejected in the meantime fail with DownstreamUnavailableException,
+* which KafkaConsumerConfig redelivers without counting them as failed attempts.
+*
+* notification.circuit.breaker.state{state=closed|open|half_open} is 1 for the current state,
+* notification.circuit.breaker.paused.partitions counts the assigned partitions of the paused containers
+* */
+@Component
+public class DownstreamHealthTracker implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(DownstreamHealthTracker.class);
+
+    private final CircuitBreaker circuitBreaker;
+    private KafkaListenerEndpointRegistry listenerEndpointRegistry;
+    private final Duration openDuration;
+    private final ScheduledExecutorService halfOpenScheduler;
+    private final Counter rejectedCalls;
+
+    public DownstreamHealthTracker(KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${notification.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                                   @Value("${notification.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+                                   @Value("${notification.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                   @Value("${notification.circuit-breaker.slow-call-duration:2s}") Duration slowCallDuration,
+                                   @Value("${notification.circuit-breaker.open-duration:30s}") Duration openDuration,
+                                   @Value("${notification.circuit-breaker.half-open-probes:3}") int halfOpenProbes) {
+        this.listenerEndpointRegistry = listenerEndpointRegistry;
+        this.openDuration = openDuration;
+        this.circuitBreaker = new CircuitBreaker(failureRateThreshold, slidingWindowSize, minimumCalls,
+                slowCallDuration, openDuration, halfOpenProbes, System::nanoTime);
+        this.halfOpenScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notification-circuit-breaker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        circuitBreaker.onStateChange(this::onStateChange);
+
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("notification.circuit.breaker.state", circuitBreaker, breaker -> breaker.state() == state ? 1 : 0)
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .description("1 for the current state of the remote microservice's circuit breaker")
+                    .register(meterRegistry);
+        }
+        Gauge.builder("notification.circuit.breaker.paused.partitions", this, DownstreamHealthTracker::pausedPartitions)
+                .description("assigned partitions of the listener containers paused by the circuit breaker")
+                .register(meterRegistry);
+        this.rejectedCalls = Counter.builder("notification.circuit.breaker.rejected.calls")
+                .description("calls to the remote microservice not made because the circuit breaker was open")
+                .register(meterRegistry);
+    }
+
+    public boolean tryAcquirePermission() {
+        boolean permitted = circuitBreaker.tryAcquirePermission();
+        if (!permitted) {
+            rejectedCalls.increment();
+        }
+        return permitted;
+    }
+
+    /*
+    * failed: the service could not be reached or answered with a 5xx, a slow call counts as failed as well
+    * */
+    public void onResult(long durationNanos, boolean failed) {
+        circuitBreaker.onResult(durationNanos, failed);
+    }
+
+    private void onStateChange(CircuitBreaker.State state) {
+        switch (state) {
+            case OPEN -> {
+                logger.warn("**** Remote microservice is unhealthy, pausing the listener containers for {} ****", openDuration);
+                listenerEndpointRegistry.getListenerContainers().forEach(MessageListenerContainer::pause);
+                halfOpenScheduler.schedule(circuitBreaker::halfOpenIfDue, openDuration.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            case HALF_OPEN -> {
+                logger.info("**** Probing the remote microservice, resuming the listener containers ****");
+                listenerEndpointRegistry.getListenerContainers().forEach(MessageListenerContainer::resume);
+            }
+            case CLOSED -> logger.info("**** Remote microservice is healthy again ****");
+        }
+    }
+
+    private double pausedPartitions() {
+        int pausedPartitions = 0;
+        for (MessageListenerContainer container : listenerEndpointRegistry.getListenerContainers()) {
+            if (container.isPauseRequested() && container.getAssignedPartitions() != null) {
+                pausedPartitions += container.getAssignedPartitions().size();
+            }
+        }
+        return pausedPartitions;
+    }
+
+    @Override
+    public void destroy() {
+        halfOpenScheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,133 @@
+package com.codedecode.kafkademo.client;
+
+import com.codedecode.kafkademo.error.DownstreamUnavailableException;
+import com.codedecode.kafkademo.error.NotRetryableException;
+import com.codedecode.kafkademo.error.RetryableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/*
+* The remote call made for every new product created event, shared by all listener modes.
+* Failures are translated into the exceptions DefaultErrorHandler classifies:
+* an unreachable service is retried, everything else goes to the DLT.
+* Unreachable, 5xx and slow calls are reported to DownstreamHealthTracker, which stops the calls while they pile up
+* */
+@Component
+public class NotificationClient {
+    private final Logger logger = LoggerFactory.getLogger(NotificationClient.class);
+    private RestTemplate restTemplate;
+    private HttpClient httpClient;
+    private DownstreamHealthTracker downstreamHealthTracker;
+    private final String requestUrl;
+    private final Duration requestTimeout;
+
+    public NotificationClient(RestTemplate restTemplate,
+                              HttpClient notificationHttpClient,
+                              DownstreamHealthTracker downstreamHealthTracker,
+                              @Value("${notification.client.url:http://localhost:5053/response/200}") String requestUrl,
+                              @Value("${notification.client.request-timeout:5s}") Duration requestTimeout) {
+        this.restTemplate = restTemplate;
+        this.httpClient = notificationHttpClient;
+        this.downstreamHealthTracker = downstreamHealthTracker;
+        this.requestUrl = requestUrl;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public void notifyProductCreated() {
+        acquirePermission();
+        long start = System.nanoTime();
+        boolean downstreamFailure = false;
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(requestUrl, HttpMethod.GET, null, String.class);
+
+            if (response.getStatusCode().value() == HttpStatus.OK.value()) {
+                logger.info("received response from remote microservice");
+            }
+        }catch (ResourceAccessException e){
+            downstreamFailure = true;
+            logger.error("Unable to access remote microservice");
+            throw new RetryableException(e);
+        }catch (HttpServerErrorException e ){
+            downstreamFailure = true;
+            logger.error(e.getMessage());
+            throw new NotRetryableException(e);
+        }catch(Exception e){
+            logger.error(e.getMessage());
+            throw new NotRetryableException(e);
+        }finally {
+            downstreamHealthTracker.onResult(System.nanoTime() - start, downstreamFailure);
+        }
+    }
+
+    /*
+    * Same call without blocking the caller, so one thread can keep many of them in flight.
+    * The future fails with the same exceptions as notifyProductCreated: RestTemplate reports an I/O error
+    * (connect failure, timeout) as ResourceAccessException -> RetryableException, a 5xx response as
+    * HttpServerErrorException -> NotRetryableException and any other failure as NotRetryableException
+    * */
+    public CompletableFuture<Void> notifyProductCreatedAsync() {
+        try {
+            acquirePermission();
+        } catch (DownstreamUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(requestUrl))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, exception) -> {
+                    downstreamHealthTracker.onResult(System.nanoTime() - start, exception != null
+                            ? exception instanceof IOException || exception.getCause() instanceof IOException
+                            : response.statusCode() >= 500);
+                    if (exception != null) {
+                        throw translate(exception instanceof CompletionException ? exception.getCause() : exception);
+                    }
+                    HttpStatus status = HttpStatus.resolve(response.statusCode());
+                    if (status == HttpStatus.OK) {
+                        logger.info("received response from remote microservice");
+                    } else if (status == null || !status.is2xxSuccessful()) {
+                        logger.error("{} response from remote microservice", response.statusCode());
+                        throw new NotRetryableException(new IllegalStateException(
+                                response.statusCode() + " response from " + requestUrl));
+                    }
+                    return null;
+                });
+    }
+
+    /*
+    * While the circuit breaker is open the remote microservice is not called at all
+    * */
+    private void acquirePermission() {
+        if (!downstreamHealthTracker.tryAcquirePermission()) {
+            throw new DownstreamUnavailableException("Circuit breaker of the remote microservice is open");
+        }
+    }
+
+    private RuntimeException translate(Throwable exception) {
+        if (exception instanceof IOException) {
+            logger.error("Unable to access remote microservice");
+            return new RetryableException(exception);
+        }
+        logger.error(exception.getMessage());
+        return new NotRetryableException(exception);
+    }
+}
@@ -0,0 +1,75 @@
+package com.codedecode.kafkademo.codec;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/*
+* Value deserializer for product-created-events-topic, wrapped by ErrorHandlingDeserializer so that
+* a payload that cannot be decoded still ends up in the DLT instead of blocking the partition.
+*
+* VALUE_FORMAT_CONFIG
+*   json   -> JacksonJsonDeserializer only, the format every producer used so far
+*   binary -> ProductCreatedEventCodec only
+*   auto   -> migration mode, records carrying the valueFormat header are decoded with ProductCreatedEventCodec,
+*             everything else goes to JacksonJsonDeserializer
+* */
+public class ProductCreatedEventFormatDeserializer implements Deserializer<Object> {
+
+    public static final String VALUE_FORMAT_CONFIG = "product-created-event.value-format";
+
+    private static final byte[] BINARY_FORMAT = ProductCreatedEventCodec.BINARY_FORMAT.getBytes(StandardCharsets.UTF_8);
+
+    private final JacksonJsonDeserializer<Object> jsonDeserializer = new JacksonJsonDeserializer<>();
+
+    private String valueFormat = "auto";
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object configured = configs.get(VALUE_FORMAT_CONFIG);
+        if (configured != null) {
+            valueFormat = configured.toString().trim().toLowerCase();
+        }
+        if (!"json".equals(valueFormat) && !"binary".equals(valueFormat) && !"auto".equals(valueFormat)) {
+            throw new IllegalArgumentException("Unknown " + VALUE_FORMAT_CONFIG + ": " + valueFormat);
+        }
+        jsonDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if ("binary".equals(valueFormat)) {
+            return ProductCreatedEventCodec.decode(data);
+        }
+        return jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if ("binary".equals(valueFormat) || ("auto".equals(valueFormat) && isBinary(headers))) {
+            return ProductCreatedEventCodec.decode(data);
+        }
+        return jsonDeserializer.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+
+    private static boolean isBinary(Headers headers) {
+        Header format = headers.lastHeader(ProductCreatedEventCodec.FORMAT_HEADER);
+        return format != null && Arrays.equals(BINARY_FORMAT, format.value());
+    }
+}
@@ -1,19 +1,31 @@
 package com.codedecode.kafkademo.config;
 
+import com.codedecode.kafkademo.codec.ProductCreatedEventFormatDeserializer;
+import com.codedecode.kafkademo.dedup.DuplicateRecordFilter;
+import com.codedecode.kafkademo.error.DownstreamUnavailableException;
 import com.codedecode.kafkademo.error.NotRetryableException;
 import com.codedecode.kafkademo.error.RetryableException;
+import com.codedecode.kafkademo.handler.ProductCreatedEventParallelHandler;
+import com.codedecode.kafkademo.idempotency.IdempotencyStore;
 import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
 
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
@@ -21,6 +33,8 @@ import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
 import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
 import org.springframework.util.backoff.FixedBackOff;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -29,6 +43,7 @@ import java.util.Map;
 * */
 
 @Configuration
+@EnableKafka //registers the @KafkaListener methods and the KafkaListenerEndpointRegistry of their containers
 public class KafkaConsumerConfig {
 
  /*   @Value("${spring.kafka.consumer.bootstrap-servers}")
@@ -50,35 +65,106 @@ public class KafkaConsumerConfig {
     Environment environment;
 
     @Bean
-    ConsumerFactory<String, Object> createConsumerFactory() {
+    ConsumerFactory<String, Object> createConsumerFactory(ObjectProvider<DuplicateRecordFilter> duplicateRecordFilter) {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, environment.getProperty("spring.kafka.consumer.bootstrap-servers"));
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
       //  config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
         //Below 2 lines are needed to handle Deserialization error by Kafka Consumer gracefully
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
-        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JacksonJsonDeserializer.class);
+        //JSON and the compact binary format, picked per record, see ProductCreatedEventFormatDeserializer
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, ProductCreatedEventFormatDeserializer.class);
+        config.put(ProductCreatedEventFormatDeserializer.VALUE_FORMAT_CONFIG,
+                environment.getProperty("product-created-event.value-format", "auto"));
         config.put(ConsumerConfig.GROUP_ID_CONFIG,"product-created-events");
         config.put(JacksonJsonDeserializer.TRUSTED_PACKAGES,environment.getProperty("spring.kafka.consumer.properties.spring.json.trusted.packages"));
         config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG,environment.getProperty("spring.kafka.consumer.auto-offset-reset"));
-        return new DefaultKafkaConsumerFactory<>(config);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG,environment.getProperty("spring.kafka.consumer.max-poll-records", "500"));
+        DefaultKafkaConsumerFactory<String, Object> consumerFactory = new DefaultKafkaConsumerFactory<>(config);
+        // known duplicates are recognised by their messageId header before the payload is parsed, see DuplicateRecordFilter.
+        // An instance per consumer, configured with the config above like the class names would be
+        duplicateRecordFilter.ifAvailable(filter -> consumerFactory.setValueDeserializerSupplier(
+                () -> new ErrorHandlingDeserializer<>(filter.wrap(new ProductCreatedEventFormatDeserializer()))));
+        return consumerFactory;
     }
 
     @Bean
     ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
             ConsumerFactory<String, Object> consumerFactory,
-            KafkaTemplate<String, Object> kafkaTemplate) {
+            DeadLetterPublishingRecoverer deadLetterPublishingRecoverer,
+            IdempotencyStore idempotencyStore,
+            ObjectProvider<ProductCreatedEventParallelHandler> parallelHandler,
+            ObjectProvider<DuplicateRecordFilter> duplicateRecordFilter) {
+        // retries in place, blocking the partition. In record mode RetryTopicConfig replaces it with retry topics
         DefaultErrorHandler errorHandler = new DefaultErrorHandler(
-                new DeadLetterPublishingRecoverer(kafkaTemplate)
+                deadLetterPublishingRecoverer
         , new FixedBackOff(5000,3));
         errorHandler.addNotRetryableExceptions(NotRetryableException.class);
         errorHandler.addRetryableExceptions(RetryableException.class);
+        /*
+        * A record rejected by the open circuit breaker was never tried, it is redelivered until the remote
+        * microservice is back instead of using up its attempts and ending up on the DLT. The listener containers
+        * are paused meanwhile (DownstreamHealthTracker), so this does not spin on the same record
+        * */
+        Duration rejectedBackOff = environment.getProperty("notification.circuit-breaker.rejected-back-off", Duration.class, Duration.ofSeconds(1));
+        errorHandler.setBackOffFunction((record, exception) -> DownstreamUnavailableException.isCauseOf(exception)
+                ? new FixedBackOff(rejectedBackOff.toMillis(), FixedBackOff.UNLIMITED_ATTEMPTS) : null);
+        errorHandler.setResetStateOnExceptionChange(true);
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
         factory.setCommonErrorHandler(errorHandler);
+        // the records DuplicateRecordFilter marked while deserializing never reach the listener, their offsets are committed
+        duplicateRecordFilter.ifAvailable(filter -> {
+            factory.setRecordFilterStrategy(filter);
+            factory.setAckDiscarded(true);
+        });
+        // consumers per listener at startup, ListenerConcurrencyAutoscaler changes it at runtime when enabled
+        factory.setConcurrency(environment.getProperty("product-created-event.listener.concurrency", Integer.class, 1));
+        /*
+        * A partition assigned to this instance may have been consumed by another instance until now,
+        * the idempotency store catches up with the messageIds processed there before the first record is polled
+        * */
+        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                if (!partitions.isEmpty()) {
+                    idempotencyStore.refresh();
+                }
+            }
+
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                parallelHandler.ifAvailable(handler -> handler.awaitRevoked(partitions));
+            }
+        });
+        /*
+        * ProductCreatedEventParallelHandler acknowledges records from its own threads and out of order,
+        * with asyncAcks the container commits only up to the lowest offset not acknowledged yet
+        * */
+        if ("parallel".equals(environment.getProperty("product-created-event.listener.mode"))) {
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            factory.getContainerProperties().setAsyncAcks(true);
+        }
+        // lets benchmarks and tooling load the context without connecting to a broker
+        factory.setAutoStartup(environment.getProperty("spring.kafka.listener.auto-startup", Boolean.class, true));
+        /*
+        * spring.threads.virtual.enabled only switches the listener containers Spring Boot builds itself,
+        * this factory is our own so the consumer threads are switched here.
+        * ProductCreatedEventHandler blocks on RestTemplate and JPA, which is exactly what virtual threads are cheap for
+        * */
+        if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            SimpleAsyncTaskExecutor listenerTaskExecutor = new SimpleAsyncTaskExecutor("product-created-events-");
+            listenerTaskExecutor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(listenerTaskExecutor);
+        }
         return factory;
     }
 
+    @Bean
+    DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, Object> kafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(kafkaTemplate);
+    }
+
     @Bean
     ProducerFactory<String, Object> createProducerFactory() {
         Map<String, Object> config = new HashMap<>();
@@ -0,0 +1,55 @@
+package com.codedecode.kafkademo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/*
+* One java.net.http.HttpClient is shared by every call to the remote microservice: the blocking RestTemplate calls
+* of the record and parallel listeners and the async calls of NotificationClient.notifyProductCreatedAsync.
+* The client keeps idle connections open and reuses them (keep-alive pool), with HTTP_2 it upgrades to HTTP/2
+* when the remote side supports it and multiplexes the requests over one connection, otherwise it stays on HTTP/1.1.
+* */
+@Configuration
+public class NotificationClientConfig {
+
+    /*
+    * The JDK reads its connection pool settings from system properties once, when the first client is created,
+    * they are only set here if they were not passed on the command line
+    * */
+    @Bean
+    HttpClient notificationHttpClient(@Value("${notification.client.http-version:HTTP_2}") HttpClient.Version httpVersion,
+                                      @Value("${notification.client.connect-timeout:2s}") Duration connectTimeout,
+                                      @Value("${notification.client.keep-alive:30s}") Duration keepAlive,
+                                      @Value("${notification.client.max-connections:0}") int maxConnections) {
+        setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(keepAlive.toSeconds()));
+        setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(maxConnections));
+        return HttpClient.newBuilder()
+                .version(httpVersion)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /*
+    * Before this the RestTemplate opened a new connection for every call and had no timeouts at all
+    * */
+    @Bean
+    RestTemplate restTemplate(HttpClient notificationHttpClient,
+                              @Value("${notification.client.request-timeout:5s}") Duration requestTimeout) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(notificationHttpClient);
+        requestFactory.setReadTimeout(requestTimeout);
+        return new RestTemplate(requestFactory);
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.codedecode.kafkademo.config;
+
+import com.codedecode.kafkademo.error.DownstreamUnavailableException;
+import com.codedecode.kafkademo.error.NotRetryableException;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationSupport;
+import org.springframework.kafka.retrytopic.RetryTopicSchedulerWrapper;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.time.Duration;
+import java.util.Map;
+
+/*
+* Non-blocking retries for ProductCreatedEventHandler (record mode only, batch listeners cannot use retry topics
+* and the parallel handler retries inside its lanes). Instead of retrying a failed record in place, which stops
+* its whole partition, the record is forwarded to the next retry topic and the main topic goes on:
+*
+*   product-created-events-topic -> -retry-5000 -> -retry-30000 -> -retry-180000 -> -retry-300000 -> .DLT
+*
+* Each retry topic has its own listener container. A record that is not due yet pauses the container's partition
+* until it is (KafkaConsumerBackoffManager), nothing sleeps per record. NotRetryableException and deserialization
+* failures go to the DLT directly. The DLT keeps the name DeadLetterPublishingRecoverer gives it in the other modes,
+* product-created-events-topic.DLT, instead of the retry topic default -dlt.
+*
+* Headers added on the way: retry_topic-attempts (number of the next attempt), retry_topic-backoff-timestamp (when the record is due),
+* retry_topic-original-timestamp, and kafka_original-topic/-partition/-offset, the position of the record
+* on the main topic, plus kafka_exception-* describing the last failure
+* */
+@Configuration
+@ConditionalOnProperty(name = "product-created-event.listener.mode", havingValue = "record", matchIfMissing = true)
+@ConditionalOnProperty(name = "product-created-event.retry.mode", havingValue = "topics", matchIfMissing = true)
+public class RetryTopicConfig extends RetryTopicConfigurationSupport {
+
+    @Autowired
+    Environment environment;
+
+    @Bean
+    RetryTopicConfiguration productCreatedEventRetryTopics(KafkaTemplate<String, Object> kafkaTemplate) {
+        return RetryTopicConfigurationBuilder.newInstance()
+                .includeTopic("product-created-events-topic")
+                .maxAttempts(environment.getProperty("product-created-event.retry.max-attempts", Integer.class, 5))
+                .exponentialBackoff(
+                        environment.getProperty("product-created-event.retry.initial-interval", Duration.class, Duration.ofSeconds(5)).toMillis(),
+                        environment.getProperty("product-created-event.retry.multiplier", Double.class, 6.0),
+                        environment.getProperty("product-created-event.retry.max-interval", Duration.class, Duration.ofMinutes(5)).toMillis())
+                .dltSuffix(".DLT")
+                .notRetryOn(NotRetryableException.class)
+                .traversingCauses()
+                // same layout as product-created-events-topic, see KafkaProducerConfig in product-service
+                .autoCreateTopicsWith(3, environment.getProperty("product-created-event.retry.replicas", Short.class, (short) 3))
+                .listenerFactory("kafkaListenerContainerFactory")
+                .create(kafkaTemplate);
+    }
+
+    /*
+    * Creates the retry topics and the DLT, Spring Boot 4 does not configure a KafkaAdmin without its Kafka module
+    * */
+    @Bean
+    KafkaAdmin kafkaAdmin() {
+        KafkaAdmin kafkaAdmin = new KafkaAdmin(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+                environment.getProperty("spring.kafka.consumer.bootstrap-servers")));
+        kafkaAdmin.setOperationTimeout((int) environment.getProperty("product-created-event.retry.admin-timeout",
+                Duration.class, Duration.ofSeconds(30)).toSeconds());
+        kafkaAdmin.setAutoCreate(false);
+        return kafkaAdmin;
+    }
+
+    /*
+    * In the background, a broker that cannot be reached would otherwise hold up the startup for admin-timeout.
+    * The retry containers pick up their topics as soon as they exist
+    * */
+    @EventListener(ApplicationReadyEvent.class)
+    void createRetryTopics(ApplicationReadyEvent event) {
+        KafkaAdmin kafkaAdmin = event.getApplicationContext().getBean(KafkaAdmin.class);
+        Thread thread = new Thread(kafkaAdmin::initialize, "product-created-events-retry-topics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+    * Resumes the partitions paused until their next record is due
+    * */
+    @Bean
+    RetryTopicSchedulerWrapper retryTopicSchedulerWrapper() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadNamePrefix("product-created-events-retry-");
+        scheduler.initialize();
+        return new RetryTopicSchedulerWrapper(scheduler);
+    }
+
+    /*
+    * A record rejected by the open circuit breaker stays where it is (see KafkaConsumerConfig), forwarding it would
+    * use up an attempt for a call that was never made. Only the first forwarding records the original position,
+    * so kafka_original-offset always points at the main topic
+    * */
+    @Override
+    protected void configureCustomizers(CustomizersConfigurer customizersConfigurer) {
+        Duration rejectedBackOff = environment.getProperty("notification.circuit-breaker.rejected-back-off", Duration.class, Duration.ofSeconds(1));
+        customizersConfigurer
+                .customizeErrorHandler(errorHandler -> errorHandler.setBackOffFunction((record, exception) ->
+                        DownstreamUnavailableException.isCauseOf(exception)
+                                ? new FixedBackOff(rejectedBackOff.toMillis(), FixedBackOff.UNLIMITED_ATTEMPTS) : null))
+                .customizeDeadLetterPublishingRecoverer(recoverer -> recoverer.setAppendOriginalHeaders(false));
+    }
+}
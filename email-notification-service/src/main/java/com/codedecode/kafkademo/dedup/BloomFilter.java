@@ -0,0 +1,95 @@
+package com.codedecode.kafkademo.dedup;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+* Lock free Bloom filter for messageIds. mightContain() == false means the id was never added,
+* true means it probably was (false positive rate as configured until expectedInsertions is exceeded).
+* Bits are only ever set, so readers on other threads see an id at the latest once put() returned.
+* */
+class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder insertions = new LongAdder();
+
+    BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        long optimalBits = (long) (-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    void put(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        boolean changed = false;
+        for (int i = 1; i <= hashCount; i++) {
+            changed |= setBit(index(hash1 + (long) i * hash2));
+        }
+        // ids added again (e.g. re-read during a catch up) do not count, the count drives the fill ratio
+        if (changed) {
+            insertions.increment();
+        }
+    }
+
+    boolean mightContain(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(hash1 + (long) i * hash2);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long insertions() {
+        return insertions.sum();
+    }
+
+    long bitCount() {
+        return bitCount;
+    }
+
+    private long index(long combinedHash) {
+        // Kirsch-Mitzenmacher: k indexes out of two 32 bit hashes
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    private boolean setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do {
+            current = bits.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!bits.compareAndSet(word, current, current | mask));
+        return true;
+    }
+
+    /*
+    * FNV-1a over the chars followed by the murmur3 finalizer, String.hashCode() alone is too weak for two hashes
+    * */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53b5d4fL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,95 @@
+package com.codedecode.kafkademo.dedup;
+
+import com.codedecode.kafkademo.idempotency.IdempotencyStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/*
+* Drops redelivered product created events before their payload is parsed, enabled with
+* product-created-event.duplicate-filter.enabled (default true).
+*
+* The value is deserialized by the consumer inside poll(), before the listener container sees the record, so the
+* check sits in the value deserializer (wrap): a record whose messageId header the IdempotencyStore already knows
+* gets the SKIPPED_DUPLICATE marker instead of a parsed ProductCreatedEvent. As the container's RecordFilterStrategy
+* this class then discards those records, with ackDiscarded their offsets are committed like handled ones.
+*
+* A duplicate of a record in the same poll is not known yet when both are deserialized, the handlers keep their
+* own check for it.
+* product.created.event.duplicates.skipped counts the records dropped here
+* */
+@Component
+@ConditionalOnProperty(name = "product-created-event.duplicate-filter.enabled", havingValue = "true", matchIfMissing = true)
+public class DuplicateRecordFilter implements RecordFilterStrategy<String, Object> {
+
+    public static final Object SKIPPED_DUPLICATE = new Object() {
+        @Override
+        public String toString() {
+            return "skipped duplicate";
+        }
+    };
+
+    private final IdempotencyStore idempotencyStore;
+    private final Counter skipped;
+
+    public DuplicateRecordFilter(IdempotencyStore idempotencyStore, MeterRegistry meterRegistry) {
+        this.idempotencyStore = idempotencyStore;
+        this.skipped = Counter.builder("product.created.event.duplicates.skipped")
+                .description("redelivered product created events dropped by their messageId header, before the payload was parsed")
+                .register(meterRegistry);
+    }
+
+    /*
+    * The value deserializer of the consumer factory, delegate parses the records that are not known duplicates
+    * */
+    public Deserializer<Object> wrap(Deserializer<Object> delegate) {
+        return new Deserializer<>() {
+            @Override
+            public void configure(Map<String, ?> configs, boolean isKey) {
+                delegate.configure(configs, isKey);
+            }
+
+            @Override
+            public Object deserialize(String topic, byte[] data) {
+                return delegate.deserialize(topic, data);
+            }
+
+            @Override
+            public Object deserialize(String topic, Headers headers, byte[] data) {
+                if (data != null && isDuplicate(headers)) {
+                    return SKIPPED_DUPLICATE;
+                }
+                return delegate.deserialize(topic, headers, data);
+            }
+
+            @Override
+            public void close() {
+                delegate.close();
+            }
+        };
+    }
+
+    @Override
+    public boolean filter(ConsumerRecord<String, Object> consumerRecord) {
+        if (consumerRecord.value() == SKIPPED_DUPLICATE) {
+            skipped.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isDuplicate(Headers headers) {
+        Header messageId = headers.lastHeader("messageId");
+        // a record without messageId is left to the handler, it rejects it
+        return messageId != null && idempotencyStore.isProcessed(new String(messageId.value(), StandardCharsets.UTF_8));
+    }
+}
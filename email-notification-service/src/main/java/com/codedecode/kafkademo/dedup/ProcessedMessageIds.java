@@ -0,0 +1,220 @@
+package com.codedecode.kafkademo.dedup;
+
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import com.codedecode.kafkademo.repo.ProcessedEventRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* In-memory answer to "was this messageId processed before?" in front of ProcessedEventRepository.
+*
+* - a Bloom filter of every messageId in the processed-events table answers the common case, a new message,
+*   without a query: if the filter does not contain the id, no row with it exists
+* - a size and time bounded Caffeine cache of recently processed ids answers redeliveries without a query
+* - everything else (filter false positives, older duplicates) is looked up in the database as before
+*
+* The whole table is read into the filter once, on a thread of its own after startup (load()): on a large table
+* that takes longer than max.poll.interval.ms, on the consumer thread it would end in the rebalance loop the catch up
+* is there to avoid. Until the load is done the filter is not used, every lookup asks the database.
+* Rows written by other consumers of the group never pass through this instance, so the filter is brought
+* up to date from the table before records of newly assigned partitions are consumed (JpaIdempotencyStore.refresh),
+* reading only the rows written since the last catch up. An assignment while the load runs leaves that to the load.
+* The unique messageId column stays the last line of defence.
+* */
+@Component
+@ConditionalOnProperty(name = "product-created-event.idempotency-store.type", havingValue = "jpa", matchIfMissing = true)
+public class ProcessedMessageIds {
+    private final Logger logger = LoggerFactory.getLogger(ProcessedMessageIds.class);
+
+    private static final String METRIC_NAME = "processed.message.ids.lookups";
+
+    private static final int LOADING = 0;
+    private static final int LOADING_CATCH_UP_REQUESTED = 1;
+    private static final int CAUGHT_UP = 2;
+
+    private final ProcessedEventRepository processedEventRepository;
+    private final Cache<String, Boolean> recentlyProcessed;
+    private final BloomFilter knownMessageIds;
+    private final long catchUpOverlap;
+
+    private final Counter filterNegatives;
+    private final Counter databaseHits;
+    private final Counter databaseMisses;
+
+    // LOADING until load() read the table, the filter is used once CAUGHT_UP
+    private final AtomicInteger state = new AtomicInteger(LOADING);
+    // highest processed-events id read by load() and catchUp(), guarded by this
+    private long highWaterMark;
+
+    public ProcessedMessageIds(ProcessedEventRepository processedEventRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${product-created-event.dedup-cache.maximum-size:100000}") long maximumSize,
+                               @Value("${product-created-event.dedup-cache.expire-after-write:1h}") Duration expireAfterWrite,
+                               @Value("${product-created-event.dedup-cache.expected-insertions:1000000}") long expectedInsertions,
+                               @Value("${product-created-event.dedup-cache.false-positive-probability:0.01}") double falsePositiveProbability,
+                               @Value("${product-created-event.dedup-cache.catch-up-overlap:1000}") long catchUpOverlap) {
+        this.processedEventRepository = processedEventRepository;
+        this.recentlyProcessed = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.knownMessageIds = new BloomFilter(expectedInsertions, falsePositiveProbability);
+        this.catchUpOverlap = catchUpOverlap;
+
+        // cache_gets{result=hit|miss}, cache_evictions, cache_size ... tagged cache=processed-message-ids
+        CaffeineCacheMetrics.monitor(meterRegistry, recentlyProcessed, "processed-message-ids");
+        this.filterNegatives = Counter.builder(METRIC_NAME).tag("result", "filter-negative")
+                .description("messageIds known to be new without a database query").register(meterRegistry);
+        this.databaseHits = Counter.builder(METRIC_NAME).tag("result", "database-hit")
+                .description("messageIds found in the database").register(meterRegistry);
+        this.databaseMisses = Counter.builder(METRIC_NAME).tag("result", "database-miss")
+                .description("messageIds looked up in the database but not found, Bloom filter false positives").register(meterRegistry);
+        Gauge.builder("processed.message.ids.filter.insertions", knownMessageIds, BloomFilter::insertions)
+                .description("messageIds in the Bloom filter, the false positive rate grows once expected-insertions is exceeded")
+                .register(meterRegistry);
+    }
+
+    public boolean isProcessed(String messageId) {
+        if (state.get() == CAUGHT_UP && !knownMessageIds.mightContain(messageId)) {
+            filterNegatives.increment();
+            return false;
+        }
+        if (recentlyProcessed.getIfPresent(messageId) != null) {
+            return true;
+        }
+        ProcessedEventEntity existingProcessedEventEntity = processedEventRepository.findByMessageId(messageId);
+        if (existingProcessedEventEntity == null) {
+            databaseMisses.increment();
+            return false;
+        }
+        databaseHits.increment();
+        recentlyProcessed.put(messageId, Boolean.TRUE);
+        return true;
+    }
+
+    /*
+    * Batch form of isProcessed, the ids that cannot be answered in memory are looked up with a single query
+    * */
+    public Set<String> findProcessed(Collection<String> messageIds) {
+        Set<String> processed = new HashSet<>();
+        List<String> unknown = new ArrayList<>();
+        for (String messageId : messageIds) {
+            if (state.get() == CAUGHT_UP && !knownMessageIds.mightContain(messageId)) {
+                filterNegatives.increment();
+            } else if (recentlyProcessed.getIfPresent(messageId) != null) {
+                processed.add(messageId);
+            } else {
+                unknown.add(messageId);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            List<String> found = processedEventRepository.findProcessedMessageIds(unknown);
+            for (String messageId : found) {
+                processed.add(messageId);
+                recentlyProcessed.put(messageId, Boolean.TRUE);
+            }
+            databaseHits.increment(found.size());
+            databaseMisses.increment(unknown.size() - found.size());
+        }
+        return processed;
+    }
+
+    /*
+    * Called once the processed event row was written. Inside a transaction the id is only remembered after commit,
+    * a rolled back row must not make the message look processed
+    * */
+    public void markProcessed(String messageId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(messageId);
+                }
+            });
+        } else {
+            remember(messageId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void loadInBackground() {
+        Thread loader = new Thread(() -> {
+            try {
+                load();
+            } catch (RuntimeException e) {
+                logger.error("**** Loading processed message ids failed, every lookup asks the database ****", e);
+            }
+        }, "processed-message-ids-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /*
+    * Reads the whole table into the Bloom filter and starts using it. A catch up requested meanwhile runs
+    * before that, the rows the previous owner of a partition wrote while the table was read are added as well
+    * */
+    public synchronized void load() {
+        read(0);
+        while (!state.compareAndSet(LOADING, CAUGHT_UP)) {
+            state.set(LOADING);
+            read(Math.max(0, highWaterMark - catchUpOverlap));
+        }
+    }
+
+    /*
+    * Adds the rows written since the last catch up to the Bloom filter, called on partition assignment.
+    * Identity values are handed out at insert time but become visible at commit, so the last catchUpOverlap ids
+    * before the high water mark are read again to pick up rows that committed out of order.
+    * While load() still runs the catch up is left to it, the filter is not used until then
+    * */
+    public void catchUp() {
+        if (state.compareAndSet(LOADING, LOADING_CATCH_UP_REQUESTED) || state.get() == LOADING_CATCH_UP_REQUESTED) {
+            return;
+        }
+        synchronized (this) {
+            read(Math.max(0, highWaterMark - catchUpOverlap));
+        }
+    }
+
+    private void read(long fromId) {
+        long rows = 0;
+        List<ProcessedEventEntity> page;
+        do {
+            page = processedEventRepository.findTop10000ByIdGreaterThanOrderByIdAsc(fromId);
+            for (ProcessedEventEntity processedEvent : page) {
+                knownMessageIds.put(processedEvent.getMessageId());
+                fromId = processedEvent.getId();
+            }
+            rows += page.size();
+        } while (page.size() == 10000);
+        highWaterMark = Math.max(highWaterMark, fromId);
+        logger.info("**** Processed message ids caught up, read {} rows up to id {} ****", rows, highWaterMark);
+    }
+
+    private void remember(String messageId) {
+        knownMessageIds.put(messageId);
+        recentlyProcessed.put(messageId, Boolean.TRUE);
+    }
+}
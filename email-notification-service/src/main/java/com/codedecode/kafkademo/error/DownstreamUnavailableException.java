@@ -0,0 +1,23 @@
+package com.codedecode.kafkademo.error;
+
+/*
+* Thrown instead of calling the remote microservice while its circuit breaker is open,
+* the record was not processed and has to be delivered again once the service is back
+* */
+public class DownstreamUnavailableException extends RetryableException {
+    public DownstreamUnavailableException(String message) {
+        super(message);
+    }
+
+    /*
+    * The listener exception reaching an error handler wraps the one thrown by the handler
+    * */
+    public static boolean isCauseOf(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DownstreamUnavailableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+package com.codedecode.kafkademo.handler;
+
+import com.codedecode.kafkademo.client.NotificationClient;
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import com.codedecode.kafkademo.error.NotRetryableException;
+import com.codedecode.kafkademo.idempotency.IdempotencyStore;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/*
+* Batch variant of ProductCreatedEventHandler, enabled with product-created-event.listener.mode=batch.
+* It receives every record of a poll at once: the already processed messageIds are looked up together,
+* the remote service is called for the new ones, up to notification.client.max-in-flight calls at the same time,
+* and all processed events are stored together (JpaIdempotencyStore: at most one query and one JDBC batch insert).
+* */
+@Component
+@ConditionalOnProperty(name = "product-created-event.listener.mode", havingValue = "batch")
+public class ProductCreatedEventBatchHandler {
+    private final Logger logger = LoggerFactory.getLogger(ProductCreatedEventBatchHandler.class);
+    private NotificationClient notificationClient;
+    private IdempotencyStore idempotencyStore;
+    private final int maxInFlight;
+
+    public ProductCreatedEventBatchHandler(NotificationClient notificationClient,
+                                           IdempotencyStore idempotencyStore,
+                                           @Value("${notification.client.max-in-flight:64}") int maxInFlight) {
+        this.notificationClient = notificationClient;
+        this.idempotencyStore = idempotencyStore;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /*
+    * When a record fails, the records before it are stored first and the failure is reported with
+    * BatchListenerFailedException and the failed record. DefaultErrorHandler then commits the offsets
+    * in front of it and only redelivers the failed record and the ones after it, applying the usual
+    * retry/DLT rules to the failed record alone.
+    * The record and not its index: with DuplicateRecordFilter the list here lacks the dropped duplicates,
+    * an index would point into the full poll the error handler works on
+    * */
+    @KafkaListener(topics="product-created-events-topic", batch = "true")
+    public void handle(List<ConsumerRecord<String, Object>> records) {
+        logger.info("**** Received {} product created events ****", records.size());
+
+        //check which messages of the poll were already processed before, with a single query
+        Set<String> seenMessageIds = idempotencyStore.findProcessed(messageIds(records));
+
+        List<PendingNotification> pendingNotifications = new ArrayList<>();
+        RuntimeException failure = null;
+        int failedIndex = -1;
+        for (int index = 0; index < records.size(); index++) {
+            try {
+                ConsumerRecord<String, Object> record = records.get(index);
+                ProductCreatedEvent event = productCreatedEvent(record);
+                String messageId = messageId(record);
+                // add() is false for messages processed before and for a message delivered twice in the same poll
+                if (!seenMessageIds.add(messageId)) {
+                    logger.info("**** Found existing product created event ****");
+                    continue;
+                }
+                // keeps at most maxInFlight calls open, the oldest one has to complete before the next one starts
+                if (pendingNotifications.size() >= maxInFlight) {
+                    pendingNotifications.get(pendingNotifications.size() - maxInFlight).notification()
+                            .exceptionally(exception -> null).join();
+                }
+                pendingNotifications.add(new PendingNotification(index,
+                        new ProcessedEventEntity(messageId, event.getProductId()),
+                        notificationClient.notifyProductCreatedAsync()));
+            } catch (RuntimeException e) {
+                failure = e;
+                failedIndex = index;
+                break;
+            }
+        }
+
+        /*
+        * The calls run concurrently, so records after a failed one may have been notified already.
+        * They are stored as well: the records from the failed one on are redelivered and the dedup lookup
+        * then skips the ones that already went through
+        * */
+        List<ProcessedEventEntity> newProcessedEvents = new ArrayList<>();
+        for (PendingNotification pendingNotification : pendingNotifications) {
+            try {
+                pendingNotification.notification().join();
+                newProcessedEvents.add(pendingNotification.processedEvent());
+            } catch (CompletionException e) {
+                if (failure == null || pendingNotification.index() < failedIndex) {
+                    failure = e.getCause() instanceof RuntimeException cause ? cause : e;
+                    failedIndex = pendingNotification.index();
+                }
+            }
+        }
+
+        // a failure here is not tied to a single record (with the jpa store: another consumer stored one of these
+        // messageIds in the meantime), the whole poll is retried and the dedup lookup then skips that message
+        idempotencyStore.markProcessed(newProcessedEvents);
+        logger.info("**** Stored {} processed product created events ****", newProcessedEvents.size());
+
+        if (failure != null) {
+            throw new BatchListenerFailedException(failure.getMessage(), failure, records.get(failedIndex));
+        }
+    }
+
+    private record PendingNotification(int index, ProcessedEventEntity processedEvent,
+                                       CompletableFuture<Void> notification) {
+    }
+
+    private List<String> messageIds(List<ConsumerRecord<String, Object>> records) {
+        List<String> messageIds = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, Object> record : records) {
+            Header header = record.headers().lastHeader("messageId");
+            if (header != null) {
+                messageIds.add(new String(header.value(), StandardCharsets.UTF_8));
+            }
+        }
+        return messageIds;
+    }
+
+    private String messageId(ConsumerRecord<String, Object> record) {
+        Header header = record.headers().lastHeader("messageId");
+        if (header == null) {
+            throw new NotRetryableException("Record at offset " + record.offset() + " has no messageId header");
+        }
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    /*
+    * ErrorHandlingDeserializer hands a batch listener the records it could not deserialize with a null value
+    * and the exception in a header, DeadLetterPublishingRecoverer publishes their original bytes to the DLT
+    * */
+    private ProductCreatedEvent productCreatedEvent(ConsumerRecord<String, Object> record) {
+        if (record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+            throw new NotRetryableException("Record at offset " + record.offset() + " could not be deserialized");
+        }
+        if (!(record.value() instanceof ProductCreatedEvent event)) {
+            throw new NotRetryableException("Record at offset " + record.offset() + " is not a ProductCreatedEvent");
+        }
+        return event;
+    }
+}
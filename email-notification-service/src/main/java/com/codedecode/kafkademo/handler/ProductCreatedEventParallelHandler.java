@@ -0,0 +1,247 @@
+package com.codedecode.kafkademo.handler;
+
+import com.codedecode.kafkademo.client.NotificationClient;
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import com.codedecode.kafkademo.error.DownstreamUnavailableException;
+import com.codedecode.kafkademo.error.NotRetryableException;
+import com.codedecode.kafkademo.error.RetryableException;
+import com.codedecode.kafkademo.idempotency.IdempotencyStore;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/*
+* Parallel variant of ProductCreatedEventHandler, enabled with product-created-event.listener.mode=parallel.
+* The topic has 3 partitions, so the record handler never works on more than 3 records at a time while most of
+* that time is spent waiting on the remote service. Here the consumer thread only dispatches: every record goes to
+* one of product-created-event.parallel.lanes single threaded lanes, picked by the record key (productId).
+* Records with the same key always share a lane and are processed in offset order, records with different keys
+* run side by side.
+*
+* Offsets: the container runs with AckMode.MANUAL and asyncAcks (see KafkaConsumerConfig). A lane acknowledges
+* a record once it is processed, or published to the DLT, and the container commits only up to the lowest
+* offset of the partition that is not acknowledged yet. It also pauses the consumer until every record of the
+* previous poll is acknowledged, so there are never more than max-poll-records records in flight.
+*
+* Rebalance: before the offsets of revoked partitions are committed, awaitRevoked() lets the records that already
+* started finish (their acks are part of that commit) and makes the lanes drop the queued records of those
+* partitions. The new owner starts after the last committed offset, so a record is processed twice only
+* when awaitRevoked() times out, the same at-least-once guarantee as the record handler.
+* */
+@Component
+@ConditionalOnProperty(name = "product-created-event.listener.mode", havingValue = "parallel")
+public class ProductCreatedEventParallelHandler implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(ProductCreatedEventParallelHandler.class);
+    private NotificationClient notificationClient;
+    private IdempotencyStore idempotencyStore;
+    private ConsumerRecordRecoverer deadLetterRecoverer;
+    private final ExecutorService[] lanes;
+    private final int retryAttempts;
+    private final Duration retryInterval;
+    private final Duration revokeTimeout;
+
+    /*
+    * A partition's generation changes when it is revoked, a record dispatched under an older generation is skipped.
+    * The in-flight counter covers dispatched records until their lane is done with them
+    * */
+    private final Map<TopicPartition, AtomicInteger> generations = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public ProductCreatedEventParallelHandler(NotificationClient notificationClient,
+                                              IdempotencyStore idempotencyStore,
+                                              ConsumerRecordRecoverer deadLetterRecoverer,
+                                              @Value("${product-created-event.parallel.lanes:16}") int lanes,
+                                              @Value("${product-created-event.parallel.retry-attempts:3}") int retryAttempts,
+                                              @Value("${product-created-event.parallel.retry-interval:5s}") Duration retryInterval,
+                                              @Value("${product-created-event.parallel.revoke-timeout:30s}") Duration revokeTimeout) {
+        this.notificationClient = notificationClient;
+        this.idempotencyStore = idempotencyStore;
+        this.deadLetterRecoverer = deadLetterRecoverer;
+        this.retryAttempts = retryAttempts;
+        this.retryInterval = retryInterval;
+        this.revokeTimeout = revokeTimeout;
+        this.lanes = new ExecutorService[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            String threadName = "product-created-events-lane-" + lane;
+            this.lanes[lane] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @KafkaListener(topics="product-created-events-topic")
+    public void handle(ConsumerRecord<String, Object> record, Acknowledgment acknowledgment) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        int generation = generations.computeIfAbsent(partition, key -> new AtomicInteger()).get();
+        AtomicInteger partitionInFlight = inFlight.computeIfAbsent(partition, key -> new AtomicInteger());
+        partitionInFlight.incrementAndGet();
+        lanes[lane(record)].execute(() -> {
+            try {
+                BooleanSupplier assigned = () -> generations.get(partition).get() == generation;
+                if (!assigned.getAsBoolean()) {
+                    logger.info("**** Skipping product created event of revoked partition {} ****", partition);
+                    return;
+                }
+                if (process(record, assigned)) {
+                    acknowledgment.acknowledge();
+                }
+            } finally {
+                synchronized (partitionInFlight) {
+                    partitionInFlight.decrementAndGet();
+                    partitionInFlight.notifyAll();
+                }
+            }
+        });
+    }
+
+    /*
+    * Called on the consumer thread before the offsets of the revoked partitions are committed
+    * */
+    public void awaitRevoked(Collection<TopicPartition> partitions) {
+        long deadline = System.nanoTime() + revokeTimeout.toNanos();
+        for (TopicPartition partition : partitions) {
+            generations.computeIfAbsent(partition, key -> new AtomicInteger()).incrementAndGet();
+        }
+        for (TopicPartition partition : partitions) {
+            AtomicInteger partitionInFlight = inFlight.get(partition);
+            if (partitionInFlight == null) {
+                continue;
+            }
+            synchronized (partitionInFlight) {
+                try {
+                    long remaining;
+                    while (partitionInFlight.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(partitionInFlight, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (partitionInFlight.get() > 0) {
+                    logger.warn("**** {} product created events of {} still in flight after {}, they may be processed again by the new owner ****",
+                            partitionInFlight.get(), partition, revokeTimeout);
+                }
+            }
+        }
+    }
+
+    private int lane(ConsumerRecord<String, Object> record) {
+        // records without a key have no order to keep, they are spread by offset
+        int hash = record.key() != null ? record.key().hashCode() : Long.hashCode(record.offset());
+        return Math.floorMod(hash, lanes.length);
+    }
+
+    /*
+    * Same rules as the DefaultErrorHandler of the record handler: RetryableException is retried retryAttempts times,
+    * everything else and the last failed attempt go to the DLT. Retrying inside the lane holds back
+    * the later records of the same key, which is what keeps them in order.
+    * While the circuit breaker is open the record waits without using up its attempts, until it can be processed
+    * or its partition is revoked. Returns false when the record was given up without being processed.
+    * */
+    private boolean process(ConsumerRecord<String, Object> record, BooleanSupplier assigned) {
+        int attempt = 0;
+        while (true) {
+            try {
+                processOnce(record);
+                return true;
+            } catch (DownstreamUnavailableException e) {
+                if (!assigned.getAsBoolean() || !sleep(retryInterval)) {
+                    return false;
+                }
+            } catch (RetryableException e) {
+                if (attempt++ >= retryAttempts) {
+                    recover(record, e);
+                    return true;
+                }
+                logger.info("**** Retrying product created event at offset {} ****", record.offset());
+                if (!sleep(retryInterval)) {
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                recover(record, e);
+                return true;
+            }
+        }
+    }
+
+    private void processOnce(ConsumerRecord<String, Object> record) {
+        logger.info("**** Received product created event ****");
+        if (!(record.value() instanceof ProductCreatedEvent event)) {
+            throw new NotRetryableException("Record at offset " + record.offset() + " is not a ProductCreatedEvent");
+        }
+        Header header = record.headers().lastHeader("messageId");
+        if (header == null) {
+            throw new NotRetryableException("Record at offset " + record.offset() + " has no messageId header");
+        }
+        String messageId = new String(header.value(), StandardCharsets.UTF_8);
+
+        //check if the message was already processed before
+        if (idempotencyStore.isProcessed(messageId)) {
+            logger.info("**** Found existing product created event ****");
+            return;
+        }
+        notificationClient.notifyProductCreated();
+        idempotencyStore.markProcessed(new ProcessedEventEntity(messageId, event.getProductId()));
+    }
+
+    /*
+    * The record is only acknowledged once it is on the DLT, while the DLT cannot be reached the partition
+    * stays behind this offset instead of losing the record
+    * */
+    private void recover(ConsumerRecord<String, Object> record, RuntimeException exception) {
+        while (true) {
+            try {
+                deadLetterRecoverer.accept(record, exception);
+                return;
+            } catch (RuntimeException e) {
+                logger.error("**** Could not publish product created event at offset {} to the DLT: {} ****",
+                        record.offset(), e.getMessage());
+                if (!sleep(retryInterval)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private boolean sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(revokeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
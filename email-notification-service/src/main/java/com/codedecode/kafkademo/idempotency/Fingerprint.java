@@ -0,0 +1,66 @@
+package com.codedecode.kafkademo.idempotency;
+
+/*
+* 128 bit stand-in for a messageId. Our producers use UUID.randomUUID().toString(), those ids are taken bit for bit
+* and cannot collide. Any other messageId is hashed twice with different seeds (collision odds about n^2 / 2^129)
+* */
+record Fingerprint(long high, long low) {
+
+    static Fingerprint of(String messageId) {
+        if (isCanonicalUuid(messageId)) {
+            return new Fingerprint(hex(messageId, 0, 8) << 32 | hex(messageId, 9, 13) << 16 | hex(messageId, 14, 18),
+                    hex(messageId, 19, 23) << 48 | hex(messageId, 24, 36));
+        }
+        return new Fingerprint(hash(messageId, 0xcbf29ce484222325L), hash(messageId, 0x84222325cbf29ce4L));
+    }
+
+    /*
+    * Start slot in MappedFingerprintIndex
+    * */
+    int spread() {
+        long mixed = high ^ low;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        return (int) mixed;
+    }
+
+    // lower case only, so that no two different strings map to the same bits
+    private static boolean isCanonicalUuid(String value) {
+        if (value.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hex(String value, int from, int to) {
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            result = result << 4 | (c <= '9' ? c - '0' : c - 'a' + 10);
+        }
+        return result;
+    }
+
+    private static long hash(String value, long seed) {
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53b5d4fL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
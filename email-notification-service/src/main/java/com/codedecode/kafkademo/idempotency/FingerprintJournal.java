@@ -0,0 +1,126 @@
+package com.codedecode.kafkademo.idempotency;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/*
+* Append-only log of processed fingerprints, the source of truth MappedFingerprintIndex is rebuilt from.
+*
+* record (32 bytes): long high, long low, long processedAt (epoch millis), int CRC32C of the first 24 bytes, int 0
+*
+* A record cut short or damaged by a crash fails the CRC check, recover() truncates the journal there.
+* */
+final class FingerprintJournal implements Closeable {
+
+    static final int RECORD_SIZE = 32;
+    private static final int READ_BUFFER_RECORDS = 32 * 1024;
+
+    interface RecordConsumer {
+        void accept(long high, long low, long processedAt);
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(RECORD_SIZE * 2048);
+    private final CRC32C crc = new CRC32C();
+    // bytes on disk, records still in writeBuffer are not counted
+    private long length;
+
+    FingerprintJournal(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.length = channel.size();
+    }
+
+    /*
+    * Hands every valid record from position on to the consumer and cuts off a damaged tail.
+    * Returns false if the journal had to be truncated
+    * */
+    boolean recover(long position, RecordConsumer consumer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * READ_BUFFER_RECORDS);
+        long valid = position;
+        long fileSize = channel.size();
+        boolean intact = true;
+        read:
+        while (valid < fileSize) {
+            buffer.clear();
+            long read = valid;
+            while (buffer.hasRemaining() && read < fileSize) {
+                int bytes = channel.read(buffer, read);
+                if (bytes < 0) {
+                    break;
+                }
+                read += bytes;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int expectedChecksum = checksum(buffer, buffer.position());
+                long high = buffer.getLong();
+                long low = buffer.getLong();
+                long processedAt = buffer.getLong();
+                int checksum = buffer.getInt();
+                buffer.getInt();
+                if (checksum != expectedChecksum || processedAt == 0) {
+                    intact = false;
+                    break read;
+                }
+                consumer.accept(high, low, processedAt);
+                valid += RECORD_SIZE;
+            }
+            if (buffer.hasRemaining()) {
+                // a partially written last record
+                intact = false;
+                break;
+            }
+        }
+        if (valid < fileSize) {
+            channel.truncate(valid);
+        }
+        length = valid;
+        return intact;
+    }
+
+    /*
+    * Buffers the record, it is written with the next flush()
+    * */
+    void append(long high, long low, long processedAt) throws IOException {
+        if (!writeBuffer.hasRemaining()) {
+            flush(false);
+        }
+        int start = writeBuffer.position();
+        writeBuffer.putLong(high).putLong(low).putLong(processedAt);
+        writeBuffer.putInt(checksum(writeBuffer, start)).putInt(0);
+    }
+
+    /*
+    * Writes the buffered records with a single system call, force also waits until they reached the disk
+    * */
+    void flush(boolean force) throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            length += channel.write(writeBuffer, length);
+        }
+        writeBuffer.clear();
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int checksum(ByteBuffer buffer, int offset) {
+        crc.reset();
+        crc.update(buffer.slice(offset, 24));
+        return (int) crc.getValue();
+    }
+}
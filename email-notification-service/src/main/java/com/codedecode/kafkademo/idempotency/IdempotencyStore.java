@@ -0,0 +1,36 @@
+package com.codedecode.kafkademo.idempotency;
+
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/*
+* Remembers which messageIds have been processed so redelivered product created events are skipped.
+* The backend is chosen with product-created-event.idempotency-store.type:
+*   jpa    - JpaIdempotencyStore, the processed-events table (default)
+*   mapped - MappedIdempotencyStore, a memory-mapped index on the local disk
+* */
+public interface IdempotencyStore {
+
+    boolean isProcessed(String messageId);
+
+    /*
+    * The subset of messageIds that have been processed
+    * */
+    Set<String> findProcessed(Collection<String> messageIds);
+
+    /*
+    * Stores the processed event, once this returns isProcessed(messageId) is true
+    * */
+    void markProcessed(ProcessedEventEntity processedEvent);
+
+    void markProcessed(List<ProcessedEventEntity> processedEvents);
+
+    /*
+    * Called before records of newly assigned partitions are consumed, see KafkaConsumerConfig
+    * */
+    default void refresh() {
+    }
+}
@@ -0,0 +1,76 @@
+package com.codedecode.kafkademo.idempotency;
+
+import com.codedecode.kafkademo.dedup.ProcessedMessageIds;
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import com.codedecode.kafkademo.error.NotRetryableException;
+import com.codedecode.kafkademo.repo.ProcessedEventBatchRepository;
+import com.codedecode.kafkademo.repo.ProcessedEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/*
+* The processed-events table with ProcessedMessageIds answering most lookups in memory
+* */
+@Component
+@ConditionalOnProperty(name = "product-created-event.idempotency-store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaIdempotencyStore implements IdempotencyStore {
+    private final Logger logger = LoggerFactory.getLogger(JpaIdempotencyStore.class);
+    private ProcessedMessageIds processedMessageIds;
+    private ProcessedEventRepository processedEventRepository;
+    private ProcessedEventBatchRepository processedEventBatchRepository;
+
+    public JpaIdempotencyStore(ProcessedMessageIds processedMessageIds,
+                               ProcessedEventRepository processedEventRepository,
+                               ProcessedEventBatchRepository processedEventBatchRepository) {
+        this.processedMessageIds = processedMessageIds;
+        this.processedEventRepository = processedEventRepository;
+        this.processedEventBatchRepository = processedEventBatchRepository;
+    }
+
+    @Override
+    public boolean isProcessed(String messageId) {
+        return processedMessageIds.isProcessed(messageId);
+    }
+
+    @Override
+    public Set<String> findProcessed(Collection<String> messageIds) {
+        return processedMessageIds.findProcessed(messageIds);
+    }
+
+    @Override
+    @Transactional
+    public void markProcessed(ProcessedEventEntity processedEvent) {
+        try {
+            processedEventRepository.save(processedEvent);
+        }catch (DataIntegrityViolationException e){
+            logger.error(e.getMessage());
+            throw new NotRetryableException(e);
+        }
+        processedMessageIds.markProcessed(processedEvent.getMessageId());
+    }
+
+    /*
+    * A DataIntegrityViolationException here means another consumer stored one of these messageIds in the meantime,
+    * it is not tied to a single record and is passed on as is
+    * */
+    @Override
+    public void markProcessed(List<ProcessedEventEntity> processedEvents) {
+        processedEventBatchRepository.insertAll(processedEvents);
+        for (ProcessedEventEntity processedEvent : processedEvents) {
+            processedMessageIds.markProcessed(processedEvent.getMessageId());
+        }
+    }
+
+    @Override
+    public void refresh() {
+        processedMessageIds.catchUp();
+    }
+}
@@ -0,0 +1,170 @@
+package com.codedecode.kafkademo.idempotency;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+* Open addressing hash table of fingerprints in a memory-mapped file, linear probing, no deletes.
+* MAX_CAPACITY keeps every slot offset inside the 2 GB a single MappedByteBuffer can address
+* (entries only disappear when MappedIdempotencyStore rebuilds the index from a compacted journal).
+*
+* header (64 bytes): long magic, int version, int capacity, long size, long journal length, int clean
+* slot   (24 bytes): long high, long low, long processedAt, processedAt 0 = empty slot
+*
+* clean is only set by closeClean(). An index found dirty on startup may miss entries or hold entries
+* the journal lost in a crash, it is thrown away and rebuilt from the journal.
+* Not thread safe, MappedIdempotencyStore guards it with a read/write lock.
+* */
+final class MappedFingerprintIndex implements Closeable {
+
+    static final int MAX_CAPACITY = 1 << 26;
+    static final double MAX_LOAD = 0.7;
+
+    private static final long MAGIC = 0x5045_4944_5831_0000L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24;
+    private static final int SIZE_OFFSET = 16;
+    private static final int JOURNAL_LENGTH_OFFSET = 24;
+    private static final int CLEAN_OFFSET = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private long size;
+
+    private MappedFingerprintIndex(FileChannel channel, MappedByteBuffer buffer, int capacity, long size) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.size = size;
+    }
+
+    /*
+    * Smallest power of two capacity that holds the entries below MAX_LOAD
+    * */
+    static int capacityFor(long entries) {
+        long needed = (long) Math.ceil(Math.max(entries, 1) / MAX_LOAD);
+        if (needed > MAX_CAPACITY) {
+            throw new IllegalStateException("A mapped index holds at most " + (long) (MAX_CAPACITY * MAX_LOAD)
+                    + " message ids, lower the retention");
+        }
+        return Math.max(1024, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    static MappedFingerprintIndex create(Path file, int capacity) throws IOException {
+        Files.deleteIfExists(file);
+        long fileSize = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // sparse file, the zero filled pages are only allocated when a slot is written
+            raf.setLength(fileSize);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, capacity);
+        return new MappedFingerprintIndex(channel, buffer, capacity, 0);
+    }
+
+    /*
+    * The index of the last clean shutdown, or null if there is none that can be trusted.
+    * The returned index is marked dirty until closeClean()
+    * */
+    static MappedFingerprintIndex openIfClean(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        int capacity = header.getInt(12);
+        if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION || header.getInt(CLEAN_OFFSET) != 1
+                || Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY
+                || channel.size() != HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            channel.close();
+            return null;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        MappedFingerprintIndex index = new MappedFingerprintIndex(channel, buffer, capacity, buffer.getLong(SIZE_OFFSET));
+        buffer.putInt(CLEAN_OFFSET, 0);
+        buffer.force(0, HEADER_SIZE);
+        return index;
+    }
+
+    boolean contains(Fingerprint fingerprint) {
+        int slot = fingerprint.spread() & mask;
+        while (true) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            if (buffer.getLong(offset + 16) == 0) {
+                return false;
+            }
+            if (buffer.getLong(offset) == fingerprint.high() && buffer.getLong(offset + 8) == fingerprint.low()) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /*
+    * Returns false if the fingerprint was already present
+    * */
+    boolean put(Fingerprint fingerprint, long processedAt) {
+        int slot = fingerprint.spread() & mask;
+        while (true) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            if (buffer.getLong(offset + 16) == 0) {
+                if (size == capacity - 1) {
+                    // probing stops at an empty slot, one has to stay
+                    throw new IllegalStateException("Mapped index is full");
+                }
+                buffer.putLong(offset, fingerprint.high());
+                buffer.putLong(offset + 8, fingerprint.low());
+                // written last, a reader holding the read lock never sees a half written slot anyway
+                buffer.putLong(offset + 16, processedAt);
+                size++;
+                return true;
+            }
+            if (buffer.getLong(offset) == fingerprint.high() && buffer.getLong(offset + 8) == fingerprint.low()) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long journalLength() {
+        return buffer.getLong(JOURNAL_LENGTH_OFFSET);
+    }
+
+    /*
+    * Flushes the table and records up to where it reflects the journal, the next start can use it as it is
+    * */
+    void closeClean(long journalLength) throws IOException {
+        buffer.putLong(SIZE_OFFSET, size);
+        buffer.putLong(JOURNAL_LENGTH_OFFSET, journalLength);
+        buffer.force();
+        buffer.putInt(CLEAN_OFFSET, 1);
+        buffer.force(0, HEADER_SIZE);
+        channel.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
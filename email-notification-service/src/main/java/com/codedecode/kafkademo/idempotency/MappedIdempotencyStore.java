@@ -0,0 +1,262 @@
+package com.codedecode.kafkademo.idempotency;
+
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+* Embedded idempotency store, enabled with product-created-event.idempotency-store.type=mapped.
+* A lookup is a few reads from a memory-mapped hash table, no JPA, no JDBC, no query.
+*
+* - FingerprintJournal, an append-only file, is the durable record of every processed messageId
+* - MappedFingerprintIndex is the lookup table, flushed and marked clean on shutdown.
+*   After a crash it is rebuilt from the journal on startup, a torn last journal record is cut off
+* - every compaction-interval the journal is rewritten without the entries older than retention and the index
+*   is rebuilt, both files are replaced with an atomic rename so a crash leaves either the old or the new one.
+*   retention has to be longer than a message can be redelivered (topic retention)
+* - the index doubles when it reaches 70% load, it holds up to 47M messageIds
+*
+* The files are local to this instance: the store only knows the messages this instance processed. It fits
+* deployments where a partition stays with the same instance (one instance, static membership, stateful sets
+* with a persistent volume); a message redelivered to another instance after a rebalance is processed again there.
+* Writes survive a crash of the JVM; they survive a crash of the machine only with force-writes=true
+* */
+@Component
+@ConditionalOnProperty(name = "product-created-event.idempotency-store.type", havingValue = "mapped")
+public class MappedIdempotencyStore implements IdempotencyStore, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(MappedIdempotencyStore.class);
+
+    private static final String JOURNAL_FILE = "processed-message-ids.journal";
+    private static final String INDEX_FILE = "processed-message-ids.index";
+
+    private final Path directory;
+    private final long expectedEntries;
+    private final Duration retention;
+    private final boolean forceWrites;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService compactionScheduler;
+
+    private FingerprintJournal journal;
+    private MappedFingerprintIndex index;
+
+    public MappedIdempotencyStore(@Value("${product-created-event.idempotency-store.mapped.directory}") Path directory,
+                                  @Value("${product-created-event.idempotency-store.mapped.expected-entries:10000000}") long expectedEntries,
+                                  @Value("${product-created-event.idempotency-store.mapped.retention:7d}") Duration retention,
+                                  @Value("${product-created-event.idempotency-store.mapped.compaction-interval:1h}") Duration compactionInterval,
+                                  @Value("${product-created-event.idempotency-store.mapped.force-writes:false}") boolean forceWrites) throws IOException {
+        this.directory = directory;
+        this.expectedEntries = expectedEntries;
+        this.retention = retention;
+        this.forceWrites = forceWrites;
+        Files.createDirectories(directory);
+        open();
+        this.compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotency-store-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionScheduler.scheduleWithFixedDelay(this::compactQuietly,
+                compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean isProcessed(String messageId) {
+        Fingerprint fingerprint = Fingerprint.of(messageId);
+        lock.readLock().lock();
+        try {
+            return index.contains(fingerprint);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> findProcessed(Collection<String> messageIds) {
+        Set<String> processed = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            for (String messageId : messageIds) {
+                if (index.contains(Fingerprint.of(messageId))) {
+                    processed.add(messageId);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return processed;
+    }
+
+    @Override
+    public void markProcessed(ProcessedEventEntity processedEvent) {
+        markProcessed(List.of(processedEvent));
+    }
+
+    /*
+    * The journal is written first and with one system call for the whole list, the index after that
+    * */
+    @Override
+    public void markProcessed(List<ProcessedEventEntity> processedEvents) {
+        long processedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            List<Fingerprint> newFingerprints = new ArrayList<>(processedEvents.size());
+            for (ProcessedEventEntity processedEvent : processedEvents) {
+                Fingerprint fingerprint = Fingerprint.of(processedEvent.getMessageId());
+                if (!index.contains(fingerprint)) {
+                    journal.append(fingerprint.high(), fingerprint.low(), processedAt);
+                    newFingerprints.add(fingerprint);
+                }
+            }
+            journal.flush(forceWrites);
+            if (index.size() + newFingerprints.size() > MappedFingerprintIndex.MAX_LOAD * index.capacity()) {
+                replaceIndex(MappedFingerprintIndex.capacityFor(2 * (index.size() + newFingerprints.size())));
+            }
+            for (Fingerprint fingerprint : newFingerprints) {
+                index.put(fingerprint, processedAt);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    long size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+    * Drops the entries older than retention. Lookups and writes wait while the files are rewritten.
+    * The compacted journal is written, forced to disk and opened before it replaces the current one: when the
+    * rename fails the current journal is still open and in place, writes go on as before
+    * */
+    void compact() throws IOException {
+        long cutoff = System.currentTimeMillis() - retention.toMillis();
+        lock.writeLock().lock();
+        try {
+            Path compactedFile = directory.resolve(JOURNAL_FILE + ".compacting");
+            Files.deleteIfExists(compactedFile);
+            long[] keptAndDropped = new long[2];
+            FingerprintJournal compacted = new FingerprintJournal(compactedFile);
+            try {
+                journal.recover(0, (high, low, processedAt) -> {
+                    if (processedAt >= cutoff) {
+                        try {
+                            compacted.append(high, low, processedAt);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        keptAndDropped[0]++;
+                    } else {
+                        keptAndDropped[1]++;
+                    }
+                });
+                compacted.flush(true);
+                if (keptAndDropped[1] == 0) {
+                    discard(compacted, compactedFile);
+                    return;
+                }
+                Files.move(compactedFile, directory.resolve(JOURNAL_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                discard(compacted, compactedFile);
+                throw e;
+            }
+            FingerprintJournal previous = journal;
+            journal = compacted;
+            previous.close();
+            replaceIndex(MappedFingerprintIndex.capacityFor(Math.max(expectedEntries, keptAndDropped[0])));
+            logger.info("**** Compacted processed message ids, kept {} dropped {} ****", keptAndDropped[0], keptAndDropped[1]);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        compactionScheduler.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            journal.flush(true);
+            index.closeClean(journal.length());
+            journal.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        journal = new FingerprintJournal(directory.resolve(JOURNAL_FILE));
+        MappedFingerprintIndex cleanIndex = MappedFingerprintIndex.openIfClean(directory.resolve(INDEX_FILE));
+        if (cleanIndex != null && cleanIndex.journalLength() == journal.length()) {
+            index = cleanIndex;
+            logger.info("**** Opened processed message ids with {} entries ****", index.size());
+            return;
+        }
+        if (cleanIndex != null) {
+            cleanIndex.close();
+        }
+        logger.warn("**** Processed message ids were not closed cleanly, rebuilding the index from the journal ****");
+        long journalEntries = journal.length() / FingerprintJournal.RECORD_SIZE;
+        index = rebuildIndex(MappedFingerprintIndex.capacityFor(Math.max(expectedEntries, journalEntries)));
+        logger.info("**** Rebuilt processed message ids with {} entries ****", index.size());
+    }
+
+    private void replaceIndex(int capacity) throws IOException {
+        MappedFingerprintIndex previous = index;
+        index = rebuildIndex(capacity);
+        previous.close();
+    }
+
+    /*
+    * Builds a new index next to the current one and moves it in place, the journal stays the source of truth
+    * */
+    private MappedFingerprintIndex rebuildIndex(int capacity) throws IOException {
+        Path rebuiltFile = directory.resolve(INDEX_FILE + ".rebuilding");
+        MappedFingerprintIndex rebuilt = MappedFingerprintIndex.create(rebuiltFile, capacity);
+        if (!journal.recover(0, (high, low, processedAt) -> rebuilt.put(new Fingerprint(high, low), processedAt))) {
+            logger.warn("**** Cut off a damaged record at the end of the processed message ids journal ****");
+        }
+        Files.move(rebuiltFile, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rebuilt;
+    }
+
+    private static void discard(FingerprintJournal compacted, Path compactedFile) throws IOException {
+        compacted.close();
+        Files.deleteIfExists(compactedFile);
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            logger.error("Compaction of processed message ids failed: {}", e.getMessage());
+        }
+    }
+}
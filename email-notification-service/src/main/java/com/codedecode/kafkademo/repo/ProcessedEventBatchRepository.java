@@ -0,0 +1,36 @@
+package com.codedecode.kafkademo.repo;
+
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/*
+* Bulk insert for the batch listener. Hibernate cannot batch inserts of ProcessedEventEntity
+* because its id is an IDENTITY column, so the rows are written with a single JDBC batch instead.
+* The table and column names are the ones Hibernate generates for ProcessedEventEntity
+* */
+@Repository
+public class ProcessedEventBatchRepository {
+
+    private static final String INSERT_SQL = "insert into \"processed-events\" (message_id, product_id) values (?, ?)";
+
+    private JdbcTemplate jdbcTemplate;
+
+    public ProcessedEventBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional
+    public void insertAll(List<ProcessedEventEntity> processedEvents) {
+        if (processedEvents.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, processedEvents, processedEvents.size(), (ps, processedEvent) -> {
+            ps.setString(1, processedEvent.getMessageId());
+            ps.setString(2, processedEvent.getProductId());
+        });
+    }
+}
@@ -3,12 +3,26 @@ package com.codedecode.kafkademo.repo;
 import com.codedecode.kafkademo.entity.ProcessedEventEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface ProcessedEventRepository extends JpaRepository<ProcessedEventEntity, Long> {
 
     @Query
     public ProcessedEventEntity findByMessageId(String messageId);
-}
 
+    /*
+    * One round trip for a whole poll instead of one findByMessageId per record
+    * */
+    @Query("select e.messageId from ProcessedEventEntity e where e.messageId in :messageIds")
+    public List<String> findProcessedMessageIds(@Param("messageIds") Collection<String> messageIds);
+
+    /*
+    * Pages through the table in insert order, used to keep ProcessedMessageIds up to date
+    * */
+    public List<ProcessedEventEntity> findTop10000ByIdGreaterThanOrderByIdAsc(long id);
+}
@@ -0,0 +1,81 @@
+package com.codedecode.kafkademo.scaling;
+
+import java.time.Duration;
+
+/*
+* Decides the listener concurrency from one lag sample at a time.
+*
+* The lag is compared with what the consumers work off in targetDrainTime at their current throughput:
+*
+* behind    lag > scaleUpLag and lag / throughput > targetDrainTime, one more consumer once this was seen
+*           for scaleUpSamples samples in a row
+* caught up lag <= scaleDownLag, one consumer less after scaleDownSamples samples in a row
+*
+* Everything in between resets both counters. After every change nothing is decided for cooldown, the rebalance
+* of the restarted container has to settle before its throughput says anything. More consumers than partitions
+* would sit idle: behind with as many consumers as partitions sets partitionsExhausted instead
+* */
+class ConcurrencyPolicy {
+
+    private final int minConcurrency;
+    private final long scaleUpLag;
+    private final double targetDrainSeconds;
+    private final int scaleUpSamples;
+    private final long scaleDownLag;
+    private final int scaleDownSamples;
+    private final long cooldownNanos;
+
+    // all fields below are guarded by this
+    private int behindSamples;
+    private int caughtUpSamples;
+    private long changedAt;
+    private boolean changed;
+    private boolean partitionsExhausted;
+
+    ConcurrencyPolicy(int minConcurrency, long scaleUpLag, Duration targetDrainTime, int scaleUpSamples,
+                      long scaleDownLag, int scaleDownSamples, Duration cooldown) {
+        if (minConcurrency < 1 || scaleUpSamples < 1 || scaleDownSamples < 1 || scaleDownLag >= scaleUpLag) {
+            throw new IllegalArgumentException("minConcurrency, scaleUpSamples, scaleDownSamples >= 1 and scaleDownLag < scaleUpLag are required");
+        }
+        this.minConcurrency = minConcurrency;
+        this.scaleUpLag = scaleUpLag;
+        this.targetDrainSeconds = targetDrainTime.toNanos() / 1e9;
+        this.scaleUpSamples = scaleUpSamples;
+        this.scaleDownLag = scaleDownLag;
+        this.scaleDownSamples = scaleDownSamples;
+        this.cooldownNanos = cooldown.toNanos();
+    }
+
+    /*
+    * lag: records of all partitions not committed yet, throughput: records committed per second since
+    * the previous sample. Returns the concurrency to run with, which is concurrency when nothing changes
+    * */
+    synchronized int decide(int concurrency, int partitions, long lag, double throughput, long nowNanos) {
+        if (changed && nowNanos - changedAt < cooldownNanos) {
+            return concurrency;
+        }
+        boolean behind = lag > scaleUpLag && lag > throughput * targetDrainSeconds;
+        boolean caughtUp = lag <= scaleDownLag;
+        behindSamples = behind ? behindSamples + 1 : 0;
+        caughtUpSamples = caughtUp ? caughtUpSamples + 1 : 0;
+        partitionsExhausted = behind && concurrency >= partitions && (partitionsExhausted || behindSamples >= scaleUpSamples);
+
+        int target = concurrency;
+        if (behindSamples >= scaleUpSamples && concurrency < partitions) {
+            target = concurrency + 1;
+        } else if (caughtUpSamples >= scaleDownSamples && concurrency > minConcurrency) {
+            target = concurrency - 1;
+        }
+        if (target != concurrency) {
+            behindSamples = 0;
+            caughtUpSamples = 0;
+            changed = true;
+            changedAt = nowNanos;
+        }
+        return target;
+    }
+
+    synchronized boolean partitionsExhausted() {
+        return partitionsExhausted;
+    }
+}
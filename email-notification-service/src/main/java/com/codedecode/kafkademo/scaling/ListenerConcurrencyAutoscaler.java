@@ -0,0 +1,262 @@
+package com.codedecode.kafkademo.scaling;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* Grows and shrinks the number of consumers of product-created-events-topic on this instance,
+* enabled with product-created-event.autoscaler.enabled=true.
+*
+* Every sample-interval the lag of each partition (end offset - committed offset of the product-created-events group,
+* or - beginning offset while nothing is committed) is read with the admin client, and the throughput is the number of offsets committed since the previous sample.
+* ConcurrencyPolicy turns both into the concurrency of the listener container, between min-concurrency and the
+* partition count. The container only picks up a new concurrency when it starts, so a change stops and restarts it:
+* the partitions are revoked (offsets committed, ProductCreatedEventParallelHandler drains its lanes) and assigned
+* again over the new number of consumers.
+*
+* Lag is counted over the whole group, with more instances the share of this instance is what its consumers
+* get assigned. Nothing is sampled or resized while the containers are paused by the circuit breaker, the lag grows
+* then because the remote microservice is down, more consumers would not help.
+*
+* product.created.event.consumer.lag{partition} lag per partition
+* product.created.event.listener.concurrency     consumers of the listener container
+* product.created.event.partitions.exhausted     1 while the lag keeps growing with one consumer per partition,
+*                                                the topic needs more partitions (or the handler a faster path)
+* */
+@Component
+@ConditionalOnProperty(name = "product-created-event.autoscaler.enabled", havingValue = "true")
+public class ListenerConcurrencyAutoscaler implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(ListenerConcurrencyAutoscaler.class);
+
+    static final String TOPIC = "product-created-events-topic";
+    static final String GROUP_ID = "product-created-events";
+
+    private final KafkaListenerEndpointRegistry listenerEndpointRegistry;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrencyPolicy policy;
+    private final Admin admin;
+    private final Duration sampleInterval;
+    private final Duration adminTimeout;
+    private final Duration stopTimeout;
+    private final ScheduledExecutorService sampler;
+
+    private final Map<Integer, AtomicLong> partitionLag = new ConcurrentHashMap<>();
+    // only touched by the sampler thread
+    private long previousCommitted = -1;
+    private long previousSampleAt;
+
+    public ListenerConcurrencyAutoscaler(KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${spring.kafka.consumer.bootstrap-servers}") String bootstrapServers,
+                                         @Value("${product-created-event.autoscaler.sample-interval:10s}") Duration sampleInterval,
+                                         @Value("${product-created-event.autoscaler.min-concurrency:1}") int minConcurrency,
+                                         @Value("${product-created-event.autoscaler.scale-up-lag:1000}") long scaleUpLag,
+                                         @Value("${product-created-event.autoscaler.target-drain-time:60s}") Duration targetDrainTime,
+                                         @Value("${product-created-event.autoscaler.scale-up-samples:3}") int scaleUpSamples,
+                                         @Value("${product-created-event.autoscaler.scale-down-lag:100}") long scaleDownLag,
+                                         @Value("${product-created-event.autoscaler.scale-down-samples:12}") int scaleDownSamples,
+                                         @Value("${product-created-event.autoscaler.cooldown:2m}") Duration cooldown,
+                                         @Value("${product-created-event.autoscaler.admin-timeout:5s}") Duration adminTimeout,
+                                         @Value("${product-created-event.autoscaler.stop-timeout:60s}") Duration stopTimeout) {
+        this.listenerEndpointRegistry = listenerEndpointRegistry;
+        this.meterRegistry = meterRegistry;
+        this.policy = new ConcurrencyPolicy(minConcurrency, scaleUpLag, targetDrainTime, scaleUpSamples,
+                scaleDownLag, scaleDownSamples, cooldown);
+        this.sampleInterval = sampleInterval;
+        this.adminTimeout = adminTimeout;
+        this.stopTimeout = stopTimeout;
+        this.admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers));
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-created-events-autoscaler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("product.created.event.listener.concurrency", this, ListenerConcurrencyAutoscaler::concurrency)
+                .description("consumers of the product-created-events-topic listener container")
+                .register(meterRegistry);
+        Gauge.builder("product.created.event.partitions.exhausted", policy, p -> p.partitionsExhausted() ? 1 : 0)
+                .description("1 while the consumer lag grows with one consumer per partition")
+                .register(meterRegistry);
+    }
+
+    /*
+    * The listener containers are started by then
+    * */
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        sampler.scheduleWithFixedDelay(this::sampleSafely, sampleInterval.toMillis(), sampleInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public boolean partitionsExhausted() {
+        return policy.partitionsExhausted();
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // the broker may be unreachable for a while, the next sample tries again
+            logger.warn("**** Could not sample the lag of {}: {} ****", TOPIC, e.getMessage());
+        }
+    }
+
+    void sample() throws Exception {
+        ConcurrentMessageListenerContainer<?, ?> container = container();
+        if (container == null || !container.isRunning() || container.isPauseRequested()) {
+            previousCommitted = -1;
+            return;
+        }
+        Map<TopicPartition, OffsetAndMetadata> committedOffsets = admin.listConsumerGroupOffsets(GROUP_ID)
+                .partitionsToOffsetAndMetadata().get(adminTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        int partitions = admin.describeTopics(List.of(TOPIC)).allTopicNames()
+                .get(adminTimeout.toMillis(), TimeUnit.MILLISECONDS).get(TOPIC).partitions().size();
+        Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+        Map<TopicPartition, OffsetSpec> earliest = new HashMap<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            latest.put(new TopicPartition(TOPIC, partition), OffsetSpec.latest());
+            earliest.put(new TopicPartition(TOPIC, partition), OffsetSpec.earliest());
+        }
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = admin.listOffsets(latest).all()
+                .get(adminTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> beginningOffsets = admin.listOffsets(earliest).all()
+                .get(adminTimeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        long lag = 0;
+        long committed = 0;
+        for (Map.Entry<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffset : endOffsets.entrySet()) {
+            OffsetAndMetadata committedOffset = committedOffsets.get(endOffset.getKey());
+            // nothing committed yet, or only records retention has deleted since: auto-offset-reset=earliest reads
+            // the partition from its beginning offset, which is past 0 once old segments are gone
+            long beginning = beginningOffsets.get(endOffset.getKey()).offset();
+            long position = committedOffset != null ? Math.max(committedOffset.offset(), beginning) : beginning;
+            long partitionLag = Math.max(0, endOffset.getValue().offset() - position);
+            lagGauge(endOffset.getKey().partition()).set(partitionLag);
+            lag += partitionLag;
+            committed += position;
+        }
+
+        long now = System.nanoTime();
+        boolean firstSample = previousCommitted < 0;
+        double throughput = firstSample ? 0 : (committed - previousCommitted) / ((now - previousSampleAt) / 1e9);
+        previousCommitted = committed;
+        previousSampleAt = now;
+        if (firstSample) {
+            return;
+        }
+
+        int concurrency = container.getConcurrency();
+        boolean wasExhausted = policy.partitionsExhausted();
+        int target = policy.decide(concurrency, partitions, lag, throughput, now);
+        if (policy.partitionsExhausted() && !wasExhausted) {
+            logger.warn("**** Lag of {} keeps growing with {} consumers for {} partitions ({} records behind, {} records/s), the topic needs more partitions ****",
+                    TOPIC, concurrency, partitions, lag, String.format("%.1f", throughput));
+        }
+        if (target != concurrency && container.isPauseRequested()) {
+            // paused by the circuit breaker while the offsets were read, a restart must not run into that
+            previousCommitted = -1;
+            return;
+        }
+        if (target != concurrency) {
+            logger.info("**** Changing the concurrency of the {} listener from {} to {} ({} records behind, {} records/s) ****",
+                    TOPIC, concurrency, target, lag, String.format("%.1f", throughput));
+            restart(container, target);
+            previousCommitted = -1;
+        }
+    }
+
+    /*
+    * stop() returns before the consumers are gone, the new concurrency is set once all of them stopped.
+    * A consumer stops after the records of its current poll, keep max-poll-records small enough for that.
+    * A consumer stuck longer than stop-timeout (a listener hanging on the remote microservice) must not hold up
+    * the sampler for good: the resize is skipped and the container is started again with its old concurrency
+    * as soon as it has stopped. A pause the circuit breaker requested meanwhile is applied again after the start
+    * */
+    private void restart(ConcurrentMessageListenerContainer<?, ?> container, int concurrency) throws InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(1);
+        // whoever comes first, the stop callback or the timeout, decides what happens after the stop
+        AtomicBoolean waiting = new AtomicBoolean(true);
+        container.stop(() -> {
+            if (waiting.compareAndSet(true, false)) {
+                stopped.countDown();
+            } else {
+                sampler.execute(container::start);
+            }
+        });
+        if (!stopped.await(stopTimeout.toMillis(), TimeUnit.MILLISECONDS) && waiting.compareAndSet(true, false)) {
+            logger.warn("**** The {} listener did not stop within {}, keeping its concurrency at {} ****",
+                    TOPIC, stopTimeout, container.getConcurrency());
+            return;
+        }
+        boolean pauseRequested = container.isPauseRequested();
+        container.setConcurrency(concurrency);
+        container.start();
+        if (pauseRequested && !container.isPauseRequested()) {
+            container.pause();
+        }
+    }
+
+    private ConcurrentMessageListenerContainer<?, ?> container() {
+        for (MessageListenerContainer container : listenerEndpointRegistry.getListenerContainers()) {
+            String[] topics = container.getContainerProperties().getTopics();
+            if (container instanceof ConcurrentMessageListenerContainer<?, ?> concurrentContainer
+                    && topics != null && List.of(topics).contains(TOPIC)) {
+                return concurrentContainer;
+            }
+        }
+        return null;
+    }
+
+    private double concurrency() {
+        ConcurrentMessageListenerContainer<?, ?> container = container();
+        return container != null ? container.getConcurrency() : 0;
+    }
+
+    private AtomicLong lagGauge(int partition) {
+        return partitionLag.computeIfAbsent(partition, key -> {
+            AtomicLong lag = new AtomicLong();
+            Gauge.builder("product.created.event.consumer.lag", lag, AtomicLong::get)
+                    .tag("partition", String.valueOf(partition))
+                    .description("records of the partition not committed by the product-created-events group yet")
+                    .register(meterRegistry);
+            return lag;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        sampler.shutdownNow();
+        admin.close(Duration.ofSeconds(1));
+    }
+}
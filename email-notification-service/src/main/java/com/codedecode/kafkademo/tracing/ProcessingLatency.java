@@ -0,0 +1,105 @@
+package com.codedecode.kafkademo.tracing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Latency breakdown of a product created event, exported as product.created.event.processing.latency histograms
+* tagged with the stage:
+*
+* broker_dwell  publishTimestamp header -> received by the handler: producer buffer, broker and the time
+*               the record waited for its poll. Records without the header fall back to the record timestamp
+* dedup         received -> idempotency store checked
+* downstream    idempotency store checked -> remote microservice answered
+* persist       remote microservice answered -> messageId stored as processed
+* handler       received -> stored, the time spent in the handler
+* end_to_end    publishTimestamp header -> stored, from POST /products/createProduct until the notification was sent
+*
+* A record redelivered from a retry topic keeps its publishTimestamp, its broker dwell includes the retry delay.
+* The producer side of the breakdown is exported by product-service as product.created.event.publish.latency
+* */
+@Component
+public class ProcessingLatency {
+
+    private static final String METRIC_NAME = "product.created.event.processing.latency";
+
+    private final Timer brokerDwell;
+    private final Timer dedup;
+    private final Timer downstream;
+    private final Timer persist;
+    private final Timer handler;
+    private final Timer endToEnd;
+
+    public ProcessingLatency(MeterRegistry meterRegistry) {
+        this.brokerDwell = timer(meterRegistry, "broker_dwell");
+        this.dedup = timer(meterRegistry, "dedup");
+        this.downstream = timer(meterRegistry, "downstream");
+        this.persist = timer(meterRegistry, "persist");
+        this.handler = timer(meterRegistry, "handler");
+        this.endToEnd = timer(meterRegistry, "end_to_end");
+    }
+
+    /*
+    * publishTimestamp: raw header value or null, recordTimestamp: the record's timestamp in milliseconds
+    * */
+    public Sample received(byte[] publishTimestamp, long recordTimestamp) {
+        long publishedAt = PublishTimestamp.decode(publishTimestamp);
+        if (publishedAt < 0) {
+            publishedAt = TimeUnit.MILLISECONDS.toNanos(recordTimestamp);
+        }
+        long receivedAt = PublishTimestamp.nowEpochNanos();
+        // another host's clock may be ahead of ours
+        brokerDwell.record(Math.max(0, receivedAt - publishedAt), TimeUnit.NANOSECONDS);
+        return new Sample(publishedAt, receivedAt);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder(METRIC_NAME)
+                .tag("stage", stage)
+                .description("time a product created event spent in one stage of its way from product-service to the notification")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(meterRegistry);
+    }
+
+    /*
+    * Stages of one record, called in order on the thread handling it. Stages after a failure are not recorded
+    * */
+    public class Sample {
+        private final long publishedAt;
+        private final long receivedAt;
+        private final long receivedNanos = System.nanoTime();
+        private long stageStartedNanos = receivedNanos;
+
+        private Sample(long publishedAt, long receivedAt) {
+            this.publishedAt = publishedAt;
+            this.receivedAt = receivedAt;
+        }
+
+        public void dedupDone() {
+            stageDone(dedup);
+        }
+
+        public void downstreamDone() {
+            stageDone(downstream);
+        }
+
+        public void persisted() {
+            long handlerNanos = stageDone(persist) - receivedNanos;
+            handler.record(handlerNanos, TimeUnit.NANOSECONDS);
+            endToEnd.record(Math.max(0, receivedAt + handlerNanos - publishedAt), TimeUnit.NANOSECONDS);
+        }
+
+        private long stageDone(Timer stage) {
+            long now = System.nanoTime();
+            stage.record(now - stageStartedNanos, TimeUnit.NANOSECONDS);
+            stageStartedNanos = now;
+            return now;
+        }
+    }
+}
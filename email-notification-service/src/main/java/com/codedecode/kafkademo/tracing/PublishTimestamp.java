@@ -0,0 +1,29 @@
+package com.codedecode.kafkademo.tracing;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/*
+* publishTimestamp header stamped by ProductServiceImpl in product-service next to messageId:
+* wall clock time the record was created, nanoseconds since the epoch as an 8 byte big endian long.
+* Both services run on different hosts, differences between their clocks end up in the broker dwell time
+* */
+public final class PublishTimestamp {
+
+    public static final String HEADER = "publishTimestamp";
+
+    private PublishTimestamp() {
+    }
+
+    public static long nowEpochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    /*
+    * -1 when the header is missing or was not written by ProductServiceImpl
+    * */
+    public static long decode(byte[] header) {
+        return header != null && header.length == Long.BYTES ? ByteBuffer.wrap(header).getLong() : -1;
+    }
+}
@@ -0,0 +1,102 @@
+package com.codedecode.kafkademo;
+
+import com.codedecode.kafkademo.client.NotificationClient;
+import com.codedecode.kafkademo.scaling.ListenerConcurrencyAutoscaler;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Builds up lag on the 3 partitions of an embedded broker with a slow remote service, the autoscaler
+ * has to grow the listener to one consumer per partition, signal that more partitions are needed,
+ * and shrink it back once the lag is worked off.
+ */
+@EmbeddedKafka(partitions = 3)
+@SpringBootTest(properties = {"spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "product-created-event.retry.mode=in-place",
+        // the container stops between polls, small polls keep the restarts short
+        "spring.kafka.consumer.max-poll-records=10",
+        "product-created-event.autoscaler.enabled=true",
+        "product-created-event.autoscaler.sample-interval=500ms",
+        "product-created-event.autoscaler.scale-up-lag=10",
+        "product-created-event.autoscaler.target-drain-time=1s",
+        "product-created-event.autoscaler.scale-up-samples=2",
+        "product-created-event.autoscaler.scale-down-lag=0",
+        "product-created-event.autoscaler.scale-down-samples=2",
+        "product-created-event.autoscaler.cooldown=3s"})
+public class ListenerConcurrencyAutoscalerIntegrationTest {
+
+    @MockitoBean
+    NotificationClient notificationClient;
+
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    ListenerConcurrencyAutoscaler autoscaler;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private volatile long callDelayMillis = 100;
+
+    @Test
+    public void testSample_whenLagBuildsUpAndIsWorkedOff_growsToPartitionCountAndShrinksBack() throws Exception {
+        //Arrange
+        doAnswer(invocation -> {
+            Thread.sleep(callDelayMillis);
+            return null;
+        }).when(notificationClient).notifyProductCreated();
+
+        //Act
+        for (int i = 0; i < 300; i++) {
+            kafkaTemplate.send(record());
+        }
+        kafkaTemplate.flush();
+
+        //Assert
+        assertTrue(eventually(() -> concurrency() == 3 && autoscaler.partitionsExhausted()),
+                "expected 3 consumers and the partitions exhausted signal");
+        callDelayMillis = 0;
+        assertTrue(eventually(() -> concurrency() == 1 && !autoscaler.partitionsExhausted()),
+                "expected the listener to shrink back to 1 consumer");
+    }
+
+    private double concurrency() {
+        return meterRegistry.get("product.created.event.listener.concurrency").gauge().value();
+    }
+
+    private boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private ProducerRecord<String, Object> record() {
+        ProductCreatedEvent event = new ProductCreatedEvent(UUID.randomUUID().toString(), "test title", new BigDecimal(10), 11);
+        ProducerRecord<String, Object> record =
+                new ProducerRecord<>("product-created-events-topic", event.getProductId(), event);
+        record.headers().add("messageId", UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+}
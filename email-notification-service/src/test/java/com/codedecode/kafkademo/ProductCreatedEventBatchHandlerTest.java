@@ -0,0 +1,195 @@
+package com.codedecode.kafkademo;
+
+import com.codedecode.kafkademo.client.NotificationClient;
+import com.codedecode.kafkademo.dedup.DuplicateRecordFilter;
+import com.codedecode.kafkademo.dedup.ProcessedMessageIds;
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import com.codedecode.kafkademo.error.NotRetryableException;
+import com.codedecode.kafkademo.error.RetryableException;
+import com.codedecode.kafkademo.handler.ProductCreatedEventBatchHandler;
+import com.codedecode.kafkademo.repo.ProcessedEventRepository;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.listener.adapter.FilteringBatchMessageListenerAdapter;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs ProductCreatedEventBatchHandler against the real H2 database, the listener containers are not started
+ * so the handler is called directly with the records of a simulated poll.
+ */
+@SpringBootTest(properties = {"product-created-event.listener.mode=batch",
+        "spring.kafka.listener.auto-startup=false"})
+public class ProductCreatedEventBatchHandlerTest {
+
+    @MockitoBean
+    NotificationClient notificationClient;
+
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    ProductCreatedEventBatchHandler batchHandler;
+
+    @Autowired
+    ProcessedMessageIds processedMessageIds;
+
+    @Autowired
+    DuplicateRecordFilter duplicateRecordFilter;
+
+    @BeforeEach
+    void setUp() {
+        processedEventRepository.deleteAll();
+        when(notificationClient.notifyProductCreatedAsync()).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    public void testHandle_whenPollContainsProcessedAndRepeatedMessages_onlyNewMessagesAreProcessed() {
+        //Arrange
+        String processedMessageId = UUID.randomUUID().toString();
+        processedEventRepository.save(new ProcessedEventEntity(processedMessageId, "processed-product"));
+        // the row was written by "another consumer", it becomes known in memory on the next partition assignment
+        processedMessageIds.catchUp();
+        String repeatedMessageId = UUID.randomUUID().toString();
+        List<ConsumerRecord<String, Object>> records = List.of(
+                record(0, processedMessageId),
+                record(1, repeatedMessageId),
+                record(2, UUID.randomUUID().toString()),
+                record(3, repeatedMessageId));
+
+        //Act
+        batchHandler.handle(records);
+
+        //Assert
+        verify(notificationClient, times(2)).notifyProductCreatedAsync();
+        assertEquals(3, processedEventRepository.count());
+        assertNotNull(processedEventRepository.findByMessageId(repeatedMessageId));
+    }
+
+    @Test
+    public void testHandle_whenRecordFails_storesRecordsBeforeItAndReportsIt() {
+        //Arrange
+        List<ConsumerRecord<String, Object>> records = List.of(
+                record(0, UUID.randomUUID().toString()),
+                record(1, UUID.randomUUID().toString()),
+                record(2, UUID.randomUUID().toString()),
+                record(3, UUID.randomUUID().toString()));
+        when(notificationClient.notifyProductCreatedAsync())
+                .thenReturn(CompletableFuture.completedFuture(null), CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.failedFuture(new RetryableException("remote service unavailable")));
+
+        //Act
+        BatchListenerFailedException exception =
+                assertThrows(BatchListenerFailedException.class, () -> batchHandler.handle(records));
+
+        //Assert
+        assertSame(records.get(2), exception.getRecord());
+        assertInstanceOf(RetryableException.class, exception.getCause());
+        assertEquals(2, processedEventRepository.count());
+        assertNotNull(processedEventRepository.findByMessageId(messageId(records.get(1))));
+        assertNull(processedEventRepository.findByMessageId(messageId(records.get(2))));
+    }
+
+    @Test
+    public void testHandle_whenRecordCouldNotBeDeserialized_reportsIt() {
+        //Arrange
+        ConsumerRecord<String, Object> undeserializable =
+                new ConsumerRecord<>("product-created-events-topic", 0, 1, "key", null);
+        undeserializable.headers().add("messageId", UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        undeserializable.headers().add(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, new byte[0]);
+        List<ConsumerRecord<String, Object>> records = List.of(record(0, UUID.randomUUID().toString()), undeserializable);
+
+        //Act
+        BatchListenerFailedException exception =
+                assertThrows(BatchListenerFailedException.class, () -> batchHandler.handle(records));
+
+        //Assert
+        assertSame(undeserializable, exception.getRecord());
+        assertEquals(1, processedEventRepository.count());
+    }
+
+    @Test
+    public void testHandle_withFilteredDuplicateAheadOfAFailingRecord_recoversTheFailingRecord() {
+        //Arrange
+        FilteringBatchMessageListenerAdapter<String, Object> listener = new FilteringBatchMessageListenerAdapter<>(
+                batchHandler::handle, duplicateRecordFilter, true);
+        // offset 0 was dropped as a known duplicate while deserializing, offset 2 fails, offset 1 goes through
+        ConsumerRecord<String, Object> duplicate = new ConsumerRecord<>("product-created-events-topic", 0, 0,
+                "key", DuplicateRecordFilter.SKIPPED_DUPLICATE);
+        List<ConsumerRecord<String, Object>> poll = List.of(duplicate,
+                record(1, UUID.randomUUID().toString()),
+                record(2, UUID.randomUUID().toString()),
+                record(3, UUID.randomUUID().toString()));
+        when(notificationClient.notifyProductCreatedAsync())
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.failedFuture(new NotRetryableException("rejected by the remote service")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        List<ConsumerRecord<?, ?>> recovered = new ArrayList<>();
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler((record, exception) -> recovered.add(record),
+                new FixedBackOff(0, 0));
+        MessageListenerContainer container = mock(MessageListenerContainer.class);
+        when(container.getContainerProperties()).thenReturn(new ContainerProperties("product-created-events-topic"));
+        @SuppressWarnings("unchecked")
+        Consumer<String, Object> consumer = mock(Consumer.class);
+        TopicPartition partition = new TopicPartition("product-created-events-topic", 0);
+
+        //Act
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class,
+                () -> listener.onMessage(new ArrayList<>(poll), mock(Acknowledgment.class), consumer));
+        // the error handler works on the whole poll, duplicate included. It seeks and rethrows to the container
+        assertThrows(KafkaException.class, () -> errorHandler.handleBatch(exception,
+                new ConsumerRecords<>(Map.of(partition, poll), Map.of()), consumer, container, () -> { }));
+
+        //Assert
+        assertEquals(1, recovered.size());
+        assertSame(poll.get(2), recovered.get(0));
+        // the records after it are redelivered
+        verify(consumer).seek(partition, 3);
+    }
+
+    private ConsumerRecord<String, Object> record(long offset, String messageId) {
+        ProductCreatedEvent event = new ProductCreatedEvent(UUID.randomUUID().toString(), "test title", new BigDecimal(10), 11);
+        ConsumerRecord<String, Object> record =
+                new ConsumerRecord<>("product-created-events-topic", 0, offset, event.getProductId(), event);
+        record.headers().add("messageId", messageId.getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    private String messageId(ConsumerRecord<String, Object> record) {
+        return new String(record.headers().lastHeader("messageId").value(), StandardCharsets.UTF_8);
+    }
+}
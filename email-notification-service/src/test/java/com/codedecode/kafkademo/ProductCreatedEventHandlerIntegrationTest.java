@@ -4,6 +4,7 @@ import com.codedecode.kafkademo.entity.ProcessedEventEntity;
 import com.codedecode.kafkademo.handler.ProductCreatedEventHandler;
 import com.codedecode.kafkademo.repo.ProcessedEventRepository;
 import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import com.codedecode.kafkademo.tracing.PublishTimestamp;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -21,8 +22,10 @@ import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -103,6 +106,8 @@ public class ProductCreatedEventHandlerIntegrationTest {
                 new ProducerRecord<>("product-created-events-topic", messageKey, productCreatedEvent);
         record.headers().add("messageId", messageId.getBytes());
         record.headers().add("messageKey", messageKey.getBytes());
+        byte[] publishTimestamp = ByteBuffer.allocate(Long.BYTES).putLong(PublishTimestamp.nowEpochNanos()).array();
+        record.headers().add(PublishTimestamp.HEADER, publishTimestamp);
 
         ProcessedEventEntity existingProcessedEventEntity = new ProcessedEventEntity();
         existingProcessedEventEntity.setMessageId(messageId);
@@ -137,17 +142,21 @@ public class ProductCreatedEventHandlerIntegrationTest {
         ArgumentCaptor<String> messageKeyCaptor = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<ProductCreatedEvent> processedEventEntityCaptor =
                 ArgumentCaptor.forClass(ProductCreatedEvent.class);
+        ArgumentCaptor<byte[]> publishTimestampCaptor = ArgumentCaptor.forClass(byte[].class);
         //verify that the handle method of eventHandler is called once with the expected parameters
        verify(eventHandler, timeout(5000).times(1))
                .handle(processedEventEntityCaptor.capture(),
                        messageIdCaptor.capture(),
-                       messageKeyCaptor.capture()
+                       messageKeyCaptor.capture(),
+                       anyLong(),
+                       publishTimestampCaptor.capture()
                       );
        assertEquals(messageId, messageIdCaptor.getValue());
        assertEquals(messageKey, messageKeyCaptor.getValue());
        assertEquals(productCreatedEvent.getProductId(),
                processedEventEntityCaptor.getValue().getProductId()
                );
+       assertArrayEquals(publishTimestamp, publishTimestampCaptor.getValue());
 
     }
 }
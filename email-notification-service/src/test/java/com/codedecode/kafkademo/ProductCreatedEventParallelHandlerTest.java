@@ -0,0 +1,194 @@
+package com.codedecode.kafkademo;
+
+import com.codedecode.kafkademo.client.NotificationClient;
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import com.codedecode.kafkademo.error.NotRetryableException;
+import com.codedecode.kafkademo.error.RetryableException;
+import com.codedecode.kafkademo.handler.ProductCreatedEventParallelHandler;
+import com.codedecode.kafkademo.idempotency.IdempotencyStore;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ProductCreatedEventParallelHandlerTest {
+
+    private static final String TOPIC = "product-created-events-topic";
+
+    private NotificationClient notificationClient;
+    private IdempotencyStore idempotencyStore;
+    private ConsumerRecordRecoverer deadLetterRecoverer;
+    private ProductCreatedEventParallelHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        notificationClient = mock(NotificationClient.class);
+        idempotencyStore = mock(IdempotencyStore.class);
+        deadLetterRecoverer = mock(ConsumerRecordRecoverer.class);
+        handler = new ProductCreatedEventParallelHandler(notificationClient, idempotencyStore, deadLetterRecoverer,
+                4, 2, Duration.ofMillis(10), Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        handler.destroy();
+    }
+
+    @Test
+    public void testHandle_whenRecordsOfManyKeys_keepsOffsetOrderPerKey() throws InterruptedException {
+        //Arrange
+        Map<String, List<Long>> processedOffsetsByKey = new ConcurrentHashMap<>();
+        Map<String, Long> offsetByMessageId = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            ProcessedEventEntity entity = invocation.getArgument(0);
+            processedOffsetsByKey.computeIfAbsent(entity.getProductId(), key -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(offsetByMessageId.get(entity.getMessageId()));
+            return null;
+        }).when(idempotencyStore).markProcessed(any(ProcessedEventEntity.class));
+        doAnswer(invocation -> {
+            Thread.sleep(1);
+            return null;
+        }).when(notificationClient).notifyProductCreated();
+        CountDownLatch acknowledged = new CountDownLatch(200);
+
+        //Act
+        for (long offset = 0; offset < 200; offset++) {
+            String productId = "product-" + (offset % 10);
+            ConsumerRecord<String, Object> record = record(0, offset, productId);
+            offsetByMessageId.put(messageId(record), offset);
+            handler.handle(record, acknowledged::countDown);
+        }
+
+        //Assert
+        assertTrue(acknowledged.await(10, TimeUnit.SECONDS));
+        assertEquals(10, processedOffsetsByKey.size());
+        processedOffsetsByKey.forEach((productId, offsets) -> {
+            List<Long> sorted = new ArrayList<>(offsets);
+            Collections.sort(sorted);
+            assertEquals(sorted, offsets, "offsets of " + productId);
+            assertEquals(20, offsets.size());
+        });
+    }
+
+    @Test
+    public void testHandle_whenRetryableExceptionPersists_publishesToDltAndAcknowledges() throws InterruptedException {
+        //Arrange
+        doThrow(new RetryableException("timeout")).when(notificationClient).notifyProductCreated();
+        ConsumerRecord<String, Object> record = record(0, 0, "product-1");
+        CountDownLatch acknowledged = new CountDownLatch(1);
+
+        //Act
+        handler.handle(record, acknowledged::countDown);
+
+        //Assert
+        assertTrue(acknowledged.await(5, TimeUnit.SECONDS));
+        verify(notificationClient, times(3)).notifyProductCreated();
+        verify(deadLetterRecoverer).accept(eq(record), any(RetryableException.class));
+        verify(idempotencyStore, never()).markProcessed(any(ProcessedEventEntity.class));
+    }
+
+    @Test
+    public void testHandle_whenNotRetryableException_publishesToDltWithoutRetry() throws InterruptedException {
+        //Arrange
+        doThrow(new NotRetryableException("bad request")).when(notificationClient).notifyProductCreated();
+        ConsumerRecord<String, Object> record = record(0, 0, "product-1");
+        CountDownLatch acknowledged = new CountDownLatch(1);
+
+        //Act
+        handler.handle(record, acknowledged::countDown);
+
+        //Assert
+        assertTrue(acknowledged.await(5, TimeUnit.SECONDS));
+        verify(notificationClient, times(1)).notifyProductCreated();
+        verify(deadLetterRecoverer).accept(eq(record), any(NotRetryableException.class));
+    }
+
+    @Test
+    public void testAwaitRevoked_whenRecordIsRunning_waitsForItAndSkipsQueuedRecords() throws InterruptedException {
+        //Arrange
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).doNothing().when(notificationClient).notifyProductCreated();
+        Acknowledgment running = mock(Acknowledgment.class);
+        Acknowledgment queued = mock(Acknowledgment.class);
+        handler.handle(record(0, 0, "product-1"), running);
+        handler.handle(record(0, 1, "product-1"), queued);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        //Act
+        new Thread(() -> {
+            sleepQuietly(100);
+            release.countDown();
+        }).start();
+        handler.awaitRevoked(List.of(new TopicPartition(TOPIC, 0)));
+
+        //Assert
+        verify(running).acknowledge();
+        verify(queued, never()).acknowledge();
+        verify(notificationClient, times(1)).notifyProductCreated();
+    }
+
+    @Test
+    public void testHandle_afterRevokeOfAnotherPartition_keepsProcessing() {
+        //Arrange
+        handler.awaitRevoked(List.of(new TopicPartition(TOPIC, 1)));
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+
+        //Act
+        handler.handle(record(0, 0, "product-1"), acknowledgment);
+
+        //Assert
+        verify(acknowledgment, timeout(5000)).acknowledge();
+    }
+
+    private ConsumerRecord<String, Object> record(int partition, long offset, String productId) {
+        ProductCreatedEvent event = new ProductCreatedEvent(productId, "title", new BigDecimal("10"), 1);
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>(TOPIC, partition, offset, productId, event);
+        record.headers().add("messageId", UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    private String messageId(ConsumerRecord<String, Object> record) {
+        return new String(record.headers().lastHeader("messageId").value(), StandardCharsets.UTF_8);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
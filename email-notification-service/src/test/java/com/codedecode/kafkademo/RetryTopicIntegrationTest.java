@@ -0,0 +1,134 @@
+package com.codedecode.kafkademo;
+
+import com.codedecode.kafkademo.client.NotificationClient;
+import com.codedecode.kafkademo.error.RetryableException;
+import com.codedecode.kafkademo.repo.ProcessedEventRepository;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.kafka.retrytopic.RetryTopicHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs the retry topics against an embedded broker with short delays:
+ * product-created-events-topic -> -retry-100 -> -retry-200 -> .DLT
+ */
+@EmbeddedKafka(partitions = 1)
+@SpringBootTest(properties = {"spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "product-created-event.retry.replicas=1",
+        "product-created-event.retry.max-attempts=3",
+        "product-created-event.retry.initial-interval=100ms",
+        "product-created-event.retry.multiplier=2",
+        "product-created-event.retry.max-interval=1s"})
+public class RetryTopicIntegrationTest {
+
+    @MockitoBean
+    NotificationClient notificationClient;
+
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Test
+    public void testHandle_whenRetryableExceptionOnce_processesTheRecordFromTheRetryTopic() throws Exception {
+        //Arrange
+        doThrow(new RetryableException("remote service unavailable")).doNothing()
+                .when(notificationClient).notifyProductCreated();
+        String messageId = UUID.randomUUID().toString();
+
+        //Act
+        kafkaTemplate.send(record(messageId)).get();
+
+        //Assert
+        verify(notificationClient, timeout(30000).times(2)).notifyProductCreated();
+        assertNotNull(waitForProcessedEvent(messageId));
+    }
+
+    @Test
+    public void testHandle_whenRetryableExceptionPersists_publishesToDltWithOriginalOffsetAndAttempts() throws Exception {
+        //Arrange
+        doThrow(new RetryableException("remote service unavailable")).when(notificationClient).notifyProductCreated();
+        String messageId = UUID.randomUUID().toString();
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps(embeddedKafkaBroker, "dlt-reader", false);
+        consumerProps.put("auto.offset.reset", "earliest");
+
+        //Act
+        RecordMetadata sent = kafkaTemplate.send(record(messageId)).get().getRecordMetadata();
+
+        //Assert
+        try (Consumer<String, byte[]> consumer = new DefaultKafkaConsumerFactory<>(consumerProps,
+                new StringDeserializer(), new ByteArrayDeserializer()).createConsumer()) {
+            consumer.subscribe(List.of("product-created-events-topic.DLT"));
+            ConsumerRecord<String, byte[]> deadLetter = null;
+            long deadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+            while (deadLetter == null && System.nanoTime() < deadline) {
+                for (ConsumerRecord<String, byte[]> record : KafkaTestUtils.getRecords(consumer, Duration.ofSeconds(5))) {
+                    if (messageId.equals(new String(record.headers().lastHeader("messageId").value(), StandardCharsets.UTF_8))) {
+                        deadLetter = record;
+                    }
+                }
+            }
+            assertNotNull(deadLetter);
+            assertEquals("product-created-events-topic",
+                    new String(deadLetter.headers().lastHeader(KafkaHeaders.ORIGINAL_TOPIC).value(), StandardCharsets.UTF_8));
+            assertEquals(sent.offset(),
+                    ByteBuffer.wrap(deadLetter.headers().lastHeader(KafkaHeaders.ORIGINAL_OFFSET).value()).getLong());
+            // the header holds the number of the next attempt, max-attempts + 1 once the record is on the DLT
+            assertEquals(4,
+                    ByteBuffer.wrap(deadLetter.headers().lastHeader(RetryTopicHeaders.DEFAULT_HEADER_ATTEMPTS).value()).getInt());
+        }
+        verify(notificationClient, timeout(5000).times(3)).notifyProductCreated();
+    }
+
+    private ProducerRecord<String, Object> record(String messageId) {
+        ProductCreatedEvent event = new ProductCreatedEvent(UUID.randomUUID().toString(), "test title", new BigDecimal(10), 11);
+        ProducerRecord<String, Object> record =
+                new ProducerRecord<>("product-created-events-topic", event.getProductId(), event);
+        record.headers().add("messageId", messageId.getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+
+    private Object waitForProcessedEvent(String messageId) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            Object processedEvent = processedEventRepository.findByMessageId(messageId);
+            if (processedEvent != null) {
+                return processedEvent;
+            }
+            Thread.sleep(100);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,362 @@
+package com.codedecode.kafkademo.benchmark;
+
+import com.codedecode.kafkademo.client.NotificationClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pushes a few hundred thousand products through product-service into this service: product-service runs as its
+ * own process from its packaged jar against an embedded broker, every product is created with
+ * POST /products/createProduct (benchmark.concurrency requests at a time, a 429 is retried after its Retry-After),
+ * and this service works the events off against a stubbed remote microservice. Records:
+ *  - create rate and end to end rate (events / time from the first request until the consumer group has no lag)
+ *  - lag left when the last product was created and the time the consumers needed to work it off
+ *  - end to end latency percentiles, publishTimestamp header (set by product-service) -> processed, from ProcessingLatency
+ *
+ * Run with: mvn -f ../product-service package -DskipTests, then mvn test -Pbenchmark -Dtest=EndToEndThroughputBenchmark
+ * Every run appends one line to target/benchmark-results/end-to-end-throughput.csv, product-service logs to
+ * target/benchmark-results/product-service.log. Throughput depends on the machine, so the run is only compared with
+ * a baseline for -Dbenchmark.environment=<name>: it fails when the end to end rate is more than
+ * benchmark.max-regression below the one in benchmark/end-to-end-baseline-<name>.properties. A baseline holds the
+ * benchmark.events it was recorded with, a run with a different count is refused before it starts (a short run
+ * spends a larger share of its time ramping up and draining).
+ * -Dbenchmark.update-baseline=true records the measured rate as the new baseline of that environment instead.
+ * Listener settings are taken from system properties, e.g. -Dproduct-created-event.listener.mode=batch, product-service
+ * arguments from benchmark.product-service.args, e.g. -Dbenchmark.product-service.args=--product.create.mode=accept
+ */
+@Tag("benchmark")
+@EmbeddedKafka(partitions = 3, topics = "product-created-events-topic")
+@SpringBootTest(properties = {"spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        // client side percentiles of the end to end timer, kept for the whole run
+        "management.metrics.distribution.percentiles.product.created.event.processing.latency=0.5,0.9,0.99,0.999",
+        "management.metrics.distribution.expiry.product.created.event.processing.latency=1h"})
+public class EndToEndThroughputBenchmark {
+
+    private static final int EVENTS = Integer.getInteger("benchmark.events", 200_000);
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 64);
+    private static final double MAX_REGRESSION = Double.parseDouble(System.getProperty("benchmark.max-regression", "0.2"));
+    private static final String ENVIRONMENT = System.getProperty("benchmark.environment");
+    private static final boolean UPDATE_BASELINE = Boolean.getBoolean("benchmark.update-baseline");
+    private static final Duration DRAIN_TIMEOUT = Duration.parse(System.getProperty("benchmark.drain-timeout", "PT15M"));
+    private static final Duration STARTUP_TIMEOUT = Duration.parse(System.getProperty("benchmark.startup-timeout", "PT2M"));
+    private static final Path PRODUCT_SERVICE_JAR = Path.of(System.getProperty("benchmark.product-service.jar",
+            "../product-service/target/ProductApplication-0.0.1-SNAPSHOT.jar"));
+    private static final String PRODUCT_SERVICE_ARGS = System.getProperty("benchmark.product-service.args", "");
+    private static final Path RESULTS = Path.of("target", "benchmark-results", "end-to-end-throughput.csv");
+    private static final Path PRODUCT_SERVICE_LOG = Path.of("target", "benchmark-results", "product-service.log");
+    private static final Path BASELINES = Path.of("src", "test", "resources", "benchmark");
+    private static final String TOPIC = "product-created-events-topic";
+    private static final String GROUP_ID = "product-created-events";
+
+    private final Logger logger = LoggerFactory.getLogger(EndToEndThroughputBenchmark.class);
+
+    @MockitoBean
+    NotificationClient notificationClient;
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafka;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    KafkaListenerEndpointRegistry listenerRegistry;
+
+    @Value("${product-created-event.listener.mode}")
+    String listenerMode;
+
+    @Value("${product-created-event.listener.concurrency}")
+    int listenerConcurrency;
+
+    @Test
+    void benchmarkProductCreatedEvents_fromCreateProductToNotification() throws Exception {
+        Properties baseline = loadBaseline();
+        when(notificationClient.notifyProductCreatedAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        // the rebalance is not part of the measurement
+        long assignmentDeadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+        while (assignedPartitions() < 3) {
+            assertTrue(System.nanoTime() < assignmentDeadline, "the partitions of " + TOPIC + " were not assigned");
+            Thread.sleep(100);
+        }
+
+        long start;
+        long created;
+        long lagAfterCreate;
+        long drained;
+        LongAdder failures = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        int port = freePort();
+        Process productService = startProductService(port);
+        try (HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+             Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafka.getBrokersAsString()))) {
+            awaitStarted(productService, httpClient, port);
+            URI createProduct = URI.create("http://localhost:" + port + "/products/createProduct");
+            Semaphore inFlight = new Semaphore(CONCURRENCY);
+            start = System.nanoTime();
+            for (int i = 0; i < EVENTS; i++) {
+                inFlight.acquire();
+                createProduct(httpClient, createProduct, i, rejected).whenComplete((ignored, exception) -> {
+                    if (exception != null) {
+                        failures.increment();
+                    }
+                    inFlight.release();
+                });
+            }
+            // every response is in
+            inFlight.acquire(CONCURRENCY);
+            created = System.nanoTime();
+            assertEquals(0, failures.sum(), "every product is expected to be created");
+
+            // with product.create.mode=accept the last records may still be in product-service's producer
+            Map<TopicPartition, Long> endOffsets = endOffsets(admin);
+            long deadline = created + DRAIN_TIMEOUT.toNanos();
+            while (endOffsets.values().stream().mapToLong(Long::longValue).sum() < EVENTS) {
+                assertTrue(System.nanoTime() < deadline, "product-service did not publish every event within " + DRAIN_TIMEOUT);
+                Thread.sleep(100);
+                endOffsets = endOffsets(admin);
+            }
+            lagAfterCreate = lag(admin, endOffsets);
+            while (lag(admin, endOffsets) > 0) {
+                assertTrue(System.nanoTime() < deadline, "consumer group still lagging after " + DRAIN_TIMEOUT);
+                Thread.sleep(100);
+            }
+            drained = System.nanoTime();
+        } finally {
+            stop(productService);
+        }
+
+        Timer endToEnd = meterRegistry.get("product.created.event.processing.latency").tag("stage", "end_to_end").timer();
+        HistogramSnapshot latency = endToEnd.takeSnapshot();
+        double createRate = EVENTS / seconds(created - start);
+        double messagesPerSecond = EVENTS / seconds(drained - start);
+        String line = String.format("%s,%d,%d,%.1f,%.1f,%d,%d,%.0f,%s,%.2f%n", listenerMode, listenerConcurrency, EVENTS, createRate, messagesPerSecond,
+                rejected.sum(), lagAfterCreate, (drained - created) / 1_000_000.0,
+                IntStream.range(0, latency.percentileValues().length)
+                        .mapToObj(i -> String.format("%.2f", latency.percentileValues()[i].value(TimeUnit.MILLISECONDS)))
+                        .collect(Collectors.joining(",")),
+                latency.max(TimeUnit.MILLISECONDS));
+        report(line);
+
+        // each event was processed exactly once, redeliveries after a rebalance are not timed again
+        assertEquals(EVENTS, endToEnd.count());
+        compareWithBaseline(baseline, messagesPerSecond);
+    }
+
+    /*
+    * One product, retried after Retry-After while product-service sheds load (AdmissionControl)
+    * */
+    private CompletableFuture<Void> createProduct(HttpClient httpClient, URI createProduct, int number, LongAdder rejected) {
+        HttpRequest request = HttpRequest.newBuilder(createProduct)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"title\":\"Benchmark Product " + number + "\",\"price\":12.34,\"quantity\":1}"))
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenCompose(response -> {
+            if (response.statusCode() == 429) {
+                rejected.increment();
+                long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+                return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(retryAfter, TimeUnit.SECONDS))
+                        .thenCompose(ignored -> createProduct(httpClient, createProduct, number, rejected));
+            }
+            if (response.statusCode() / 100 != 2) {
+                return CompletableFuture.failedFuture(new IllegalStateException(
+                        "createProduct answered " + response.statusCode() + ", see " + PRODUCT_SERVICE_LOG));
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    private Process startProductService(int port) throws IOException {
+        assertTrue(Files.exists(PRODUCT_SERVICE_JAR), "product-service is started from " + PRODUCT_SERVICE_JAR.toAbsolutePath()
+                + ", build it first: mvn -f ../product-service package -DskipTests");
+        List<String> command = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-jar", PRODUCT_SERVICE_JAR.toString(),
+                "--server.port=" + port,
+                "--spring.kafka.producer.bootstrap-servers=" + embeddedKafka.getBrokersAsString()));
+        if (!PRODUCT_SERVICE_ARGS.isBlank()) {
+            command.addAll(List.of(PRODUCT_SERVICE_ARGS.trim().split("\\s+")));
+        }
+        Files.createDirectories(PRODUCT_SERVICE_LOG.getParent());
+        logger.info("**** Starting product-service: {} ****", String.join(" ", command));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(PRODUCT_SERVICE_LOG.toFile())
+                .start();
+    }
+
+    private void awaitStarted(Process productService, HttpClient httpClient, int port) throws Exception {
+        HttpRequest health = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health")).build();
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (true) {
+            assertTrue(productService.isAlive(), "product-service exited, see " + PRODUCT_SERVICE_LOG);
+            assertTrue(System.nanoTime() < deadline, "product-service did not start within " + STARTUP_TIMEOUT + ", see " + PRODUCT_SERVICE_LOG);
+            try {
+                if (httpClient.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(500);
+        }
+    }
+
+    private static void stop(Process productService) throws InterruptedException {
+        productService.destroy();
+        if (!productService.waitFor(30, TimeUnit.SECONDS)) {
+            productService.destroyForcibly();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /*
+    * Partitions of the topic assigned to the listener containers of this service, all of them share one consumer group
+    * */
+    private long assignedPartitions() {
+        return listenerRegistry.getListenerContainers().stream()
+                .map(MessageListenerContainer::getAssignedPartitions)
+                .filter(Objects::nonNull)
+                .flatMap(Collection::stream)
+                .filter(partition -> partition.topic().equals(TOPIC))
+                .count();
+    }
+
+    private static Map<TopicPartition, Long> endOffsets(Admin admin) throws Exception {
+        Map<TopicPartition, OffsetSpec> latest = IntStream.range(0, 3).boxed()
+                .collect(Collectors.toMap(partition -> new TopicPartition(TOPIC, partition), partition -> OffsetSpec.latest()));
+        return admin.listOffsets(latest).all().get().entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().offset()));
+    }
+
+    /*
+    * Events of the run not committed by the consumer group yet, all of them before it joined
+    * */
+    private static long lag(Admin admin, Map<TopicPartition, Long> endOffsets) throws Exception {
+        Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(GROUP_ID)
+                .partitionsToOffsetAndMetadata().get();
+        long lag = 0;
+        for (Map.Entry<TopicPartition, Long> endOffset : endOffsets.entrySet()) {
+            OffsetAndMetadata offset = committed.get(endOffset.getKey());
+            lag += endOffset.getValue() - (offset == null ? 0 : offset.offset());
+        }
+        return lag;
+    }
+
+    /*
+    * null when the run is not compared with a baseline
+    * */
+    private Properties loadBaseline() throws IOException {
+        if (ENVIRONMENT == null) {
+            assertFalse(UPDATE_BASELINE, "-Dbenchmark.update-baseline=true needs -Dbenchmark.environment=<name>, baselines are kept per environment");
+            logger.info("**** No benchmark.environment given, end to end throughput is not compared with a baseline ****");
+            return null;
+        }
+        if (UPDATE_BASELINE) {
+            return null;
+        }
+        Path baselineFile = baselineFile();
+        assertTrue(Files.exists(baselineFile), "no baseline for " + ENVIRONMENT + " yet, record one with -Dbenchmark.update-baseline=true");
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(baselineFile, StandardCharsets.UTF_8)) {
+            baseline.load(reader);
+        }
+        String events = baseline.getProperty("events");
+        assertEquals(String.valueOf(EVENTS), events, "the " + ENVIRONMENT + " baseline was recorded with " + events
+                + " events, run with -Dbenchmark.events=" + events + " or record a new one with -Dbenchmark.update-baseline=true");
+        return baseline;
+    }
+
+    private void compareWithBaseline(Properties baseline, double messagesPerSecond) throws IOException {
+        if (UPDATE_BASELINE) {
+            Properties recorded = new Properties();
+            recorded.setProperty("events", String.valueOf(EVENTS));
+            recorded.setProperty("messagesPerSecond", String.format("%.0f", messagesPerSecond));
+            Files.createDirectories(BASELINES);
+            try (Writer writer = Files.newBufferedWriter(baselineFile(), StandardCharsets.UTF_8)) {
+                recorded.store(writer, "EndToEndThroughputBenchmark on " + ENVIRONMENT + ", recorded with -Dbenchmark.update-baseline=true");
+            }
+            return;
+        }
+        if (baseline == null) {
+            return;
+        }
+        double expected = Double.parseDouble(baseline.getProperty("messagesPerSecond"));
+        double floor = expected * (1 - MAX_REGRESSION);
+        assertTrue(messagesPerSecond >= floor, String.format(
+                "end to end throughput %.1f/s is more than %.0f%% below the %s baseline of %.1f/s",
+                messagesPerSecond, MAX_REGRESSION * 100, ENVIRONMENT, expected));
+    }
+
+    private static Path baselineFile() {
+        return BASELINES.resolve("end-to-end-baseline-" + ENVIRONMENT + ".properties");
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+
+    private void report(String line) throws IOException {
+        Files.createDirectories(RESULTS.getParent());
+        if (Files.notExists(RESULTS)) {
+            Files.writeString(RESULTS, "listenerMode,concurrency,events,createdPerSecond,messagesPerSecond,rejected,lagAfterCreate,drainMs,p50Ms,p90Ms,p99Ms,p999Ms,maxMs\n",
+                    StandardCharsets.UTF_8);
+        }
+        Files.writeString(RESULTS, line, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        logger.info("**** End to end throughput: {} ****", line.strip());
+    }
+}
@@ -0,0 +1,126 @@
+package com.codedecode.kafkademo.benchmark;
+
+import com.codedecode.kafkademo.EmailNotificationApplication;
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import com.codedecode.kafkademo.idempotency.IdempotencyStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH: the two IdempotencyStore backends with a large number of processed messages already stored.
+ *
+ * jpa    - processed-events in a file based H2 database with ProcessedMessageIds in front (Bloom filter sized for the table)
+ * mapped - MappedIdempotencyStore
+ *
+ * isProcessedNew      - the common case, a message seen for the first time
+ * isProcessedExisting - a redelivery of a random stored message, mostly outside the recently processed cache
+ * markProcessed       - storing a new message
+ *
+ * Filling 10M entries takes several minutes per backend, use -p entries=1000000 for a quicker run.
+ * Run with: mvn test -Pjmh -Djmh.include=IdempotencyStore
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class IdempotencyStoreBenchmark {
+
+    private static final Path DATA_DIRECTORY = Path.of("target", "jmh-idempotency-store");
+    private static final int FILL_CHUNK = 10_000;
+
+    @Param({"jpa", "mapped"})
+    public String store;
+
+    @Param({"10000000"})
+    public int entries;
+
+    private ConfigurableApplicationContext context;
+    private IdempotencyStore idempotencyStore;
+
+    @Setup
+    public void setUp() throws IOException {
+        FileSystemUtils.deleteRecursively(DATA_DIRECTORY);
+        context = new SpringApplicationBuilder(EmailNotificationApplication.class)
+                .web(WebApplicationType.NONE)
+                // command line arguments, they take precedence over application.properties
+                .run("--spring.kafka.listener.auto-startup=false",
+                        "--logging.level.root=WARN",
+                        "--product-created-event.idempotency-store.type=" + store,
+                        "--product-created-event.idempotency-store.mapped.directory=" + DATA_DIRECTORY.resolve("mapped"),
+                        "--product-created-event.idempotency-store.mapped.expected-entries=" + entries,
+                        "--product-created-event.dedup-cache.expected-insertions=" + 2L * entries,
+                        "--spring.datasource.url=jdbc:h2:file:./" + DATA_DIRECTORY.resolve("h2/processed-events"),
+                        "--spring.jpa.hibernate.ddl-auto=create");
+        idempotencyStore = context.getBean(IdempotencyStore.class);
+
+        List<ProcessedEventEntity> chunk = new ArrayList<>(FILL_CHUNK);
+        for (int i = 0; i < entries; i++) {
+            chunk.add(new ProcessedEventEntity(existingMessageId(i), "product-" + i));
+            if (chunk.size() == FILL_CHUNK || i == entries - 1) {
+                if ("jpa".equals(store)) {
+                    // straight into the table: these rows stand for history written by earlier runs and other consumers
+                    context.getBean(JdbcTemplate.class).batchUpdate(
+                            "insert into \"processed-events\" (message_id, product_id) values (?, ?)", chunk, chunk.size(),
+                            (ps, processedEvent) -> {
+                                ps.setString(1, processedEvent.getMessageId());
+                                ps.setString(2, processedEvent.getProductId());
+                            });
+                } else {
+                    idempotencyStore.markProcessed(chunk);
+                }
+                chunk.clear();
+            }
+        }
+        // what happens on partition assignment, the jpa store reads the rows written since its startup load
+        idempotencyStore.refresh();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean isProcessedNew() {
+        return idempotencyStore.isProcessed(UUID.randomUUID().toString());
+    }
+
+    @Benchmark
+    public boolean isProcessedExisting() {
+        return idempotencyStore.isProcessed(existingMessageId(ThreadLocalRandom.current().nextInt(entries)));
+    }
+
+    @Benchmark
+    public void markProcessed() {
+        idempotencyStore.markProcessed(new ProcessedEventEntity(UUID.randomUUID().toString(), "product"));
+    }
+
+    private static String existingMessageId(int i) {
+        return new UUID(0x5eed_0000_0000_4000L, 0x8000_0000_0000_0000L | i).toString();
+    }
+}
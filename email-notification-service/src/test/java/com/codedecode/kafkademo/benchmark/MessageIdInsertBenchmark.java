@@ -0,0 +1,112 @@
+package com.codedecode.kafkademo.benchmark;
+
+import com.codedecode.kafkademo.EmailNotificationApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH: insert rate into the unique message_id index of processed-events (file based H2, the table Hibernate
+ * creates for ProcessedEventEntity) for the two kinds of messageId product-service can send:
+ *
+ * random       - UUID.randomUUID(), every insert lands on a random page of the index
+ * time-ordered - UUIDv7 as TimeOrderedIdGenerator in product-service makes them, inserts append to the right end
+ *
+ * The table is filled with 1M rows of the same kind first (-Djmh.args="-p rows=..." for more), one operation is one row of a 100 row batch insert,
+ * the way ProductCreatedEventBatchHandler stores a poll.
+ * Run with: mvn test -Pjmh -Djmh.include=MessageIdInsert
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MessageIdInsertBenchmark {
+
+    private static final Path DATA_DIRECTORY = Path.of("target", "jmh-message-id-insert");
+    private static final int BATCH_SIZE = 100;
+    private static final String INSERT = "insert into \"processed-events\" (message_id, product_id) values (?, ?)";
+
+    @Param({"random", "time-ordered"})
+    public String messageIds;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private final AtomicLong lastTimeOrdered = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup
+    public void setUp() throws IOException {
+        FileSystemUtils.deleteRecursively(DATA_DIRECTORY);
+        context = new SpringApplicationBuilder(EmailNotificationApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.kafka.listener.auto-startup=false",
+                        "--logging.level.root=WARN",
+                        "--spring.datasource.url=jdbc:h2:file:./" + DATA_DIRECTORY.resolve("processed-events"),
+                        "--spring.jpa.hibernate.ddl-auto=create");
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        for (int filled = 0; filled < rows; filled += 10_000) {
+            insert(Math.min(10_000, rows - filled));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertBatch() {
+        insert(BATCH_SIZE);
+    }
+
+    private void insert(int count) {
+        List<String> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(nextMessageId());
+        }
+        jdbcTemplate.batchUpdate(INSERT, batch, count, (ps, messageId) -> {
+            ps.setString(1, messageId);
+            ps.setString(2, "product");
+        });
+    }
+
+    private String nextMessageId() {
+        if ("random".equals(messageIds)) {
+            return UUID.randomUUID().toString();
+        }
+        // a copy of TimeOrderedIdGenerator.next() in product-service with node id 0, the services share no code:
+        // 48 bits ms, version 7, 12 bits sequence | variant, node id 0, 52 random bits
+        long state = lastTimeOrdered.accumulateAndGet(System.currentTimeMillis() << 12, (previous, now) -> Math.max(previous + 1, now));
+        return new UUID((state >>> 12) << 16 | 0x7000L | (state & 0xFFF),
+                0x8000_0000_0000_0000L | (ThreadLocalRandom.current().nextLong() & 0x000F_FFFF_FFFF_FFFFL)).toString();
+    }
+}
@@ -0,0 +1,93 @@
+package com.codedecode.kafkademo.benchmark;
+
+import com.codedecode.kafkademo.EmailNotificationApplication;
+import com.codedecode.kafkademo.handler.ProductCreatedEventHandler;
+import com.codedecode.kafkademo.idempotency.IdempotencyStore;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH: ProductCreatedEventHandler.handle through its transactional proxy against the in-memory H2 database
+ * of application.properties, without a broker and with the remote call answered in memory.
+ *
+ * newEvent         - the messageId is unknown, the remote call is made and the processed event is inserted
+ * duplicateEvent   - the messageId was processed before, the redelivered event is skipped
+ *
+ * Hibernate and the JPA repository proxies take a while to reach steady state, hence the longer warmup.
+ *
+ * Run with: mvn test -Pjmh -Djmh.include=ProductCreatedEventHandler
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductCreatedEventHandlerBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private ProductCreatedEventHandler handler;
+    private ProductCreatedEvent event;
+    private String processedMessageId;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(EmailNotificationApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.kafka.listener.auto-startup=false",
+                        "logging.level.root=WARN")
+                .run();
+
+        // every GET to the mock service is answered with 200 without leaving the JVM
+        context.getBean(RestTemplate.class).setRequestFactory((uri, httpMethod) -> {
+            MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+            request.setResponse(new MockClientHttpResponse("{}".getBytes(StandardCharsets.UTF_8), HttpStatus.OK));
+            return request;
+        });
+        handler = context.getBean(ProductCreatedEventHandler.class);
+        // what the rebalance listener does on partition assignment, the jpa store catches up with the table
+        context.getBean(IdempotencyStore.class).refresh();
+
+        event = new ProductCreatedEvent(UUID.randomUUID().toString(), "iPhone 15 Pro Max 256GB",
+                new BigDecimal("1199.99"), 25);
+        processedMessageId = UUID.randomUUID().toString();
+        handler.handle(event, processedMessageId, event.getProductId(), System.currentTimeMillis(), null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void newEvent() {
+        handler.handle(event, UUID.randomUUID().toString(), event.getProductId(), System.currentTimeMillis(), null);
+    }
+
+    @Benchmark
+    public void duplicateEvent() {
+        handler.handle(event, processedMessageId, event.getProductId(), System.currentTimeMillis(), null);
+    }
+}
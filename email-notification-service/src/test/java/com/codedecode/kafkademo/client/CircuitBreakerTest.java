@@ -0,0 +1,92 @@
+package com.codedecode.kafkademo.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long FAST_CALL = Duration.ofMillis(10).toNanos();
+    private static final long SLOW_CALL = Duration.ofSeconds(3).toNanos();
+
+    private final AtomicLong now = new AtomicLong();
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        // opens at 50% failures of the last 10 calls once 4 calls were made, 2 probes when half open
+        circuitBreaker = new CircuitBreaker(50, 10, 4, Duration.ofSeconds(2), Duration.ofSeconds(30), 2, now::get);
+    }
+
+    @Test
+    public void testOnResult_whenFailureRateBelowThreshold_staysClosed() {
+        //Act
+        circuitBreaker.onResult(FAST_CALL, true);
+        circuitBreaker.onResult(FAST_CALL, false);
+        circuitBreaker.onResult(FAST_CALL, false);
+        circuitBreaker.onResult(FAST_CALL, false);
+
+        //Assert
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testOnResult_whenHalfOfTheCallsFailOrAreSlow_opensAndRejectsCalls() {
+        //Act
+        circuitBreaker.onResult(FAST_CALL, true);
+        circuitBreaker.onResult(SLOW_CALL, false);
+        circuitBreaker.onResult(FAST_CALL, false);
+        circuitBreaker.onResult(FAST_CALL, false);
+
+        //Assert
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testTryAcquirePermission_afterOpenDuration_permitsProbesAndClosesWhenTheySucceed() {
+        //Arrange
+        for (int call = 0; call < 4; call++) {
+            circuitBreaker.onResult(FAST_CALL, true);
+        }
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        //Act
+        boolean firstProbe = circuitBreaker.tryAcquirePermission();
+        boolean secondProbe = circuitBreaker.tryAcquirePermission();
+        boolean thirdCall = circuitBreaker.tryAcquirePermission();
+        circuitBreaker.onResult(FAST_CALL, false);
+        circuitBreaker.onResult(FAST_CALL, false);
+
+        //Assert
+        assertTrue(firstProbe);
+        assertTrue(secondProbe);
+        assertFalse(thirdCall);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    public void testOnResult_whenProbeFails_opensAgain() {
+        //Arrange
+        for (int call = 0; call < 4; call++) {
+            circuitBreaker.onResult(FAST_CALL, true);
+        }
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        circuitBreaker.halfOpenIfDue();
+
+        //Act
+        circuitBreaker.tryAcquirePermission();
+        circuitBreaker.onResult(FAST_CALL, true);
+
+        //Assert
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+}
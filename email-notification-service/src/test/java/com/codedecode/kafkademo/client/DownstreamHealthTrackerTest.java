@@ -0,0 +1,64 @@
+package com.codedecode.kafkademo.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DownstreamHealthTrackerTest {
+
+    private MessageListenerContainer container;
+    private SimpleMeterRegistry meterRegistry;
+    private DownstreamHealthTracker downstreamHealthTracker;
+
+    @BeforeEach
+    void setUp() {
+        container = mock(MessageListenerContainer.class);
+        KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+        when(registry.getListenerContainers()).thenReturn(List.of(container));
+        meterRegistry = new SimpleMeterRegistry();
+        downstreamHealthTracker = new DownstreamHealthTracker(registry, meterRegistry,
+                50, 4, 2, Duration.ofSeconds(2), Duration.ofMillis(200), 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        downstreamHealthTracker.destroy();
+    }
+
+    @Test
+    public void testOnResult_whenBreakerOpens_pausesContainersAndResumesThemToProbe() {
+        //Arrange
+        when(container.isPauseRequested()).thenReturn(true);
+        when(container.getAssignedPartitions()).thenReturn(List.of(
+                new TopicPartition("product-created-events-topic", 0),
+                new TopicPartition("product-created-events-topic", 1)));
+
+        //Act
+        downstreamHealthTracker.onResult(0, true);
+        downstreamHealthTracker.onResult(0, true);
+
+        //Assert
+        verify(container).pause();
+        assertFalse(downstreamHealthTracker.tryAcquirePermission());
+        assertEquals(1.0, meterRegistry.get("notification.circuit.breaker.state").tag("state", "open").gauge().value());
+        assertEquals(2.0, meterRegistry.get("notification.circuit.breaker.paused.partitions").gauge().value());
+        assertEquals(1.0, meterRegistry.get("notification.circuit.breaker.rejected.calls").counter().count());
+        // half opens on its own after the open duration, without a call coming in
+        verify(container, timeout(5000)).resume();
+        assertEquals(1.0, meterRegistry.get("notification.circuit.breaker.state").tag("state", "half_open").gauge().value());
+    }
+}
@@ -0,0 +1,138 @@
+package com.codedecode.kafkademo.client;
+
+import com.codedecode.kafkademo.error.NotRetryableException;
+import com.codedecode.kafkademo.error.RetryableException;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs NotificationClient against a local HTTP server, both the blocking and the async call
+ * have to map the failures to the same exceptions.
+ */
+public class NotificationClientTest {
+
+    private static final Duration GENEROUS_TIMEOUT = Duration.ofSeconds(10);
+
+    private HttpServer server;
+    private HttpClient httpClient;
+    private final CountDownLatch releaseSlowResponse = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/response/200", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/response/500", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                releaseSlowResponse.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseSlowResponse.countDown();
+        server.stop(0);
+        httpClient.close();
+    }
+
+    @Test
+    public void testNotifyProductCreatedAsync_when200_completes() {
+        //Arrange
+        NotificationClient client = client("/response/200", GENEROUS_TIMEOUT);
+
+        //Act & Assert
+        assertDoesNotThrow(() -> client.notifyProductCreatedAsync().join());
+    }
+
+    @Test
+    public void testNotifyProductCreated_when500_throwsNotRetryableException() {
+        //Arrange
+        NotificationClient client = client("/response/500", GENEROUS_TIMEOUT);
+
+        //Act & Assert
+        assertThrows(NotRetryableException.class, client::notifyProductCreated);
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> client.notifyProductCreatedAsync().join());
+        assertInstanceOf(NotRetryableException.class, exception.getCause());
+    }
+
+    @Test
+    public void testNotifyProductCreated_whenServiceIsUnreachable_throwsRetryableException() throws IOException {
+        //Arrange
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        NotificationClient client = new NotificationClient(restTemplate(GENEROUS_TIMEOUT), httpClient, downstreamHealthTracker(),
+                "http://localhost:" + closedPort + "/response/200", GENEROUS_TIMEOUT);
+
+        //Act & Assert
+        assertThrows(RetryableException.class, client::notifyProductCreated);
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> client.notifyProductCreatedAsync().join());
+        assertInstanceOf(RetryableException.class, exception.getCause());
+    }
+
+    @Test
+    public void testNotifyProductCreated_whenResponseIsTooSlow_throwsRetryableException() {
+        //Arrange
+        // the only test with a short timeout, the others leave a busy build room to answer
+        NotificationClient client = client("/slow", Duration.ofMillis(200));
+
+        //Act & Assert
+        assertThrows(RetryableException.class, client::notifyProductCreated);
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> client.notifyProductCreatedAsync().join());
+        assertInstanceOf(RetryableException.class, exception.getCause());
+    }
+
+    private NotificationClient client(String path, Duration timeout) {
+        return new NotificationClient(restTemplate(timeout), httpClient, downstreamHealthTracker(),
+                "http://localhost:" + server.getAddress().getPort() + path, timeout);
+    }
+
+    private DownstreamHealthTracker downstreamHealthTracker() {
+        return new DownstreamHealthTracker(new KafkaListenerEndpointRegistry(), new SimpleMeterRegistry(),
+                50, 20, 10, Duration.ofSeconds(2), Duration.ofSeconds(30), 3);
+    }
+
+    private RestTemplate restTemplate(Duration readTimeout) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        return new RestTemplate(requestFactory);
+    }
+}
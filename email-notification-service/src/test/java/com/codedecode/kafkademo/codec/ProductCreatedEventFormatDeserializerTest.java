@@ -0,0 +1,92 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ProductCreatedEventFormatDeserializerTest {
+
+    private static final String TOPIC = "product-created-events-topic";
+
+    private final Map<String, Object> configs = Map.of(
+            ProductCreatedEventFormatDeserializer.VALUE_FORMAT_CONFIG, "auto",
+            JacksonJsonDeserializer.TRUSTED_PACKAGES, "com.codedecode.kafkademo.service");
+
+    @Test
+    public void testDeserialize_whenBinaryHeaderPresent_decodesBinaryPayload() {
+        //Arrange
+        ProductCreatedEvent event = new ProductCreatedEvent("product-1", "Kaffee ☕ 😀",
+                new BigDecimal("123456789012345678901234.5678"), -3);
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(ProductCreatedEventCodec.FORMAT_HEADER,
+                ProductCreatedEventCodec.BINARY_FORMAT.getBytes(StandardCharsets.UTF_8));
+        ProductCreatedEventFormatDeserializer deserializer = new ProductCreatedEventFormatDeserializer();
+        deserializer.configure(configs, false);
+
+        //Act
+        Object value = deserializer.deserialize(TOPIC, headers, ProductCreatedEventCodec.encode(event));
+
+        //Assert
+        ProductCreatedEvent decoded = assertInstanceOf(ProductCreatedEvent.class, value);
+        assertEquals(event.getProductId(), decoded.getProductId());
+        assertEquals(event.getTitle(), decoded.getTitle());
+        assertEquals(event.getPrice(), decoded.getPrice());
+        assertEquals(event.getQuantity(), decoded.getQuantity());
+    }
+
+    @Test
+    public void testDeserialize_whenNoFormatHeader_fallsBackToJson() {
+        //Arrange
+        ProductCreatedEvent event = new ProductCreatedEvent("product-2", "json title", new BigDecimal("12.34"), 5);
+        RecordHeaders headers = new RecordHeaders();
+        byte[] json;
+        try (JacksonJsonSerializer<ProductCreatedEvent> serializer = new JacksonJsonSerializer<>()) {
+            json = serializer.serialize(TOPIC, headers, event);
+        }
+        ProductCreatedEventFormatDeserializer deserializer = new ProductCreatedEventFormatDeserializer();
+        deserializer.configure(configs, false);
+
+        //Act
+        Object value = deserializer.deserialize(TOPIC, headers, json);
+
+        //Assert
+        ProductCreatedEvent decoded = assertInstanceOf(ProductCreatedEvent.class, value);
+        assertEquals("product-2", decoded.getProductId());
+        assertEquals(0, new BigDecimal("12.34").compareTo(decoded.getPrice()));
+    }
+
+    @Test
+    public void testDeserialize_whenBinaryPayloadIsTruncated_errorHandlingDeserializerReportsFailure() {
+        //Arrange
+        byte[] encoded = ProductCreatedEventCodec.encode(new ProductCreatedEvent("product-3", "title", BigDecimal.TEN, 1));
+        byte[] truncated = new byte[encoded.length - 3];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(ProductCreatedEventCodec.FORMAT_HEADER,
+                ProductCreatedEventCodec.BINARY_FORMAT.getBytes(StandardCharsets.UTF_8));
+        ErrorHandlingDeserializer<Object> deserializer =
+                new ErrorHandlingDeserializer<>(new ProductCreatedEventFormatDeserializer());
+        deserializer.configure(configs, false);
+
+        //Act
+        Object value = deserializer.deserialize(TOPIC, headers, truncated);
+
+        //Assert
+        assertNull(value);
+        // this header is what DefaultErrorHandler and DeadLetterPublishingRecoverer use to route the record to the DLT
+        assertNotNull(headers.lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER));
+    }
+}
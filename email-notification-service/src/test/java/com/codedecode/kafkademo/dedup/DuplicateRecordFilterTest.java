@@ -0,0 +1,93 @@
+package com.codedecode.kafkademo.dedup;
+
+import com.codedecode.kafkademo.idempotency.IdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DuplicateRecordFilterTest {
+
+    private static final String TOPIC = "product-created-events-topic";
+    private static final byte[] PAYLOAD = "{\"productId\":\"1\"}".getBytes(StandardCharsets.UTF_8);
+
+    private IdempotencyStore idempotencyStore;
+    private Deserializer<Object> delegate;
+    private SimpleMeterRegistry meterRegistry;
+    private DuplicateRecordFilter filter;
+    private Deserializer<Object> deserializer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        idempotencyStore = mock(IdempotencyStore.class);
+        delegate = mock(Deserializer.class);
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new DuplicateRecordFilter(idempotencyStore, meterRegistry);
+        deserializer = filter.wrap(delegate);
+    }
+
+    @Test
+    public void testDeserialize_withProcessedMessageId_skipsThePayloadAndFiltersTheRecord() {
+        //Arrange
+        when(idempotencyStore.isProcessed("processed-id")).thenReturn(true);
+
+        //Act
+        Object value = deserializer.deserialize(TOPIC, headers("processed-id"), PAYLOAD);
+        boolean filtered = filter.filter(new ConsumerRecord<>(TOPIC, 0, 42L, "key", value));
+
+        //Assert
+        assertSame(DuplicateRecordFilter.SKIPPED_DUPLICATE, value);
+        verify(delegate, never()).deserialize(anyString(), any(), any(byte[].class));
+        assertTrue(filtered);
+        assertEquals(1, meterRegistry.get("product.created.event.duplicates.skipped").counter().count());
+    }
+
+    @Test
+    public void testDeserialize_withNewMessageId_parsesThePayloadAndKeepsTheRecord() {
+        //Arrange
+        Object event = new Object();
+        RecordHeaders headers = headers("new-id");
+        when(delegate.deserialize(TOPIC, headers, PAYLOAD)).thenReturn(event);
+
+        //Act
+        Object value = deserializer.deserialize(TOPIC, headers, PAYLOAD);
+        boolean filtered = filter.filter(new ConsumerRecord<>(TOPIC, 0, 42L, "key", value));
+
+        //Assert
+        assertSame(event, value);
+        assertFalse(filtered);
+        assertEquals(0, meterRegistry.get("product.created.event.duplicates.skipped").counter().count());
+    }
+
+    @Test
+    public void testDeserialize_withoutMessageId_leavesTheRecordToTheHandler() {
+        //Act
+        deserializer.deserialize(TOPIC, new RecordHeaders(), PAYLOAD);
+
+        //Assert
+        verify(idempotencyStore, never()).isProcessed(anyString());
+        verify(delegate).deserialize(anyString(), any(), any(byte[].class));
+    }
+
+    private static RecordHeaders headers(String messageId) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("messageId", messageId.getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+}
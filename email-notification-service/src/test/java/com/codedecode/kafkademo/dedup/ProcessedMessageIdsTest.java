@@ -0,0 +1,142 @@
+package com.codedecode.kafkademo.dedup;
+
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import com.codedecode.kafkademo.repo.ProcessedEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProcessedMessageIdsTest {
+
+    private ProcessedEventRepository processedEventRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private ProcessedMessageIds processedMessageIds;
+
+    @BeforeEach
+    void setUp() {
+        processedEventRepository = mock(ProcessedEventRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        processedMessageIds = new ProcessedMessageIds(processedEventRepository, meterRegistry,
+                1000, Duration.ofHours(1), 10_000, 0.01, 1000);
+    }
+
+    @Test
+    public void testIsProcessed_beforeLoad_asksTheDatabase() {
+        //Act
+        boolean processed = processedMessageIds.isProcessed("message-1");
+
+        //Assert
+        assertFalse(processed);
+        verify(processedEventRepository).findByMessageId("message-1");
+    }
+
+    @Test
+    public void testIsProcessed_afterLoad_newMessageIsAnsweredInMemory() {
+        //Arrange
+        ProcessedEventEntity existing = new ProcessedEventEntity("message-1", "product-1");
+        existing.setId(7);
+        when(processedEventRepository.findTop10000ByIdGreaterThanOrderByIdAsc(0)).thenReturn(List.of(existing));
+        when(processedEventRepository.findByMessageId("message-1")).thenReturn(existing);
+
+        //Act
+        processedMessageIds.load();
+
+        //Assert
+        assertFalse(processedMessageIds.isProcessed("message-2"));
+        verify(processedEventRepository, never()).findByMessageId("message-2");
+        assertTrue(processedMessageIds.isProcessed("message-1"));
+        assertEquals(1.0, meterRegistry.get("processed.message.ids.lookups").tag("result", "filter-negative").counter().count());
+        assertEquals(1.0, meterRegistry.get("processed.message.ids.lookups").tag("result", "database-hit").counter().count());
+    }
+
+    @Test
+    public void testCatchUp_readsOnlyFromTheOverlapBeforeTheHighWaterMark() {
+        //Arrange
+        ProcessedEventEntity existing = new ProcessedEventEntity("message-1", "product-1");
+        existing.setId(5000);
+        when(processedEventRepository.findTop10000ByIdGreaterThanOrderByIdAsc(0)).thenReturn(List.of(existing));
+        processedMessageIds.load();
+
+        //Act
+        processedMessageIds.catchUp();
+
+        //Assert
+        verify(processedEventRepository).findTop10000ByIdGreaterThanOrderByIdAsc(4000);
+    }
+
+    @Test
+    public void testCatchUp_beforeLoad_returnsAtOnceAndTheLoadCatchesUpAfterwards() {
+        //Arrange
+        ProcessedEventEntity existing = new ProcessedEventEntity("message-1", "product-1");
+        existing.setId(5000);
+        ProcessedEventEntity writtenDuringLoad = new ProcessedEventEntity("message-2", "product-2");
+        writtenDuringLoad.setId(5001);
+        // a partition is assigned while the table is read
+        when(processedEventRepository.findTop10000ByIdGreaterThanOrderByIdAsc(0)).thenAnswer(invocation -> {
+            processedMessageIds.catchUp();
+            return List.of(existing);
+        });
+        when(processedEventRepository.findTop10000ByIdGreaterThanOrderByIdAsc(4000)).thenReturn(List.of(existing, writtenDuringLoad));
+        when(processedEventRepository.findByMessageId("message-2")).thenReturn(writtenDuringLoad);
+
+        //Act
+        processedMessageIds.load();
+
+        //Assert
+        verify(processedEventRepository).findTop10000ByIdGreaterThanOrderByIdAsc(4000);
+        assertTrue(processedMessageIds.isProcessed("message-2"));
+        assertFalse(processedMessageIds.isProcessed("message-3"));
+        verify(processedEventRepository, never()).findByMessageId("message-3");
+    }
+
+    @Test
+    public void testMarkProcessed_outsideTransaction_isAnsweredWithoutDatabase() {
+        //Arrange
+        processedMessageIds.load();
+
+        //Act
+        processedMessageIds.markProcessed("message-1");
+
+        //Assert
+        assertTrue(processedMessageIds.isProcessed("message-1"));
+        assertEquals(Set.of("message-1"), processedMessageIds.findProcessed(List.of("message-1", "message-2")));
+        verify(processedEventRepository, never()).findByMessageId(anyString());
+        verify(processedEventRepository, never()).findProcessedMessageIds(any());
+    }
+
+    @Test
+    public void testBloomFilter_hasNoFalseNegativesAndBoundedFalsePositives() {
+        //Arrange
+        BloomFilter bloomFilter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            bloomFilter.put("added-" + i);
+        }
+
+        //Act
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(bloomFilter.mightContain("added-" + i));
+            if (bloomFilter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        //Assert
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+    }
+}
@@ -0,0 +1,157 @@
+package com.codedecode.kafkademo.idempotency;
+
+import com.codedecode.kafkademo.entity.ProcessedEventEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedIdempotencyStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testMarkProcessed_thenLookups_findTheMessage() throws IOException {
+        //Arrange
+        MappedIdempotencyStore store = open(Duration.ofDays(7));
+        String messageId = UUID.randomUUID().toString();
+
+        //Act
+        store.markProcessed(new ProcessedEventEntity(messageId, "product-1"));
+        store.markProcessed(new ProcessedEventEntity("not-a-uuid", "product-2"));
+
+        //Assert
+        assertTrue(store.isProcessed(messageId));
+        assertTrue(store.isProcessed("not-a-uuid"));
+        assertFalse(store.isProcessed(UUID.randomUUID().toString()));
+        assertFalse(store.isProcessed(messageId.toUpperCase()));
+        assertEquals(Set.of(messageId), store.findProcessed(List.of(messageId, UUID.randomUUID().toString())));
+        store.destroy();
+    }
+
+    @Test
+    public void testReopen_afterCleanShutdown_keepsEntries() throws IOException {
+        //Arrange
+        MappedIdempotencyStore store = open(Duration.ofDays(7));
+        List<ProcessedEventEntity> processedEvents = processedEvents(3000);
+        store.markProcessed(processedEvents);
+        store.destroy();
+
+        //Act
+        MappedIdempotencyStore reopened = open(Duration.ofDays(7));
+
+        //Assert
+        assertEquals(3000, reopened.size());
+        assertTrue(reopened.isProcessed(processedEvents.get(2999).getMessageId()));
+        reopened.destroy();
+    }
+
+    @Test
+    public void testReopen_afterCrashWithTornJournalRecord_rebuildsFromJournal() throws IOException {
+        //Arrange
+        MappedIdempotencyStore crashed = open(Duration.ofDays(7));
+        List<ProcessedEventEntity> processedEvents = processedEvents(500);
+        crashed.markProcessed(processedEvents);
+        // no destroy(): the index stays dirty, and the last record was only partly written
+        Files.write(directory.resolve("processed-message-ids.journal"), new byte[]{1, 2, 3, 4, 5},
+                StandardOpenOption.APPEND);
+
+        //Act
+        MappedIdempotencyStore recovered = open(Duration.ofDays(7));
+
+        //Assert
+        assertEquals(500, recovered.size());
+        assertTrue(recovered.isProcessed(processedEvents.get(0).getMessageId()));
+        assertEquals(500L * FingerprintJournal.RECORD_SIZE, Files.size(directory.resolve("processed-message-ids.journal")));
+        recovered.destroy();
+    }
+
+    @Test
+    public void testMarkProcessed_beyondExpectedEntries_growsTheIndex() throws IOException {
+        //Arrange
+        MappedIdempotencyStore store = open(Duration.ofDays(7));
+        List<ProcessedEventEntity> processedEvents = processedEvents(10_000);
+
+        //Act
+        for (ProcessedEventEntity processedEvent : processedEvents) {
+            store.markProcessed(processedEvent);
+        }
+
+        //Assert
+        assertEquals(10_000, store.size());
+        for (ProcessedEventEntity processedEvent : processedEvents) {
+            assertTrue(store.isProcessed(processedEvent.getMessageId()));
+        }
+        store.destroy();
+    }
+
+    @Test
+    public void testCompact_dropsEntriesOlderThanRetention() throws Exception {
+        //Arrange
+        MappedIdempotencyStore store = open(Duration.ofMillis(50));
+        List<ProcessedEventEntity> expired = processedEvents(100);
+        store.markProcessed(expired);
+        Thread.sleep(100);
+        String recent = UUID.randomUUID().toString();
+        store.markProcessed(new ProcessedEventEntity(recent, "product"));
+
+        //Act
+        store.compact();
+
+        //Assert
+        assertEquals(1, store.size());
+        assertTrue(store.isProcessed(recent));
+        assertFalse(store.isProcessed(expired.get(0).getMessageId()));
+        assertEquals(FingerprintJournal.RECORD_SIZE, Files.size(directory.resolve("processed-message-ids.journal")));
+        store.destroy();
+    }
+
+    @Test
+    public void testCompact_thenMarkProcessed_writesToTheCompactedJournal() throws Exception {
+        //Arrange
+        MappedIdempotencyStore store = open(Duration.ofMillis(50));
+        store.markProcessed(processedEvents(10));
+        Thread.sleep(100);
+        String recent = UUID.randomUUID().toString();
+        store.markProcessed(new ProcessedEventEntity(recent, "product"));
+        store.compact();
+
+        //Act
+        String afterCompaction = UUID.randomUUID().toString();
+        store.markProcessed(new ProcessedEventEntity(afterCompaction, "product"));
+        store.destroy();
+        MappedIdempotencyStore reopened = open(Duration.ofDays(1));
+
+        //Assert
+        assertEquals(2, reopened.size());
+        assertTrue(reopened.isProcessed(recent));
+        assertTrue(reopened.isProcessed(afterCompaction));
+        assertFalse(Files.exists(directory.resolve("processed-message-ids.journal.compacting")));
+        reopened.destroy();
+    }
+
+    private MappedIdempotencyStore open(Duration retention) throws IOException {
+        return new MappedIdempotencyStore(directory, 1000, retention, Duration.ofHours(1), false);
+    }
+
+    private List<ProcessedEventEntity> processedEvents(int count) {
+        List<ProcessedEventEntity> processedEvents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            processedEvents.add(new ProcessedEventEntity(UUID.randomUUID().toString(), "product-" + i));
+        }
+        return processedEvents;
+    }
+}
@@ -0,0 +1,92 @@
+package com.codedecode.kafkademo.scaling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrencyPolicyTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+    private static final int PARTITIONS = 3;
+
+    private ConcurrencyPolicy policy;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        // behind above 1000 records and 60s of work, 2 samples to grow, 3 to shrink, 30s cooldown
+        policy = new ConcurrencyPolicy(1, 1000, Duration.ofSeconds(60), 2, 100, 3, Duration.ofSeconds(30));
+    }
+
+    @Test
+    public void testDecide_whenBehindForEnoughSamples_addsOneConsumer() {
+        //Act
+        int first = decide(1, 10_000, 50);
+        int second = decide(1, 10_000, 50);
+
+        //Assert
+        assertEquals(1, first);
+        assertEquals(2, second);
+    }
+
+    @Test
+    public void testDecide_whenLagIsWorkedOffInTime_keepsConcurrency() {
+        //Act & Assert
+        // 10000 records at 500 records/s are gone in 20s
+        for (int sample = 0; sample < 5; sample++) {
+            assertEquals(1, decide(1, 10_000, 500));
+        }
+    }
+
+    @Test
+    public void testDecide_whenSamplesAlternate_keepsConcurrency() {
+        //Act & Assert
+        for (int sample = 0; sample < 6; sample++) {
+            assertEquals(2, decide(2, sample % 2 == 0 ? 10_000 : 500, 50));
+        }
+    }
+
+    @Test
+    public void testDecide_withinCooldown_keepsConcurrencyAndThenRemovesConsumer() {
+        //Arrange
+        decide(1, 10_000, 50);
+        decide(1, 10_000, 50);
+
+        //Act & Assert
+        // samples 10s and 20s after the change are ignored, the next three count
+        assertEquals(2, decide(2, 0, 50));
+        assertEquals(2, decide(2, 0, 50));
+        assertEquals(2, decide(2, 0, 50));
+        assertEquals(2, decide(2, 0, 50));
+        assertEquals(1, decide(2, 0, 50));
+        // never below min concurrency
+        for (int sample = 0; sample < 3; sample++) {
+            now += 30 * SECOND;
+            assertEquals(1, decide(1, 0, 50));
+        }
+    }
+
+    @Test
+    public void testDecide_whenBehindWithOneConsumerPerPartition_signalsPartitionsExhausted() {
+        //Act
+        int first = decide(PARTITIONS, 10_000, 50);
+        int second = decide(PARTITIONS, 10_000, 50);
+
+        //Assert
+        assertEquals(PARTITIONS, first);
+        assertEquals(PARTITIONS, second);
+        assertTrue(policy.partitionsExhausted());
+        decide(PARTITIONS, 500, 50);
+        assertFalse(policy.partitionsExhausted());
+    }
+
+    private int decide(int concurrency, long lag, double throughput) {
+        now += 10 * SECOND;
+        return policy.decide(concurrency, PARTITIONS, lag, throughput, now);
+    }
+}
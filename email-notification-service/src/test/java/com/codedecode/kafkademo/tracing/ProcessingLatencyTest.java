@@ -0,0 +1,76 @@
+package com.codedecode.kafkademo.tracing;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProcessingLatencyTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProcessingLatency processingLatency;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        processingLatency = new ProcessingLatency(meterRegistry);
+    }
+
+    @Test
+    public void testReceived_withPublishTimestamp_recordsEveryStageOnce() {
+        //Arrange
+        long publishedAt = PublishTimestamp.nowEpochNanos() - Duration.ofSeconds(2).toNanos();
+        byte[] publishTimestamp = ByteBuffer.allocate(Long.BYTES).putLong(publishedAt).array();
+
+        //Act
+        ProcessingLatency.Sample sample = processingLatency.received(publishTimestamp, 0);
+        sample.dedupDone();
+        sample.downstreamDone();
+        sample.persisted();
+
+        //Assert
+        for (String stage : new String[]{"broker_dwell", "dedup", "downstream", "persist", "handler", "end_to_end"}) {
+            assertEquals(1, stage(stage).count(), stage);
+        }
+        // the header wins over the record timestamp of 1970
+        assertTrue(stage("broker_dwell").totalTime(TimeUnit.SECONDS) >= 2);
+        assertTrue(stage("broker_dwell").totalTime(TimeUnit.SECONDS) < 60);
+        assertTrue(stage("end_to_end").totalTime(TimeUnit.NANOSECONDS) >= stage("broker_dwell").totalTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testReceived_withoutPublishTimestamp_measuresDwellFromRecordTimestamp() {
+        //Act
+        ProcessingLatency.Sample sample = processingLatency.received(null, System.currentTimeMillis() - 3000);
+        sample.dedupDone();
+
+        //Assert
+        assertTrue(stage("broker_dwell").totalTime(TimeUnit.SECONDS) >= 3);
+        assertEquals(1, stage("dedup").count());
+        // a duplicate ends after the idempotency check
+        assertEquals(0, stage("handler").count());
+    }
+
+    @Test
+    public void testReceived_whenPublisherClockIsAhead_recordsZeroDwell() {
+        //Arrange
+        long publishedAt = PublishTimestamp.nowEpochNanos() + Duration.ofMinutes(1).toNanos();
+
+        //Act
+        processingLatency.received(ByteBuffer.allocate(Long.BYTES).putLong(publishedAt).array(), 0);
+
+        //Assert
+        assertEquals(0, stage("broker_dwell").totalTime(TimeUnit.NANOSECONDS));
+    }
+
+    private Timer stage(String stage) {
+        return meterRegistry.get("product.created.event.processing.latency").tag("stage", stage).timer();
+    }
+}
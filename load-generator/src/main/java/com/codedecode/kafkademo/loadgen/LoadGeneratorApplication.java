@@ -0,0 +1,18 @@
+package com.codedecode.kafkademo.loadgen;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/*
+* Drives product-service at a fixed rate and reports latency percentiles, see LoadGeneratorRunner.
+* Settings are the load.* properties, e.g.
+*   java -jar target/load-generator-0.0.1-SNAPSHOT.jar --load.rate=2000 --load.duration=2m --load.endpoint=batch
+* */
+@SpringBootApplication
+public class LoadGeneratorApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(LoadGeneratorApplication.class, args);
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.codedecode.kafkademo.loadgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/*
+* One run against product-service, configured by the load.* properties.
+* product-service answers createProduct in its product.create.mode (sync, async or accept), start it in the mode
+* under test. load.endpoint=batch posts load.bulk-items products per request as NDJSON to /products/batch.
+*
+* A local stack to run against: mvn test -Plocal-stack in product-service, embedded Kafka included
+* */
+@Component
+public class LoadGeneratorRunner implements CommandLineRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGeneratorRunner.class);
+
+    private final String targetUrl;
+    private final String endpoint;
+    private final int titleSize;
+    private final int bulkItems;
+    private final LoadProfile profile;
+    private final String histogramOutput;
+
+    public LoadGeneratorRunner(@Value("${load.target-url}") String targetUrl,
+                               @Value("${load.endpoint}") String endpoint,
+                               @Value("${load.rate}") double rate,
+                               @Value("${load.warmup}") Duration warmup,
+                               @Value("${load.duration}") Duration duration,
+                               @Value("${load.concurrency}") int concurrency,
+                               @Value("${load.request-timeout}") Duration requestTimeout,
+                               @Value("${load.report-interval}") Duration reportInterval,
+                               @Value("${load.title-size}") int titleSize,
+                               @Value("${load.bulk-items}") int bulkItems,
+                               @Value("${load.histogram-output:}") String histogramOutput) {
+        this.targetUrl = targetUrl;
+        this.endpoint = endpoint;
+        this.titleSize = titleSize;
+        this.bulkItems = bulkItems;
+        this.profile = new LoadProfile(rate, warmup, duration, concurrency, requestTimeout, reportInterval);
+        this.histogramOutput = histogramOutput;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(profile.requestTimeout())
+                .build();
+        LoadReport report = new OpenLoopLoad(httpClient, request(), profile).run();
+        report.print(System.out);
+        if (!histogramOutput.isBlank()) {
+            report.writeHistogram(Path.of(histogramOutput));
+            LOGGER.info("**** Corrected latency histogram written to {} ****", histogramOutput);
+        }
+    }
+
+    private HttpRequest request() {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().timeout(profile.requestTimeout());
+        return switch (endpoint) {
+            case "create" -> builder.uri(URI.create(targetUrl + "/products/createProduct"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(ProductPayloads.product(titleSize)))
+                    .build();
+            case "batch" -> builder.uri(URI.create(targetUrl + "/products/batch"))
+                    .header("Content-Type", "application/x-ndjson")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(ProductPayloads.batch(bulkItems, titleSize)))
+                    .build();
+            default -> throw new IllegalArgumentException("load.endpoint has to be create or batch, got " + endpoint);
+        };
+    }
+}
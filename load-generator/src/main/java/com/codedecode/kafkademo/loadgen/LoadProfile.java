@@ -0,0 +1,23 @@
+package com.codedecode.kafkademo.loadgen;
+
+import java.time.Duration;
+
+/*
+* rate         requests started per second, on schedule whether or not earlier ones have completed
+* warmup       run at the rate first without recording, lets the JIT and the connection pool settle
+* duration     recorded part of the run
+* concurrency  requests in flight at most. Once reached, starting the next request waits; its latency still counts
+*              from its scheduled start, so the wait shows up in the results instead of lowering the rate silently
+* */
+public record LoadProfile(double rate, Duration warmup, Duration duration, int concurrency,
+                          Duration requestTimeout, Duration reportInterval) {
+
+    public LoadProfile {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("load.rate has to be positive, got " + rate);
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("load.concurrency has to be positive, got " + concurrency);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.codedecode.kafkademo.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Result of an OpenLoopLoad run, histograms in microseconds
+*
+* sent        requests due in the measured window
+* succeeded   of those, answered with a 2xx
+* errors      the rest, by "HTTP <status>" or by exception (HttpTimeoutException, ConnectException, ...)
+* */
+public record LoadReport(double targetRate, long measuredNanos, long sent, long succeeded, Map<String, Long> errors,
+                         Histogram corrected, Histogram uncorrected) {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    /*
+    * Successful responses per second. Below the target rate the service did not keep up, even if nothing failed
+    * */
+    public double throughput() {
+        return succeeded / seconds();
+    }
+
+    public double sentRate() {
+        return sent / seconds();
+    }
+
+    public void print(PrintStream out) {
+        out.printf("target rate     %10.1f requests/s%n", targetRate);
+        out.printf("sent            %10.1f requests/s  (%d)%n", sentRate(), sent);
+        out.printf("throughput      %10.1f requests/s  (%d succeeded)%n", throughput(), succeeded);
+        out.printf("errors          %10d%n", sent - succeeded);
+        errors.forEach((error, count) -> out.printf("  %-28s %10d%n", error, count));
+        out.printf("%-14s %12s %12s%n", "latency (ms)", "corrected", "uncorrected");
+        for (double percentile : PERCENTILES) {
+            out.printf("  p%-12s %12s %12s%n", percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile),
+                    millis(corrected.getValueAtPercentile(percentile)), millis(uncorrected.getValueAtPercentile(percentile)));
+        }
+        out.printf("  %-13s %12s %12s%n", "max", millis(corrected.getMaxValue()), millis(uncorrected.getMaxValue()));
+    }
+
+    /*
+    * The corrected histogram in HdrHistogram's percentile format, in milliseconds,
+    * plot it with https://hdrhistogram.github.io/HdrHistogram/plotFiles.html
+    * */
+    public void writeHistogram(Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            corrected.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    static String millis(long micros) {
+        return String.format("%.3f", micros / 1000.0);
+    }
+
+    private double seconds() {
+        return (double) measuredNanos / TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,155 @@
+package com.codedecode.kafkademo.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+* Open loop: request i is due at start + i / rate, whether or not the ones before it have been answered.
+* A closed loop (send, wait, send) slows down with the server, the requests it would have sent during a stall are
+* never sent and never measured. That is coordinated omission, the percentiles then look best exactly when the
+* service is at its worst.
+*
+* Two latencies are recorded for every request:
+*  corrected    from the time it was due to the response, what a client arriving at that time would have seen
+*  uncorrected  from the time it was actually sent, the service time alone
+* They only differ when the generator fell behind its schedule, because the concurrency limit was reached or the
+* machine itself could not keep up. A large gap between them is the stall the uncorrected numbers hide.
+*
+* Latencies are recorded in microseconds, only for requests due after the warmup
+* */
+public class OpenLoopLoad {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpenLoopLoad.class);
+
+    private final HttpClient httpClient;
+    private final HttpRequest request;
+    private final LoadProfile profile;
+
+    private final Recorder corrected = new Recorder(3);
+    private final Recorder uncorrected = new Recorder(3);
+    private final Histogram correctedTotal = new Histogram(3);
+    private final Histogram uncorrectedTotal = new Histogram(3);
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final AtomicLong lastCompletedNanos = new AtomicLong();
+    private Histogram correctedInterval;
+    private Histogram uncorrectedInterval;
+
+    public OpenLoopLoad(HttpClient httpClient, HttpRequest request, LoadProfile profile) {
+        this.httpClient = httpClient;
+        this.request = request;
+        this.profile = profile;
+    }
+
+    public LoadReport run() throws InterruptedException {
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / profile.rate();
+        long startNanos = System.nanoTime();
+        long measuredFromNanos = startNanos + profile.warmup().toNanos();
+        long endNanos = measuredFromNanos + profile.duration().toNanos();
+        Semaphore inFlight = new Semaphore(profile.concurrency());
+
+        LOGGER.info("**** Sending {} requests/s to {} for {} after a warmup of {} ****",
+                profile.rate(), request.uri(), profile.duration(), profile.warmup());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().factory());
+        long reportMillis = profile.reportInterval().toMillis();
+        reporter.scheduleAtFixedRate(() -> reportInterval(measuredFromNanos), reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+        try {
+            for (long i = 0; ; i++) {
+                long dueNanos = startNanos + (long) (i * intervalNanos);
+                if (dueNanos >= endNanos) {
+                    break;
+                }
+                for (long wait = dueNanos - System.nanoTime(); wait > 0; wait = dueNanos - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+                // once the limit is reached this waits, the schedule does not: the next requests are already due
+                inFlight.acquire();
+                send(dueNanos, dueNanos >= measuredFromNanos, inFlight);
+            }
+            long drainMillis = profile.requestTimeout().toMillis() + 1000;
+            if (!inFlight.tryAcquire(profile.concurrency(), drainMillis, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("**** {} requests still in flight after {} ms, they are left out ****",
+                        profile.concurrency() - inFlight.availablePermits(), drainMillis);
+            }
+        } finally {
+            reporter.shutdownNow();
+            reporter.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        synchronized (this) {
+            correctedTotal.add(corrected.getIntervalHistogram());
+            uncorrectedTotal.add(uncorrected.getIntervalHistogram());
+        }
+
+        long measuredNanos = Math.max(endNanos, lastCompletedNanos.get()) - measuredFromNanos;
+        Map<String, Long> errorCounts = new TreeMap<>();
+        errors.forEach((error, count) -> errorCounts.put(error, count.sum()));
+        return new LoadReport(profile.rate(), measuredNanos, sent.sum(), succeeded.sum(), errorCounts,
+                correctedTotal, uncorrectedTotal);
+    }
+
+    private void send(long dueNanos, boolean measured, Semaphore inFlight) {
+        long sentNanos = System.nanoTime();
+        if (measured) {
+            sent.increment();
+        }
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, exception) -> {
+                    long completedNanos = System.nanoTime();
+                    inFlight.release();
+                    if (!measured) {
+                        return;
+                    }
+                    lastCompletedNanos.accumulateAndGet(completedNanos, Math::max);
+                    corrected.recordValue(TimeUnit.NANOSECONDS.toMicros(completedNanos - dueNanos));
+                    uncorrected.recordValue(TimeUnit.NANOSECONDS.toMicros(completedNanos - sentNanos));
+                    if (exception != null) {
+                        Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                        errors.computeIfAbsent(cause.getClass().getSimpleName(), error -> new LongAdder()).increment();
+                    } else if (response.statusCode() / 100 != 2) {
+                        errors.computeIfAbsent("HTTP " + response.statusCode(), error -> new LongAdder()).increment();
+                    } else {
+                        succeeded.increment();
+                    }
+                });
+    }
+
+    /*
+    * One line per interval, the interval histograms are added to the totals of the final report
+    * */
+    private synchronized void reportInterval(long measuredFromNanos) {
+        correctedInterval = corrected.getIntervalHistogram(correctedInterval);
+        uncorrectedInterval = uncorrected.getIntervalHistogram(uncorrectedInterval);
+        correctedTotal.add(correctedInterval);
+        uncorrectedTotal.add(uncorrectedInterval);
+        if (System.nanoTime() < measuredFromNanos) {
+            LOGGER.info("**** warming up ****");
+            return;
+        }
+        double seconds = (correctedInterval.getEndTimeStamp() - correctedInterval.getStartTimeStamp()) / 1000.0;
+        LOGGER.info("completed {}/s  p50 {} ms  p99 {} ms  max {} ms  (uncorrected p99 {} ms)  errors {}",
+                String.format("%.0f", correctedInterval.getTotalCount() / seconds),
+                LoadReport.millis(correctedInterval.getValueAtPercentile(50)),
+                LoadReport.millis(correctedInterval.getValueAtPercentile(99)),
+                LoadReport.millis(correctedInterval.getMaxValue()),
+                LoadReport.millis(uncorrectedInterval.getValueAtPercentile(99)),
+                errors.values().stream().mapToLong(LongAdder::sum).sum());
+    }
+}
@@ -0,0 +1,37 @@
+package com.codedecode.kafkademo.loadgen;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+* Request bodies for the product-service endpoints. Every request sends the same body, product-service gives each
+* product its own id. titleSize pads the title to grow the payload, the rest of the JSON is about 40 bytes
+* */
+final class ProductPayloads {
+
+    private ProductPayloads() {
+    }
+
+    /*
+    * A CreateProductRestModel for /products/createProduct
+    * */
+    static byte[] product(int titleSize) {
+        return productJson(titleSize).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+    * NDJSON, one CreateProductRestModel per line, for /products/batch
+    * */
+    static byte[] batch(int items, int titleSize) {
+        String line = productJson(titleSize) + "\n";
+        return line.repeat(items).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String productJson(int titleSize) {
+        StringBuilder title = new StringBuilder("load test product ");
+        while (title.length() < titleSize) {
+            title.append('x');
+        }
+        title.setLength(Math.max(titleSize, 1));
+        return "{\"title\":\"" + title + "\",\"price\":1199.99,\"quantity\":25}";
+    }
+}
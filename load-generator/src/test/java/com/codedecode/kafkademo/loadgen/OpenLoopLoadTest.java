@@ -0,0 +1,111 @@
+package com.codedecode.kafkademo.loadgen;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OpenLoopLoadTest {
+
+    private HttpServer server;
+    private final AtomicInteger received = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRun_withFastServer_sendsAtTheTargetRate() throws Exception {
+        //Arrange
+        start(200, 0);
+
+        //Act
+        LoadReport report = load(200, Duration.ofMillis(500), Duration.ofSeconds(1), 16).run();
+
+        //Assert
+        // 100 warmup requests are sent but not counted
+        assertEquals(300, received.get());
+        assertEquals(200, report.sent());
+        assertEquals(200, report.succeeded());
+        assertEquals(200, report.corrected().getTotalCount());
+        assertTrue(report.errors().isEmpty());
+        assertTrue(report.throughput() > 150, "throughput " + report.throughput());
+    }
+
+    @Test
+    public void testRun_withRejectedRequests_countsThemByStatus() throws Exception {
+        //Arrange
+        start(417, 0);
+
+        //Act
+        LoadReport report = load(100, Duration.ZERO, Duration.ofMillis(500), 16).run();
+
+        //Assert
+        assertEquals(50, report.sent());
+        assertEquals(0, report.succeeded());
+        assertEquals(Map.of("HTTP 417", 50L), report.errors());
+    }
+
+    @Test
+    public void testRun_whenServerStalls_correctedLatencyIncludesTheRequestsThatWaited() throws Exception {
+        //Arrange
+        // one request takes 500 ms, 50 more fall due meanwhile and wait for the only connection
+        start(200, 500);
+
+        //Act
+        LoadReport report = load(100, Duration.ZERO, Duration.ofSeconds(2), 1).run();
+
+        //Assert
+        assertEquals(200, report.sent());
+        // a closed loop sees a single slow request
+        assertTrue(report.uncorrected().getValueAtPercentile(90) < 100_000,
+                "uncorrected p90 " + report.uncorrected().getValueAtPercentile(90) + " us");
+        assertTrue(report.uncorrected().getMaxValue() >= 500_000);
+        // the 20 requests due first during the stall waited 300 ms and more
+        assertTrue(report.corrected().getValueAtPercentile(90) > 250_000,
+                "corrected p90 " + report.corrected().getValueAtPercentile(90) + " us");
+    }
+
+    /*
+    * Answers every request with status, the 40th after stallMillis
+    * */
+    private void start(int status, long stallMillis) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/products/createProduct", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            if (received.incrementAndGet() == 40 && stallMillis > 0) {
+                try {
+                    Thread.sleep(stallMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    private OpenLoopLoad load(double rate, Duration warmup, Duration duration, int concurrency) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getAddress().getPort() + "/products/createProduct"))
+                .timeout(Duration.ofSeconds(5))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(ProductPayloads.product(32)))
+                .build();
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        return new OpenLoopLoad(httpClient, request, new LoadProfile(rate, warmup, duration, concurrency,
+                Duration.ofSeconds(5), Duration.ofMillis(250)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.codedecode.kafkademo.controller;
+
+import com.codedecode.kafkademo.scenario.Scenario;
+import com.codedecode.kafkademo.scenario.ScenarioRegistry;
+import com.codedecode.kafkademo.scenario.ScenarioSpec;
+import com.codedecode.kafkademo.scenario.ScenarioStats;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Comparator;
+import java.util.List;
+
+/*
+* Runtime configuration of the scenarios served on /scenario/{name}, see ScenarioSpec for the body:
+*
+*   curl -X PUT localhost:5053/admin/scenarios/slow -H 'Content-Type: application/json' \
+*        -d '{"latency":{"type":"lognormal","medianMs":50,"sigma":0.8},"errorRate":0.01}'
+*   curl localhost:5053/admin/scenarios
+*
+* and point email-notification-service at it with notification.client.url=http://localhost:5053/scenario/slow
+* */
+@RestController
+@RequestMapping("/admin/scenarios")
+public class ScenarioAdminController {
+
+    private final ScenarioRegistry scenarioRegistry;
+
+    public ScenarioAdminController(ScenarioRegistry scenarioRegistry) {
+        this.scenarioRegistry = scenarioRegistry;
+    }
+
+    @GetMapping
+    public List<ScenarioStats> scenarios() {
+        return scenarioRegistry.all().stream()
+                .map(Scenario::stats)
+                .sorted(Comparator.comparing(ScenarioStats::name))
+                .toList();
+    }
+
+    @GetMapping("/{name}")
+    public ResponseEntity<ScenarioStats> scenario(@PathVariable String name) {
+        Scenario scenario = scenarioRegistry.get(name);
+        return scenario == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(scenario.stats());
+    }
+
+    /*
+    * Creates or replaces the scenario, the counters of a replaced one start again from 0
+    * */
+    @PutMapping("/{name}")
+    public ScenarioStats putScenario(@PathVariable String name, @RequestBody ScenarioSpec spec) {
+        return scenarioRegistry.put(name, spec).stats();
+    }
+
+    @DeleteMapping("/{name}")
+    public ResponseEntity<Void> deleteScenario(@PathVariable String name) {
+        return scenarioRegistry.remove(name) == null ? ResponseEntity.notFound().build() : ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> invalidSpec(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
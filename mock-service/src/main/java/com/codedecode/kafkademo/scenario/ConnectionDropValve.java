@@ -0,0 +1,29 @@
+package com.codedecode.kafkademo.scenario;
+
+import jakarta.servlet.ServletException;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.apache.coyote.ActionCode;
+
+import java.io.IOException;
+
+/*
+* The servlet API has no way to close a connection without answering, every way out of a request writes at least a
+* status line. This valve hands each request a Runnable under DROP_CONNECTION that tells Tomcat to close the socket
+* right away and swallow whatever the response holds, the client sees the end of the stream and nothing else
+* */
+public class ConnectionDropValve extends ValveBase {
+
+    public static final String DROP_CONNECTION = ConnectionDropValve.class.getName() + ".DROP_CONNECTION";
+
+    public ConnectionDropValve() {
+        super(true);
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        request.setAttribute(DROP_CONNECTION, (Runnable) () -> response.getCoyoteResponse().action(ActionCode.CLOSE_NOW, null));
+        getNext().invoke(request, response);
+    }
+}
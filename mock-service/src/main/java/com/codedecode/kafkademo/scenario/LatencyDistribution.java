@@ -0,0 +1,45 @@
+package com.codedecode.kafkademo.scenario;
+
+import java.util.random.RandomGenerator;
+
+/*
+* Time a scenario waits before it answers, sampled for every request
+*
+* fixed      always the same
+* uniform    evenly spread between min and max
+* lognormal  median with a long right tail, sigma 0.5 gives a p99 of about 3x the median, sigma 1 about 10x.
+*            What a service with caches, GC pauses and queues in front of a database usually looks like
+* bimodal    fast most of the time, slow with slowRate, e.g. cache hits and misses
+* */
+public sealed interface LatencyDistribution {
+
+    long sampleNanos(RandomGenerator random);
+
+    record Fixed(long nanos) implements LatencyDistribution {
+        @Override
+        public long sampleNanos(RandomGenerator random) {
+            return nanos;
+        }
+    }
+
+    record Uniform(long minNanos, long maxNanos) implements LatencyDistribution {
+        @Override
+        public long sampleNanos(RandomGenerator random) {
+            return minNanos == maxNanos ? minNanos : random.nextLong(minNanos, maxNanos + 1);
+        }
+    }
+
+    record LogNormal(long medianNanos, double sigma) implements LatencyDistribution {
+        @Override
+        public long sampleNanos(RandomGenerator random) {
+            return (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    record Bimodal(LatencyDistribution fast, LatencyDistribution slow, double slowRate) implements LatencyDistribution {
+        @Override
+        public long sampleNanos(RandomGenerator random) {
+            return random.nextDouble() < slowRate ? slow.sampleNanos(random) : fast.sampleNanos(random);
+        }
+    }
+}
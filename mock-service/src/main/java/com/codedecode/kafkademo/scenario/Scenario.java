@@ -0,0 +1,108 @@
+package com.codedecode.kafkademo.scenario;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
+
+/*
+* A ScenarioSpec ready to serve: decides what every request gets and counts the outcomes.
+* Called concurrently by the request threads, nothing in here blocks
+* */
+public class Scenario {
+
+    public enum Action {
+        /* answer with status once delayNanos are over */
+        RESPOND,
+        /* close the connection half way through the response once delayNanos are over */
+        RESET,
+        /* close the connection without any response once delayNanos are over */
+        DROP,
+        /* 429 right away, the throughput cap is reached */
+        THROTTLE
+    }
+
+    public record Outcome(Action action, long delayNanos, int status) {
+    }
+
+    private final String name;
+    private final ScenarioSpec spec;
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final int errorStatus;
+    private final double timeoutRate;
+    private final long timeoutNanos;
+    private final double resetRate;
+    private final long intervalNanos;
+    private final long maxQueueNanos;
+
+    // start of the next free slot under the throughput cap
+    private final AtomicLong nextSlotNanos = new AtomicLong(Long.MIN_VALUE);
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    Scenario(String name, ScenarioSpec spec, LatencyDistribution latency, double errorRate, int errorStatus,
+             double timeoutRate, long timeoutNanos, double resetRate, double maxRequestsPerSecond, long maxQueueNanos) {
+        this.name = name;
+        this.spec = spec;
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+        this.timeoutRate = timeoutRate;
+        this.timeoutNanos = timeoutNanos;
+        this.resetRate = resetRate;
+        this.intervalNanos = maxRequestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond) : 0;
+        this.maxQueueNanos = maxQueueNanos;
+    }
+
+    public Outcome next(long nowNanos, RandomGenerator random) {
+        requests.increment();
+        long queueNanos = 0;
+        if (intervalNanos > 0) {
+            while (true) {
+                long next = nextSlotNanos.get();
+                long slot = next == Long.MIN_VALUE ? nowNanos : Math.max(nowNanos, next);
+                if (slot - nowNanos > maxQueueNanos) {
+                    // a rejected request does not take a slot, the queue does not grow further
+                    throttled.increment();
+                    return new Outcome(Action.THROTTLE, slot - nowNanos, 429);
+                }
+                if (nextSlotNanos.compareAndSet(next, slot + intervalNanos)) {
+                    queueNanos = slot - nowNanos;
+                    break;
+                }
+            }
+        }
+
+        double draw = random.nextDouble();
+        if (draw < timeoutRate) {
+            timeouts.increment();
+            return new Outcome(Action.DROP, queueNanos + timeoutNanos, 0);
+        }
+        long delayNanos = queueNanos + Math.max(0, latency.sampleNanos(random));
+        if (draw < timeoutRate + resetRate) {
+            resets.increment();
+            return new Outcome(Action.RESET, delayNanos, 0);
+        }
+        if (draw < timeoutRate + resetRate + errorRate) {
+            errors.increment();
+            return new Outcome(Action.RESPOND, delayNanos, errorStatus);
+        }
+        succeeded.increment();
+        return new Outcome(Action.RESPOND, delayNanos, 200);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ScenarioStats stats() {
+        return new ScenarioStats(name, spec, requests.sum(), succeeded.sum(), errors.sum(), timeouts.sum(),
+                resets.sum(), throttled.sum());
+    }
+}
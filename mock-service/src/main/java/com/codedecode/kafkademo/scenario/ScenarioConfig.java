@@ -0,0 +1,40 @@
+package com.codedecode.kafkademo.scenario;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+@Configuration
+public class ScenarioConfig {
+
+    /*
+    * Writes the delayed answers. Writing a few bytes to a socket is quick, a couple of threads keep up
+    * with tens of thousands of requests per second
+    * */
+    @Bean(destroyMethod = "shutdownNow")
+    ScheduledExecutorService scenarioScheduler(@Value("${mock.scenario.scheduler-threads}") int threads) {
+        return new ScheduledThreadPoolExecutor(threads, Thread.ofPlatform().name("scenario-", 0).daemon().factory());
+    }
+
+    @Bean
+    ServletRegistrationBean<ScenarioServlet> scenarioServlet(ScenarioRegistry scenarioRegistry,
+                                                             ScheduledExecutorService scenarioScheduler) {
+        ServletRegistrationBean<ScenarioServlet> registration =
+                new ServletRegistrationBean<>(new ScenarioServlet(scenarioRegistry, scenarioScheduler), "/scenario/*");
+        registration.setAsyncSupported(true);
+        registration.setLoadOnStartup(1);
+        return registration;
+    }
+
+    /* lets the timeout outcome close the connection without a response, see ConnectionDropValve */
+    @Bean
+    WebServerFactoryCustomizer<TomcatServletWebServerFactory> connectionDropValve() {
+        return factory -> factory.addContextValves(new ConnectionDropValve());
+    }
+}
@@ -0,0 +1,43 @@
+package com.codedecode.kafkademo.scenario;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+* Scenarios by name, changed at runtime through ScenarioAdminController
+* */
+@Component
+public class ScenarioRegistry {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ScenarioRegistry.class);
+
+    private final Map<String, Scenario> scenarios = new ConcurrentHashMap<>();
+
+    /*
+    * Replaces a scenario of the same name, its counters start again from 0.
+    * IllegalArgumentException if the spec is invalid
+    * */
+    public Scenario put(String name, ScenarioSpec spec) {
+        Scenario scenario = spec.toScenario(name);
+        scenarios.put(name, scenario);
+        LOGGER.info("**** Scenario {} is now {} ****", name, spec);
+        return scenario;
+    }
+
+    public Scenario get(String name) {
+        return scenarios.get(name);
+    }
+
+    public Scenario remove(String name) {
+        return scenarios.remove(name);
+    }
+
+    public Collection<Scenario> all() {
+        return scenarios.values();
+    }
+}
@@ -0,0 +1,116 @@
+package com.codedecode.kafkademo.scenario;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Any method on /scenario/{name} answers the way the scenario says.
+*
+* A plain servlet instead of a controller, this is the hot path and has to stay well ahead of the consumers under
+* test. A request with a latency is put into async mode and its Tomcat thread goes back to the pool at once, the
+* scheduler writes the answer when the latency is over. Thousands of slow requests in flight cost a scheduled task
+* each, not a thread each.
+* */
+public class ScenarioServlet extends HttpServlet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScenarioServlet.class);
+
+    private static final String DELAYED_OUTCOME = ScenarioServlet.class.getName() + ".DELAYED_OUTCOME";
+
+    private static final byte[] OK_BODY = "200".getBytes(StandardCharsets.US_ASCII);
+    // a reset announces this many bytes and sends half of them before the connection is closed
+    private static final byte[] RESET_BODY = new byte[64];
+
+    private final ScenarioRegistry scenarioRegistry;
+    private final ScheduledExecutorService scheduler;
+
+    public ScenarioServlet(ScenarioRegistry scenarioRegistry, ScheduledExecutorService scheduler) {
+        this.scenarioRegistry = scenarioRegistry;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getAttribute(DELAYED_OUTCOME) instanceof Scenario.Outcome outcome) {
+            // back on a container thread after the delay, see below
+            finish(request, response, outcome);
+            return;
+        }
+        String name = request.getPathInfo() == null ? "" : request.getPathInfo().substring(1);
+        Scenario scenario = scenarioRegistry.get(name);
+        if (scenario == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown scenario: " + name);
+            return;
+        }
+        Scenario.Outcome outcome = scenario.next(System.nanoTime(), ThreadLocalRandom.current());
+        if (outcome.action() == Scenario.Action.THROTTLE || outcome.delayNanos() <= 0) {
+            finish(request, response, outcome);
+            return;
+        }
+        AsyncContext asyncContext = request.startAsync();
+        // the scenario decides when the request ends, not the container
+        asyncContext.setTimeout(0);
+        scheduler.schedule(() -> {
+            if (outcome.action() == Scenario.Action.DROP) {
+                // Tomcat only closes a connection silently from a container thread, from here it would still
+                // answer with an error page. Dispatch back to this servlet and drop it there
+                request.setAttribute(DELAYED_OUTCOME, outcome);
+                asyncContext.dispatch();
+                return;
+            }
+            try {
+                finish(request, (HttpServletResponse) asyncContext.getResponse(), outcome);
+            } catch (IOException | RuntimeException e) {
+                // the client gave up first
+                LOGGER.debug("Could not answer scenario {}: {}", name, e.getMessage());
+            } finally {
+                asyncContext.complete();
+            }
+        }, outcome.delayNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static void finish(HttpServletRequest request, HttpServletResponse response, Scenario.Outcome outcome)
+            throws IOException {
+        switch (outcome.action()) {
+            case RESPOND -> {
+                response.setStatus(outcome.status());
+                response.setContentType("text/plain");
+                byte[] body = outcome.status() == 200 ? OK_BODY : Integer.toString(outcome.status()).getBytes(StandardCharsets.US_ASCII);
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+            }
+            case THROTTLE -> {
+                response.setStatus(429);
+                response.setHeader("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(outcome.delayNanos()))));
+                response.setContentLength(0);
+            }
+            case RESET -> {
+                // Tomcat closes the connection after a response with Connection: close, the client reads the
+                // headers, half of the body and then the end of the stream: an I/O error like a dropped connection
+                response.setStatus(200);
+                response.setHeader("Connection", "close");
+                response.setContentLength(RESET_BODY.length);
+                response.getOutputStream().write(RESET_BODY, 0, RESET_BODY.length / 2);
+                response.flushBuffer();
+            }
+            case DROP -> {
+                // nothing is committed yet, the client gets neither a status line nor a body, just the closed socket
+                Runnable dropConnection = (Runnable) request.getAttribute(ConnectionDropValve.DROP_CONNECTION);
+                if (dropConnection == null) {
+                    throw new IllegalStateException("ConnectionDropValve is not installed, cannot drop the connection");
+                }
+                dropConnection.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.codedecode.kafkademo.scenario;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+* Request body of PUT /admin/scenarios/{name}, every field is optional:
+*
+* {
+*   "latency": {"type": "lognormal", "medianMs": 20, "sigma": 0.8},
+*   "errorRate": 0.02, "errorStatus": 503,
+*   "timeoutRate": 0.01, "timeoutMs": 30000,
+*   "resetRate": 0.005,
+*   "maxRequestsPerSecond": 2000, "maxQueueMs": 1000
+* }
+*
+* latency               see LatencyDistribution, fields per type:
+*                       fixed: ms | uniform: minMs, maxMs | lognormal: medianMs, sigma | bimodal: fast, slow, slowRate
+*                       no latency answers right away
+* errorRate             share of requests answered with errorStatus (default 500) after their latency
+* timeoutRate           share of requests held for timeoutMs (default 30000) and then dropped without an answer,
+*                       longer than any client timeout
+* resetRate             share of requests whose connection is dropped after their latency, half way through the response
+* maxRequestsPerSecond  throughput cap, requests above it queue for their turn like on a saturated service.
+*                       Once the queue is longer than maxQueueMs (default 1000) they are answered with 429 right away
+* */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ScenarioSpec(LatencySpec latency,
+                           Double errorRate,
+                           Integer errorStatus,
+                           Double timeoutRate,
+                           Long timeoutMs,
+                           Double resetRate,
+                           Double maxRequestsPerSecond,
+                           Long maxQueueMs) {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record LatencySpec(String type,
+                              Double ms,
+                              Double minMs,
+                              Double maxMs,
+                              Double medianMs,
+                              Double sigma,
+                              LatencySpec fast,
+                              LatencySpec slow,
+                              Double slowRate) {
+
+        LatencyDistribution toDistribution() {
+            if (type == null) {
+                throw new IllegalArgumentException("latency.type is required: fixed, uniform, lognormal or bimodal");
+            }
+            return switch (type.toLowerCase()) {
+                case "fixed" -> new LatencyDistribution.Fixed(nanos("ms", ms));
+                case "uniform" -> {
+                    long min = nanos("minMs", minMs);
+                    long max = nanos("maxMs", maxMs);
+                    if (min > max) {
+                        throw new IllegalArgumentException("latency.minMs is greater than latency.maxMs");
+                    }
+                    yield new LatencyDistribution.Uniform(min, max);
+                }
+                case "lognormal" -> new LatencyDistribution.LogNormal(nanos("medianMs", medianMs),
+                        nonNegative("sigma", sigma == null ? 0.5 : sigma));
+                case "bimodal" -> {
+                    if (fast == null || slow == null) {
+                        throw new IllegalArgumentException("latency.fast and latency.slow are required for bimodal");
+                    }
+                    yield new LatencyDistribution.Bimodal(fast.toDistribution(), slow.toDistribution(), rate("slowRate", slowRate));
+                }
+                default -> throw new IllegalArgumentException("Unknown latency.type: " + type);
+            };
+        }
+    }
+
+    Scenario toScenario(String name) {
+        double error = rate("errorRate", errorRate);
+        double timeout = rate("timeoutRate", timeoutRate);
+        double reset = rate("resetRate", resetRate);
+        if (error + timeout + reset > 1) {
+            throw new IllegalArgumentException("errorRate, timeoutRate and resetRate add up to more than 1");
+        }
+        int status = errorStatus == null ? 500 : errorStatus;
+        if (status < 400 || status > 599) {
+            throw new IllegalArgumentException("errorStatus has to be a 4xx or 5xx status, got " + status);
+        }
+        double cap = maxRequestsPerSecond == null ? 0 : nonNegative("maxRequestsPerSecond", maxRequestsPerSecond);
+        return new Scenario(name, this,
+                latency == null ? new LatencyDistribution.Fixed(0) : latency.toDistribution(),
+                error, status, timeout, TimeUnit.MILLISECONDS.toNanos(timeoutMs == null ? 30_000 : timeoutMs), reset,
+                cap, TimeUnit.MILLISECONDS.toNanos(maxQueueMs == null ? 1_000 : maxQueueMs));
+    }
+
+    private static long nanos(String field, Double millis) {
+        if (millis == null) {
+            throw new IllegalArgumentException("latency." + field + " is required");
+        }
+        return (long) (nonNegative("latency." + field, millis) * 1_000_000);
+    }
+
+    private static double rate(String field, Double rate) {
+        if (rate == null) {
+            return 0;
+        }
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException(field + " has to be between 0 and 1, got " + rate);
+        }
+        return rate;
+    }
+
+    private static double nonNegative(String field, double value) {
+        if (value < 0 || Double.isNaN(value)) {
+            throw new IllegalArgumentException(field + " must not be negative, got " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,9 @@
+package com.codedecode.kafkademo.scenario;
+
+/*
+* Response of the admin API: the scenario and what its requests got so far,
+* succeeded + errors + timeouts + resets + throttled = requests once all of them are answered
+* */
+public record ScenarioStats(String name, ScenarioSpec spec, long requests, long succeeded, long errors,
+                            long timeouts, long resets, long throttled) {
+}
@@ -0,0 +1,110 @@
+package com.codedecode.kafkademo.scenario;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ScenarioTest {
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Test
+    public void testNext_aboveThroughputCap_queuesAndThenThrottles() {
+        //Arrange
+        Scenario scenario = new ScenarioSpec(null, null, null, null, null, null, 10.0, 250L).toScenario("capped");
+
+        //Act
+        // four requests at the same time, one slot every 100 ms
+        Scenario.Outcome[] outcomes = new Scenario.Outcome[4];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = scenario.next(0, random);
+        }
+
+        //Assert
+        assertEquals(0, outcomes[0].delayNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), outcomes[1].delayNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), outcomes[2].delayNanos());
+        assertEquals(Scenario.Action.THROTTLE, outcomes[3].action());
+        assertEquals(429, outcomes[3].status());
+        assertEquals(3, scenario.stats().succeeded());
+        assertEquals(1, scenario.stats().throttled());
+        // the slots have passed, the next one is answered right away
+        assertEquals(Scenario.Action.RESPOND, scenario.next(TimeUnit.SECONDS.toNanos(1), random).action());
+    }
+
+    @Test
+    public void testNext_withFaultRates_splitsRequestsAccordingly() {
+        //Arrange
+        Scenario scenario = new ScenarioSpec(null, 0.2, 503, 0.1, 5_000L, 0.1, null, null).toScenario("faulty");
+
+        //Act
+        for (int i = 0; i < 10_000; i++) {
+            Scenario.Outcome outcome = scenario.next(0, random);
+            if (outcome.action() == Scenario.Action.RESPOND && outcome.status() != 200) {
+                assertEquals(503, outcome.status());
+            }
+        }
+
+        //Assert
+        ScenarioStats stats = scenario.stats();
+        assertEquals(10_000, stats.requests());
+        assertEquals(10_000, stats.succeeded() + stats.errors() + stats.timeouts() + stats.resets());
+        assertEquals(2_000, stats.errors(), 200);
+        assertEquals(1_000, stats.timeouts(), 150);
+        assertEquals(1_000, stats.resets(), 150);
+    }
+
+    @Test
+    public void testNext_whenRequestTimesOut_dropsItAfterTimeoutMs() {
+        //Arrange
+        Scenario scenario = new ScenarioSpec(null, null, null, 1.0, 5_000L, null, null, null).toScenario("timeouts");
+
+        //Act
+        Scenario.Outcome outcome = scenario.next(0, random);
+
+        //Assert
+        assertEquals(Scenario.Action.DROP, outcome.action());
+        assertEquals(TimeUnit.SECONDS.toNanos(5), outcome.delayNanos());
+        assertEquals(1, scenario.stats().timeouts());
+    }
+
+    @Test
+    public void testSampleNanos_withLogNormal_isCenteredOnTheMedianWithALongTail() {
+        //Arrange
+        LatencyDistribution latency = new ScenarioSpec.LatencySpec("lognormal", null, null, null, 20.0, 1.0,
+                null, null, null).toDistribution();
+
+        //Act
+        long[] samples = new long[10_001];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.sampleNanos(random);
+        }
+        Arrays.sort(samples);
+
+        //Assert
+        assertEquals(20.0, samples[5_000] / 1e6, 2.0);
+        // exp(2.33) for sigma 1: p99 about 10x the median
+        assertTrue(samples[9_900] > 7 * samples[5_000], "p99 " + samples[9_900] / 1e6 + " ms");
+    }
+
+    @Test
+    public void testToScenario_withInvalidSpec_isRejected() {
+        //Arrange
+        ScenarioSpec.LatencySpec bimodalWithoutSlow = new ScenarioSpec.LatencySpec("bimodal", null, null, null, null, null,
+                new ScenarioSpec.LatencySpec("fixed", 1.0, null, null, null, null, null, null, null), null, 0.1);
+
+        //Act and Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> new ScenarioSpec(bimodalWithoutSlow, null, null, null, null, null, null, null).toScenario("bimodal"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ScenarioSpec(null, 0.6, null, 0.3, null, 0.2, null, null).toScenario("too-many-faults"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ScenarioSpec(null, 0.1, 302, null, null, null, null, null).toScenario("redirect"));
+    }
+}
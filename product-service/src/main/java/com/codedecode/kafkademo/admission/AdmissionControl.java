@@ -0,0 +1,217 @@
+package com.codedecode.kafkademo.admission;
+
+import com.codedecode.kafkademo.producer.AdaptiveProducerFactory;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import com.codedecode.kafkademo.spool.ProductEventSpool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* Load shedding for createProduct, enabled with product.admission.enabled=true.
+*
+* Without it an overloaded service keeps taking requests: every one of them waits in send() for buffer space
+* (max.block.ms) or for an acknowledgement that takes longer and longer, and the client learns about it after
+* delivery.timeout.ms. Here a request is rejected before anything is sent (429 with Retry-After, see
+* ProductController) when
+*  - limit sends are already waiting for their acknowledgement, or
+*  - less than min-buffer-available of the producer buffer is free, send() would block
+*
+* The limit adapts to the latency from admission to acknowledgement (AIMD):
+*  - a send acknowledged within latency-target while at least half of the limit is in use raises it by 1/limit,
+*    about one per limit acknowledgements
+*  - a send slower than latency-target, or failed with a timeout or a retriable error, multiplies it by backoff-ratio.
+*    At most once per latency-target, the sends that were in flight together all report the same congestion
+*
+* product.admission.limit, product.admission.in.flight   current limit and admitted sends without acknowledgement
+* product.admission.rejected{reason=limit|buffer}        rejected requests
+* */
+@Component
+@ConditionalOnProperty(name = "product.admission.enabled", havingValue = "true")
+public class AdmissionControl {
+    private final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final double backoffRatio;
+    private final double minBufferAvailable;
+    private final Duration retryAfter;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejectedByLimit;
+    private final Counter rejectedByBuffer;
+
+    private volatile double limit;
+    private long lastDecreaseNanos;
+    // producer metrics, looked up once the producer exists and again after AdaptiveProducerFactory switched producers
+    private volatile Metric bufferAvailableBytes;
+    private volatile Metric bufferTotalBytes;
+    private volatile Object bufferMetricsProducer;
+    private volatile long nextLookUpNanos = System.nanoTime();
+
+    public AdmissionControl(KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${product.admission.initial-limit:200}") int initialLimit,
+                            @Value("${product.admission.min-limit:10}") int minLimit,
+                            @Value("${product.admission.max-limit:5000}") int maxLimit,
+                            @Value("${product.admission.latency-target:200ms}") Duration latencyTarget,
+                            @Value("${product.admission.backoff-ratio:0.9}") double backoffRatio,
+                            @Value("${product.admission.min-buffer-available:0.1}") double minBufferAvailable,
+                            @Value("${product.admission.retry-after:1s}") Duration retryAfter) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("expected 0 < min-limit <= initial-limit <= max-limit, got "
+                    + minLimit + ", " + initialLimit + ", " + maxLimit);
+        }
+        this.kafkaTemplate = kafkaTemplate;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.minBufferAvailable = minBufferAvailable;
+        this.retryAfter = retryAfter;
+        this.limit = initialLimit;
+        this.bufferMetricsProducer = activeProducer();
+        this.lastDecreaseNanos = System.nanoTime() - latencyTargetNanos;
+
+        Gauge.builder("product.admission.limit", this, AdmissionControl::limit)
+                .description("sends createProduct admits without acknowledgement, adapted to the acknowledgement latency")
+                .register(meterRegistry);
+        Gauge.builder("product.admission.in.flight", inFlight, AtomicInteger::get)
+                .description("admitted sends waiting for their acknowledgement")
+                .register(meterRegistry);
+        this.rejectedByLimit = rejectedCounter(meterRegistry, "limit");
+        this.rejectedByBuffer = rejectedCounter(meterRegistry, "buffer");
+    }
+
+    /*
+    * A permit for one send, released with its outcome once the send completed
+    * */
+    public Permit admit() {
+        int admitted = inFlight.incrementAndGet();
+        if (admitted > (int) limit) {
+            inFlight.decrementAndGet();
+            rejectedByLimit.increment();
+            throw new AdmissionRejectedException("too many product creations in flight, limit " + (int) limit, retryAfter);
+        }
+        if (bufferAvailable() < minBufferAvailable) {
+            inFlight.decrementAndGet();
+            rejectedByBuffer.increment();
+            throw new AdmissionRejectedException("producer buffer is full", retryAfter);
+        }
+        return new Permit(System.nanoTime());
+    }
+
+    public double limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /*
+    * latencyNanos: admission until the send completed, exception: null when it was acknowledged
+    * */
+    void completed(long latencyNanos, Throwable exception) {
+        int inUse = inFlight.getAndDecrement();
+        boolean congested = exception != null ? ProductEventSpool.isSpoolable(exception) : latencyNanos > latencyTargetNanos;
+        synchronized (this) {
+            if (congested) {
+                long now = System.nanoTime();
+                if (now - lastDecreaseNanos >= latencyTargetNanos) {
+                    lastDecreaseNanos = now;
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    logger.debug("Admission limit lowered to {}", (int) limit);
+                }
+            } else if (exception == null && inUse >= limit / 2) {
+                // an idle service learns nothing about its capacity, the limit only grows while it is used
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    /*
+    * Free share of buffer.memory, 1 as long as the producer metrics are not found
+    * */
+    private double bufferAvailable() {
+        Object producer = activeProducer();
+        if (producer != bufferMetricsProducer) {
+            // the metrics belong to the producer that went idle, the active one's buffer is what send() waits for
+            bufferMetricsProducer = producer;
+            bufferAvailableBytes = null;
+            bufferTotalBytes = null;
+            nextLookUpNanos = System.nanoTime();
+        }
+        Metric available = bufferAvailableBytes;
+        Metric total = bufferTotalBytes;
+        if (available == null || total == null) {
+            // metrics() copies every metric of the producer, not on each request
+            long now = System.nanoTime();
+            if (now - nextLookUpNanos < 0) {
+                return 1;
+            }
+            nextLookUpNanos = now + Duration.ofSeconds(1).toNanos();
+            lookUpBufferMetrics();
+            available = bufferAvailableBytes;
+            total = bufferTotalBytes;
+            if (available == null || total == null) {
+                return 1;
+            }
+        }
+        double totalBytes = ((Number) total.metricValue()).doubleValue();
+        return totalBytes > 0 ? ((Number) available.metricValue()).doubleValue() / totalBytes : 1;
+    }
+
+    /*
+    * The profile whose producer kafkaTemplate sends with, null for a producer factory that does not switch
+    * */
+    private Object activeProducer() {
+        return kafkaTemplate.getProducerFactory() instanceof AdaptiveProducerFactory<?, ?> adaptive ? adaptive.active() : null;
+    }
+
+    private void lookUpBufferMetrics() {
+        for (Map.Entry<MetricName, ? extends Metric> metric : kafkaTemplate.metrics().entrySet()) {
+            if (!"producer-metrics".equals(metric.getKey().group())) {
+                continue;
+            }
+            switch (metric.getKey().name()) {
+                case "buffer-available-bytes" -> bufferAvailableBytes = metric.getValue();
+                case "buffer-total-bytes" -> bufferTotalBytes = metric.getValue();
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("product.admission.rejected")
+                .description("createProduct requests rejected before sending")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    public final class Permit {
+        private final long admittedNanos;
+
+        private Permit(long admittedNanos) {
+            this.admittedNanos = admittedNanos;
+        }
+
+        public void release(Throwable exception) {
+            completed(System.nanoTime() - admittedNanos, exception);
+        }
+    }
+}
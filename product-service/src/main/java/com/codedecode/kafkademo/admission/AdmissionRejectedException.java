@@ -0,0 +1,21 @@
+package com.codedecode.kafkademo.admission;
+
+import java.time.Duration;
+
+/*
+* createProduct was not admitted, nothing has been sent. The client may try again after retryAfter
+* */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(String message, Duration retryAfter) {
+        // thrown at a high rate under overload, the stack trace says nothing the message does not
+        super(message, null, false, false);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
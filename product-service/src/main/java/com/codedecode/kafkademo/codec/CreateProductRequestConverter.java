@@ -0,0 +1,127 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/*
+* Reads the body of POST /products/createProduct in a single streaming pass, enabled with
+* product.create.fast-path.enabled=true. Spring Boot puts it ahead of the Jackson converter.
+*
+* Without it the body is mapped to a CreateProductRestModel, copied into a ProductCreatedEvent and that is mapped
+* to JSON again by JsonSerializer. Here the parser validates title, price and quantity token by token and the
+* record value is encoded right away (ProductCreatedEventJson), the productId is filled in once it is generated.
+* ProductCreatedEventJsonSerializer sends that value as it is.
+*
+* A body outside of the plain shape (numbers as strings, a quantity with a fraction, malformed JSON) is mapped by
+* the ObjectMapper like before, so coercions and error responses stay the same. Writing goes through the ObjectMapper too
+* */
+@Component
+@ConditionalOnProperty(name = "product.create.fast-path.enabled", havingValue = "true")
+public class CreateProductRequestConverter extends AbstractHttpMessageConverter<CreateProductRestModel> {
+
+    private final ObjectMapper objectMapper;
+
+    public CreateProductRequestConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == CreateProductRestModel.class;
+    }
+
+    @Override
+    protected CreateProductRestModel readInternal(Class<? extends CreateProductRestModel> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        byte[] body = StreamUtils.copyToByteArray(inputMessage.getBody());
+        CreateProductRestModel product = read(body);
+        if (product != null) {
+            return product;
+        }
+        try {
+            return objectMapper.readValue(body, CreateProductRestModel.class);
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("JSON parse error: " + e.getOriginalMessage(), e, inputMessage);
+        }
+    }
+
+    /*
+    * null unless the body is an object of plain title, price and quantity values, other properties are skipped
+    * like the ObjectMapper does
+    * */
+    CreateProductRestModel read(byte[] body) throws IOException {
+        String title = null;
+        BigDecimal price = null;
+        Integer quantity = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "title" -> {
+                        if (value != JsonToken.VALUE_STRING && value != JsonToken.VALUE_NULL) {
+                            return null;
+                        }
+                        title = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    }
+                    case "price" -> {
+                        if (value != JsonToken.VALUE_NUMBER_INT && value != JsonToken.VALUE_NUMBER_FLOAT && value != JsonToken.VALUE_NULL) {
+                            return null;
+                        }
+                        price = value == JsonToken.VALUE_NULL ? null : parser.getDecimalValue();
+                    }
+                    case "quantity" -> {
+                        if (value == JsonToken.VALUE_NULL) {
+                            quantity = null;
+                        } else if (value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == JsonParser.NumberType.INT) {
+                            quantity = parser.getIntValue();
+                        } else {
+                            return null;
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.END_OBJECT) {
+                return null;
+            }
+        } catch (JsonProcessingException e) {
+            // malformed, the ObjectMapper reports it the usual way
+            return null;
+        }
+        byte[] value = ProductCreatedEventJson.encode(title, price, quantity);
+        if (value == null) {
+            CreateProductRestModel product = new CreateProductRestModel();
+            product.setTitle(title);
+            product.setPrice(price);
+            product.setQuantity(quantity);
+            return product;
+        }
+        return new PreEncodedCreateProductRestModel(title, price, quantity, value);
+    }
+
+    /* as the Jackson converter writes it, a pre-encoded request is written with the properties of the request only */
+    @Override
+    protected void writeInternal(CreateProductRestModel product, HttpOutputMessage outputMessage) throws IOException {
+        objectMapper.writerFor(CreateProductRestModel.class).writeValue(outputMessage.getBody(), product);
+    }
+}
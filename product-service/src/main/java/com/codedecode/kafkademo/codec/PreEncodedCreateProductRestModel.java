@@ -0,0 +1,35 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+* A createProduct request read by CreateProductRequestConverter: the request and the JSON value of its
+* product created event, encoded while the body was parsed, only the productId is left to fill in
+* */
+public class PreEncodedCreateProductRestModel extends CreateProductRestModel {
+
+    private final byte[] value;
+    private final AtomicBoolean valueUsed = new AtomicBoolean();
+
+    public PreEncodedCreateProductRestModel(String title, BigDecimal price, Integer quantity, byte[] value) {
+        setTitle(title);
+        setPrice(price);
+        setQuantity(quantity);
+        this.value = value;
+    }
+
+    /*
+    * One event per request, its value is the encoded array itself. A further event gets a copy
+    * */
+    public ProductCreatedEvent toEvent(String productId) {
+        byte[] eventValue = valueUsed.compareAndSet(false, true) ? value : value.clone();
+        if (!ProductCreatedEventJson.withProductId(eventValue, productId)) {
+            return new ProductCreatedEvent(productId, getTitle(), getPrice(), getQuantity());
+        }
+        return new PreEncodedProductCreatedEvent(productId, getTitle(), getPrice(), getQuantity(), eventValue);
+    }
+}
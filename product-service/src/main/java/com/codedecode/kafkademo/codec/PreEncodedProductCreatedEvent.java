@@ -0,0 +1,24 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+
+/*
+* A ProductCreatedEvent that carries its JSON value already, ProductCreatedEventJsonSerializer sends it as is.
+* The properties are set as well, everything that reads them (the spool, the binary serializer) works unchanged.
+* Not to be modified, the value would not follow
+* */
+public class PreEncodedProductCreatedEvent extends ProductCreatedEvent {
+
+    private final byte[] value;
+
+    public PreEncodedProductCreatedEvent(String productId, String title, BigDecimal price, Integer quantity, byte[] value) {
+        super(productId, title, price, quantity);
+        this.value = value;
+    }
+
+    public byte[] value() {
+        return value;
+    }
+}
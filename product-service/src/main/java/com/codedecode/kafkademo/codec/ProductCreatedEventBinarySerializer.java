@@ -0,0 +1,34 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+* Drop-in replacement for JsonSerializer, enable it with
+* spring.kafka.producer.value-serializer: com.codedecode.kafkademo.codec.ProductCreatedEventBinarySerializer
+*
+* Consumers tell the formats apart by the valueFormat header, so they must run with
+* product-created-event.value-format=auto (or binary) before producers are switched.
+* */
+public class ProductCreatedEventBinarySerializer implements Serializer<ProductCreatedEvent> {
+
+    private static final byte[] BINARY_FORMAT = ProductCreatedEventCodec.BINARY_FORMAT.getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public byte[] serialize(String topic, ProductCreatedEvent data) {
+        return data == null ? null : ProductCreatedEventCodec.encode(data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, ProductCreatedEvent data) {
+        if (data == null) {
+            return null;
+        }
+        headers.remove(ProductCreatedEventCodec.FORMAT_HEADER);
+        headers.add(ProductCreatedEventCodec.FORMAT_HEADER, BINARY_FORMAT);
+        return ProductCreatedEventCodec.encode(data);
+    }
+}
@@ -0,0 +1,292 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/*
+* Compact binary layout of ProductCreatedEvent, the same class exists in email-notification-service.
+* Any change to the layout needs a new FORMAT_VERSION, decoders reject versions they do not know.
+*
+* version 1:
+*   byte     format version
+*   string   productId
+*   string   title
+*   decimal  price
+*   int      quantity (tag byte 0 = null, 1 = zigzag varint follows)
+*
+*   string  -> varint (UTF-8 length + 1), 0 = null, followed by the UTF-8 bytes
+*   decimal -> tag byte 0 = null, 1 = unscaled value fits a long, 2 = unscaled value as two's complement bytes,
+*              then zigzag varint scale, then zigzag varlong or varint length + bytes
+*
+* The encoded size is computed up front so the record value is written straight into its final array:
+* no intermediate buffer, no reflection and no BigDecimal to text round trip.
+* */
+public final class ProductCreatedEventCodec {
+
+    public static final String FORMAT_HEADER = "valueFormat";
+    public static final String BINARY_FORMAT = "product-created-event-binary";
+    public static final byte FORMAT_VERSION = 1;
+
+    private static final byte ABSENT = 0;
+    private static final byte PRESENT = 1;
+    private static final byte COMPACT_DECIMAL = 1;
+    private static final byte BIG_DECIMAL = 2;
+
+    private ProductCreatedEventCodec() {
+    }
+
+    public static byte[] encode(ProductCreatedEvent event) {
+        BigDecimal price = event.getPrice();
+        boolean compactPrice = price == null || price.precision() <= 18;
+        long compactUnscaled = compactPrice && price != null ? price.unscaledValue().longValue() : 0;
+        byte[] bigUnscaled = compactPrice ? null : price.unscaledValue().toByteArray();
+
+        int size = 1 + stringSize(event.getProductId()) + stringSize(event.getTitle()) + 1 + 1;
+        if (price != null) {
+            size += varintSize(zigzag(price.scale()));
+            size += compactPrice ? varlongSize(zigzag(compactUnscaled))
+                    : varintSize(bigUnscaled.length) + bigUnscaled.length;
+        }
+        if (event.getQuantity() != null) {
+            size += varintSize(zigzag(event.getQuantity()));
+        }
+
+        byte[] out = new byte[size];
+        int pos = 0;
+        out[pos++] = FORMAT_VERSION;
+        pos = writeString(out, pos, event.getProductId());
+        pos = writeString(out, pos, event.getTitle());
+        if (price == null) {
+            out[pos++] = ABSENT;
+        } else if (compactPrice) {
+            out[pos++] = COMPACT_DECIMAL;
+            pos = writeVarint(out, pos, zigzag(price.scale()));
+            pos = writeVarlong(out, pos, zigzag(compactUnscaled));
+        } else {
+            out[pos++] = BIG_DECIMAL;
+            pos = writeVarint(out, pos, zigzag(price.scale()));
+            pos = writeVarint(out, pos, bigUnscaled.length);
+            System.arraycopy(bigUnscaled, 0, out, pos, bigUnscaled.length);
+            pos += bigUnscaled.length;
+        }
+        if (event.getQuantity() == null) {
+            out[pos++] = ABSENT;
+        } else {
+            out[pos++] = PRESENT;
+            pos = writeVarint(out, pos, zigzag(event.getQuantity()));
+        }
+        return out;
+    }
+
+    public static ProductCreatedEvent decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            throw new SerializationException("Empty ProductCreatedEvent payload");
+        }
+        if (data[0] != FORMAT_VERSION) {
+            throw new SerializationException("Unsupported ProductCreatedEvent format version " + data[0]);
+        }
+        Reader reader = new Reader(data);
+        try {
+            ProductCreatedEvent event = new ProductCreatedEvent();
+            event.setProductId(reader.readString());
+            event.setTitle(reader.readString());
+            byte priceTag = reader.readByte();
+            if (priceTag == COMPACT_DECIMAL) {
+                int scale = unzigzag(reader.readVarint());
+                event.setPrice(BigDecimal.valueOf(unzigzag(reader.readVarlong()), scale));
+            } else if (priceTag == BIG_DECIMAL) {
+                int scale = unzigzag(reader.readVarint());
+                event.setPrice(new BigDecimal(new BigInteger(reader.readBytes(reader.readVarint())), scale));
+            } else if (priceTag != ABSENT) {
+                throw new SerializationException("Unknown price tag " + priceTag);
+            }
+            byte quantityTag = reader.readByte();
+            if (quantityTag == PRESENT) {
+                event.setQuantity(unzigzag(reader.readVarint()));
+            } else if (quantityTag != ABSENT) {
+                throw new SerializationException("Unknown quantity tag " + quantityTag);
+            }
+            if (reader.pos != data.length) {
+                throw new SerializationException("Trailing bytes after ProductCreatedEvent");
+            }
+            return event;
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new SerializationException("Truncated ProductCreatedEvent payload", e);
+        }
+    }
+
+    private static int stringSize(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int length = utf8Length(value);
+        return varintSize(length + 1) + length;
+    }
+
+    private static int writeString(byte[] out, int pos, String value) {
+        if (value == null) {
+            out[pos] = 0;
+            return pos + 1;
+        }
+        pos = writeVarint(out, pos, utf8Length(value) + 1);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, same replacement as String.getBytes(UTF_8)
+                out[pos++] = '?';
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int varlongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int writeVarlong(byte[] out, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int pos = 1;
+
+        private Reader(byte[] data) {
+            this.data = data;
+        }
+
+        byte readByte() {
+            return data[pos++];
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint in ProductCreatedEvent");
+        }
+
+        long readVarlong() {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = data[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varlong in ProductCreatedEvent");
+        }
+
+        String readString() {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > data.length - pos) {
+                throw new SerializationException("String length exceeds ProductCreatedEvent payload");
+            }
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        byte[] readBytes(int length) {
+            if (length > data.length - pos) {
+                throw new SerializationException("Decimal length exceeds ProductCreatedEvent payload");
+            }
+            byte[] value = new byte[length];
+            System.arraycopy(data, pos, value, 0, length);
+            pos += length;
+            return value;
+        }
+    }
+}
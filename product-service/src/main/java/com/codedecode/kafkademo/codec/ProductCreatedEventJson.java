@@ -0,0 +1,176 @@
+package com.codedecode.kafkademo.codec;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/*
+* The JSON value of a ProductCreatedEvent, byte for byte what JsonSerializer writes with the default ObjectMapper:
+*
+*   {"productId":"...","title":"...","price":1199.99,"quantity":25}
+*
+* properties in declaration order, nulls written as null, BigDecimal.toString() for the price, non-ASCII as UTF-8
+* except characters outside the BMP, Jackson writes their surrogate pairs as two \\uXXXX escapes. Quotes, backslashes
+* and control characters are escaped like Jackson does (\n style where JSON has one, else \\u00XX).
+*
+* The productId is written as PRODUCT_ID_LENGTH placeholder characters at PRODUCT_ID_OFFSET, so the value can be
+* encoded while the request is parsed and the id filled in once it is generated (see withProductId). Every
+* IdGenerator hands out UUID strings, always 36 ASCII characters.
+* As in ProductCreatedEventCodec the size is computed first and the value written straight into its final array.
+* */
+public final class ProductCreatedEventJson {
+
+    public static final int PRODUCT_ID_LENGTH = 36;
+
+    private static final byte[] PRODUCT_ID_FIELD = "{\"productId\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TITLE_FIELD = "\",\"title\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PRICE_FIELD = ",\"price\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUANTITY_FIELD = ",\"quantity\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    public static final int PRODUCT_ID_OFFSET = PRODUCT_ID_FIELD.length;
+
+    private ProductCreatedEventJson() {
+    }
+
+    /*
+    * null when the title holds an unpaired surrogate, which has no UTF-8 form: the caller falls back to
+    * JsonSerializer then, Jackson writes it as a \\uXXXX escape
+    * */
+    public static byte[] encode(String title, BigDecimal price, Integer quantity) {
+        int titleSize = title == null ? NULL.length : quotedSize(title);
+        if (titleSize < 0) {
+            return null;
+        }
+        String priceText = price == null ? null : price.toString();
+        String quantityText = quantity == null ? null : quantity.toString();
+        int size = PRODUCT_ID_FIELD.length + PRODUCT_ID_LENGTH + TITLE_FIELD.length + titleSize
+                + PRICE_FIELD.length + (priceText == null ? NULL.length : priceText.length())
+                + QUANTITY_FIELD.length + (quantityText == null ? NULL.length : quantityText.length()) + 1;
+
+        byte[] out = new byte[size];
+        int pos = write(out, 0, PRODUCT_ID_FIELD);
+        pos += PRODUCT_ID_LENGTH;
+        pos = write(out, pos, TITLE_FIELD);
+        pos = title == null ? write(out, pos, NULL) : writeQuoted(out, pos, title);
+        pos = write(out, pos, PRICE_FIELD);
+        pos = priceText == null ? write(out, pos, NULL) : writeAscii(out, pos, priceText);
+        pos = write(out, pos, QUANTITY_FIELD);
+        pos = quantityText == null ? write(out, pos, NULL) : writeAscii(out, pos, quantityText);
+        out[pos] = '}';
+        return out;
+    }
+
+    /*
+    * Fills the productId placeholder of an encoded value, false if productId does not fit it
+    * */
+    public static boolean withProductId(byte[] value, String productId) {
+        if (productId.length() != PRODUCT_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < PRODUCT_ID_LENGTH; i++) {
+            char c = productId.charAt(i);
+            if (c < 0x20 || c >= 0x80 || c == '"' || c == '\\') {
+                return false;
+            }
+        }
+        writeAscii(value, PRODUCT_ID_OFFSET, productId);
+        return true;
+    }
+
+    /*
+    * Size of the quoted and escaped UTF-8 string, -1 for an unpaired surrogate
+    * */
+    private static int quotedSize(String value) {
+        int size = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                size += escapeSize(c);
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                size += 12;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return -1;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    private static int escapeSize(char c) {
+        if (c == '"' || c == '\\' || c == '\b' || c == '\t' || c == '\n' || c == '\f' || c == '\r') {
+            return 2;
+        }
+        return c < 0x20 ? 6 : 1;
+    }
+
+    private static int writeQuoted(byte[] out, int pos, String value) {
+        out[pos++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                pos = writeEscaped(out, pos, c);
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // a pair, quotedSize() has checked
+                pos = writeUnicodeEscape(out, pos, c);
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        out[pos++] = '"';
+        return pos;
+    }
+
+    private static int writeEscaped(byte[] out, int pos, char c) {
+        char escape = switch (c) {
+            case '"' -> '"';
+            case '\\' -> '\\';
+            case '\b' -> 'b';
+            case '\t' -> 't';
+            case '\n' -> 'n';
+            case '\f' -> 'f';
+            case '\r' -> 'r';
+            default -> 0;
+        };
+        if (escape != 0) {
+            out[pos++] = '\\';
+            out[pos++] = (byte) escape;
+        } else if (c < 0x20) {
+            pos = writeUnicodeEscape(out, pos, c);
+        } else {
+            out[pos++] = (byte) c;
+        }
+        return pos;
+    }
+
+    private static int writeUnicodeEscape(byte[] out, int pos, char c) {
+        out[pos++] = '\\';
+        out[pos++] = 'u';
+        out[pos++] = HEX[c >> 12];
+        out[pos++] = HEX[(c >> 8) & 0xF];
+        out[pos++] = HEX[(c >> 4) & 0xF];
+        out[pos++] = HEX[c & 0xF];
+        return pos;
+    }
+
+    private static int writeAscii(byte[] out, int pos, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out[pos++] = (byte) value.charAt(i);
+        }
+        return pos;
+    }
+
+    private static int write(byte[] out, int pos, byte[] bytes) {
+        System.arraycopy(bytes, 0, out, pos, bytes.length);
+        return pos + bytes.length;
+    }
+}
@@ -0,0 +1,33 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+/*
+* JsonSerializer that sends the value of a PreEncodedProductCreatedEvent as it is, with the same __TypeId__ header
+* JsonSerializer writes for a ProductCreatedEvent. Every other event is serialized by JsonSerializer itself,
+* so the records are the same either way. Configured as spring.kafka.producer.value-serializer
+* */
+public class ProductCreatedEventJsonSerializer extends JsonSerializer<ProductCreatedEvent> {
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, ProductCreatedEvent data) {
+        if (!(data instanceof PreEncodedProductCreatedEvent preEncoded)) {
+            return super.serialize(topic, headers, data);
+        }
+        if (addTypeInfo && headers != null) {
+            // the type of the event, not of the subclass
+            typeMapper.fromJavaType(objectMapper.constructType(ProductCreatedEvent.class), headers);
+        }
+        return preEncoded.value();
+    }
+
+    @Override
+    public byte[] serialize(String topic, ProductCreatedEvent data) {
+        if (data instanceof PreEncodedProductCreatedEvent preEncoded) {
+            return preEncoded.value();
+        }
+        return super.serialize(topic, data);
+    }
+}
@@ -1,17 +1,28 @@
 package com.codedecode.kafkademo.config;
 
+import com.codedecode.kafkademo.producer.AdaptiveProducerFactory;
 import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.CompositeProducerListener;
+import org.springframework.kafka.support.LoggingProducerListener;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -44,6 +55,51 @@ public class KafkaProducerConfig {
     @Value("${spring.kafka.producer.properties.max.in.flight.requests.per.connection}")
     private String maxInFlightRequestsPerConnection;
 
+    @Value("${product.bulk.producer.linger.ms}")
+    private String bulkLingerMs;
+
+    @Value("${product.bulk.producer.batch.size}")
+    private String bulkBatchSize;
+
+    @Value("${product.bulk.producer.compression.type}")
+    private String bulkCompressionType;
+
+    @Value("${product.spool.enabled:false}")
+    private boolean spoolEnabled;
+
+    @Value("${product.spool.max-block:1s}")
+    private Duration spoolMaxBlock;
+
+    @Value("${product.adaptive.enabled:false}")
+    private boolean adaptiveEnabled;
+
+    @Value("${product.adaptive.producer.linger.ms}")
+    private String adaptiveLingerMs;
+
+    @Value("${product.adaptive.producer.batch.size}")
+    private String adaptiveBatchSize;
+
+    @Value("${product.adaptive.producer.compression.type}")
+    private String adaptiveCompressionType;
+
+    @Value("${product.adaptive.throughput-rate}")
+    private double adaptiveThroughputRate;
+
+    @Value("${product.adaptive.latency-rate}")
+    private double adaptiveLatencyRate;
+
+    @Value("${product.adaptive.latency-target}")
+    private Duration adaptiveLatencyTarget;
+
+    @Value("${product.adaptive.min-dwell}")
+    private Duration adaptiveMinDwell;
+
+    @Value("${product.adaptive.evaluation-interval}")
+    private Duration adaptiveEvaluationInterval;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
 
     Map<String, Object> producerConfigs() {
         Map<String, Object> config = new HashMap<>();
@@ -61,14 +117,110 @@ public class KafkaProducerConfig {
         return config;
     }
 
+    /*
+    * With the spool (ProductEventSpool) send() gives up waiting for metadata or buffer space after spool.max-block
+    * instead of max.block.ms' 60s, the record goes to the spool. The bulk producer keeps the default.
+    * With product.adaptive.enabled=true a second producer with the product.adaptive.producer settings takes over
+    * while the rate is high, see AdaptiveProducerFactory
+    * */
     @Bean
+    @Primary
      ProducerFactory<String, ProductCreatedEvent> createProducerFactory() {
-        return new DefaultKafkaProducerFactory<>(producerConfigs());
+        Map<String, Object> config = producerConfigs();
+        if (spoolEnabled) {
+            config.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, spoolMaxBlock.toMillis());
+        }
+        DefaultKafkaProducerFactory<String, ProductCreatedEvent> producerFactory = new DefaultKafkaProducerFactory<>(config);
+        producerFactory.addListener(producerMetrics("single"));
+        if (!adaptiveEnabled) {
+            return producerFactory;
+        }
+        config.put(ProducerConfig.LINGER_MS_CONFIG, adaptiveLingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, adaptiveBatchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, adaptiveCompressionType);
+        DefaultKafkaProducerFactory<String, ProductCreatedEvent> throughputFactory = new DefaultKafkaProducerFactory<>(config);
+        throughputFactory.addListener(producerMetrics("single-throughput"));
+        return new AdaptiveProducerFactory<>(producerFactory, throughputFactory,
+                new AdaptiveProducerFactory.Thresholds(adaptiveThroughputRate, adaptiveLatencyRate, adaptiveLatencyTarget, adaptiveMinDwell),
+                adaptiveEvaluationInterval, meterRegistry);
     }
 
     @Bean
+    @Primary
      KafkaTemplate<String, ProductCreatedEvent> createKafkaTemplate() {
-        return new KafkaTemplate<String, ProductCreatedEvent>(createProducerFactory());
+        ProducerFactory<String, ProductCreatedEvent> producerFactory = createProducerFactory();
+        if (!(producerFactory instanceof AdaptiveProducerFactory<String, ProductCreatedEvent> adaptiveProducerFactory)) {
+            return new KafkaTemplate<String, ProductCreatedEvent>(producerFactory);
+        }
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new KafkaTemplate<String, ProductCreatedEvent>(adaptiveProducerFactory) {
+            // KafkaTemplate flushes the producer of the active profile only, the other one may still hold records
+            @Override
+            public void flush() {
+                adaptiveProducerFactory.flush();
+            }
+        };
+        // it counts the sends and their acknowledgement latency here, failures are still logged
+        kafkaTemplate.setProducerListener(new CompositeProducerListener<>(new LoggingProducerListener<>(), adaptiveProducerFactory));
+        return kafkaTemplate;
+    }
+
+    /*
+    * Separate producer for /products/batch: a bulk request pushes thousands of records at once,
+    * so waiting a few ms to fill bigger compressed batches costs nothing and saves broker requests.
+    * Single createProduct calls keep using the linger.ms=0 producer above.
+    * */
+    @Bean
+     ProducerFactory<String, ProductCreatedEvent> createBulkProducerFactory() {
+        DefaultKafkaProducerFactory<String, ProductCreatedEvent> producerFactory = new DefaultKafkaProducerFactory<>(bulkProducerConfigs());
+        producerFactory.addListener(producerMetrics("bulk"));
+        return producerFactory;
+    }
+
+    /*
+    * The spool drainer replays in bulk as well, but its send() gives up after spool.max-block: with max.block.ms'
+    * 60s a single replay against an unreachable cluster would hold the drainer for a minute
+    * */
+    @Bean
+    @ConditionalOnProperty(name = "product.spool.enabled", havingValue = "true")
+     ProducerFactory<String, ProductCreatedEvent> createSpoolReplayProducerFactory() {
+        Map<String, Object> config = bulkProducerConfigs();
+        config.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, spoolMaxBlock.toMillis());
+        DefaultKafkaProducerFactory<String, ProductCreatedEvent> producerFactory = new DefaultKafkaProducerFactory<>(config);
+        producerFactory.addListener(producerMetrics("spool-replay"));
+        return producerFactory;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "product.spool.enabled", havingValue = "true")
+     KafkaTemplate<String, ProductCreatedEvent> createSpoolReplayKafkaTemplate() {
+        return new KafkaTemplate<String, ProductCreatedEvent>(createSpoolReplayProducerFactory());
+    }
+
+    private Map<String, Object> bulkProducerConfigs() {
+        Map<String, Object> config = producerConfigs();
+        config.put(ProducerConfig.LINGER_MS_CONFIG, bulkLingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, bulkBatchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, bulkCompressionType);
+        return config;
+    }
+
+    /*
+    * Binds the producer's own metrics to Micrometer while the producer exists, e.g.
+    * kafka.producer.record.queue.time.avg/max  time records waited in the buffer for their batch to be sent
+    * kafka.producer.batch.size.avg             bytes per batch, small batches mean linger.ms is too short for the load
+    * kafka.producer.request.latency.avg/max    produce request round trip including replication (acks=all)
+    * kafka.producer.buffer.available.bytes     buffer.memory left, send() blocks once it reaches 0
+    * kafka.producer.record.error.rate          records per second that failed after all retries
+    * tagged with producer=single|single-throughput|bulk|spool-replay. The meters read the producer's metrics when scraped,
+    * nothing is added to the send path
+    * */
+    private MicrometerProducerListener<String, ProductCreatedEvent> producerMetrics(String producer) {
+        return new MicrometerProducerListener<>(meterRegistry, List.of(Tag.of("producer", producer)));
+    }
+
+    @Bean
+     KafkaTemplate<String, ProductCreatedEvent> createBulkKafkaTemplate() {
+        return new KafkaTemplate<String, ProductCreatedEvent>(createBulkProducerFactory());
     }
 
 
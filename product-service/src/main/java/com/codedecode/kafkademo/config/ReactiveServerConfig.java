@@ -0,0 +1,20 @@
+package com.codedecode.kafkademo.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+* spring-boot-starter-web keeps Tomcat on the classpath, and Spring Boot prefers Tomcat over Netty for a reactive
+* application too. The reactive stack is meant to run on the Netty event loops, so the factory is chosen here
+* */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -1,43 +1,148 @@
 package com.codedecode.kafkademo.controller;
 
+import com.codedecode.kafkademo.admission.AdmissionRejectedException;
+import com.codedecode.kafkademo.model.BatchCreateProductResponse;
 import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.model.ProductCreateMode;
 import com.codedecode.kafkademo.model.exception.ErrorMessage;
 import com.codedecode.kafkademo.service.ProductService;
+import com.codedecode.kafkademo.spool.SpoolFullException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/products")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductController {
     private final Logger LOGGER= LoggerFactory.getLogger("ProductController.class");
 
     ProductService productService;
 
-    public ProductController(ProductService productService){
+    ObjectMapper objectMapper;
+
+    @Value("${product.create.mode:sync}")
+    private ProductCreateMode createMode;
+
+    public ProductController(ProductService productService, ObjectMapper objectMapper){
         this.productService = productService;
+        this.objectMapper = objectMapper;
     }
 
+    /*
+    * Returning a CompletableFuture makes Spring MVC process the request asynchronously:
+    * the servlet thread goes back to Tomcat and the response is written when the future completes
+    * */
     @PostMapping("/createProduct")
-    public ResponseEntity<Object> createProducts(@RequestBody CreateProductRestModel product){
+    public CompletableFuture<ResponseEntity<Object>> createProducts(@RequestBody CreateProductRestModel product){
+        switch (createMode) {
+            case ASYNC:
+                return createProductAsync(product);
+            case ACCEPT:
+                return CompletableFuture.completedFuture(acceptProduct(product));
+            default:
+                return CompletableFuture.completedFuture(createProduct(product));
+        }
+    }
+
+    /*
+    * Accepts a JSON array or NDJSON (one product per line) of CreateProductRestModel.
+    * The body is read as a stream, so every product is published while the rest of the request is still being read
+    * */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<Object> createProductsInBatch(InputStream body) throws IOException {
+        try (MappingIterator<CreateProductRestModel> products =
+                     objectMapper.readerFor(CreateProductRestModel.class).readValues(body)) {
+            BatchCreateProductResponse response = productService.createProducts(products);
+            LOGGER.info("**** Bulk product creation finished**********");
+            return ResponseEntity.status(HttpStatus.OK)
+                    .body(response);
+        }
+    }
+
+    private ResponseEntity<Object> createProduct(CreateProductRestModel product) {
         String productId  = null;
         try {
             productId = productService.createProduct(product);
         } catch (Exception e) {
-            LOGGER.error("**** Error in product creation **********");
-            return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
-                    .body(new ErrorMessage(new Date(), e.getMessage(), "product has not been created successfully."));
+            return productCreationFailed(e);
         }
         LOGGER.info("**** Product creation is successful**********");
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(productId);
     }
+
+    private CompletableFuture<ResponseEntity<Object>> createProductAsync(CreateProductRestModel product) {
+        CompletableFuture<String> future;
+        try {
+            future = productService.createProductAsync(product);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(productCreationFailed(e));
+        }
+        return future.handle((productId, exception) -> {
+            if (exception != null) {
+                return productCreationFailed(exception instanceof CompletionException ? exception.getCause() : exception);
+            }
+            LOGGER.info("**** Product creation is successful**********");
+            return ResponseEntity.status(HttpStatus.CREATED).body(productId);
+        });
+    }
+
+    private ResponseEntity<Object> acceptProduct(CreateProductRestModel product) {
+        String productId  = null;
+        try {
+            productId = productService.acceptProduct(product);
+        } catch (Exception e) {
+            return productCreationFailed(e);
+        }
+        LOGGER.info("**** Product creation is accepted**********");
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(productId);
+    }
+
+    private ResponseEntity<Object> productCreationFailed(Throwable e) {
+        if (e instanceof AdmissionRejectedException rejected) {
+            return productCreationRejected(rejected);
+        }
+        // createProduct's get() wraps it in an ExecutionException
+        Throwable spoolFull = e instanceof SpoolFullException ? e : e.getCause();
+        if (spoolFull instanceof SpoolFullException) {
+            // the cluster is unreachable and the spool cannot take more, nothing was stored
+            LOGGER.error("**** Product spool is full **********");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ErrorMessage(new Date(), spoolFull.getMessage(), "product has not been created, try again later."));
+        }
+        LOGGER.error("**** Error in product creation **********");
+        return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                .body(new ErrorMessage(new Date(), e.getMessage(), "product has not been created successfully."));
+    }
+
+    /*
+    * Overload: answered at once instead of after delivery.timeout.ms, nothing was sent, see AdmissionControl.
+    * Not logged per request, product.admission.rejected counts them
+    * */
+    private ResponseEntity<Object> productCreationRejected(AdmissionRejectedException e) {
+        long retryAfterSeconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(new ErrorMessage(new Date(), e.getMessage(), "product has not been created, try again later."));
+    }
 }
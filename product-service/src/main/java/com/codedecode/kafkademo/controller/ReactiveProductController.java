@@ -0,0 +1,71 @@
+package com.codedecode.kafkademo.controller;
+
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.model.ProductCreateMode;
+import com.codedecode.kafkademo.model.exception.ErrorMessage;
+import com.codedecode.kafkademo.service.ReactiveProductService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+
+/*
+* ProductController on WebFlux and Netty, active with spring.main.web-application-type=reactive.
+* Same paths, status codes and bodies, so the load-generator and the benchmarks run unchanged against both stacks
+* */
+@RestController
+@RequestMapping("/products")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductController {
+    private final Logger LOGGER = LoggerFactory.getLogger(ReactiveProductController.class);
+
+    private final ReactiveProductService productService;
+
+    private final ProductCreateMode createMode;
+
+    public ReactiveProductController(ReactiveProductService productService,
+                                     @Value("${product.create.mode:sync}") ProductCreateMode createMode) {
+        this.productService = productService;
+        this.createMode = createMode;
+    }
+
+    @PostMapping("/createProduct")
+    public Mono<ResponseEntity<Object>> createProducts(@RequestBody CreateProductRestModel product) {
+        HttpStatus status = createMode == ProductCreateMode.ACCEPT ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+        return productService.createProduct(product, createMode)
+                .map(productId -> {
+                    LOGGER.info("**** Product creation is successful**********");
+                    return ResponseEntity.status(status).body((Object) productId);
+                })
+                .onErrorResume(exception -> Mono.just(productCreationFailed(exception)));
+    }
+
+    /*
+    * A JSON array or NDJSON of CreateProductRestModel, decoded product by product while the body arrives
+    * */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Object>> createProductsInBatch(@RequestBody Flux<CreateProductRestModel> products) {
+        return productService.createProducts(products)
+                .map(response -> {
+                    LOGGER.info("**** Bulk product creation finished**********");
+                    return ResponseEntity.status(HttpStatus.OK).body(response);
+                });
+    }
+
+    private ResponseEntity<Object> productCreationFailed(Throwable e) {
+        LOGGER.error("**** Error in product creation **********");
+        return ResponseEntity.status(HttpStatus.EXPECTATION_FAILED)
+                .body(new ErrorMessage(new Date(), e.getMessage(), "product has not been created successfully."));
+    }
+}
@@ -0,0 +1,84 @@
+package com.codedecode.kafkademo.diagnostics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* Logs every virtual thread that stayed pinned to its carrier thread longer than the threshold.
+* Since JDK 24 (JEP 491) a synchronized block no longer pins, but native frames, class initialisation
+* and monitors held across Object.wait() still do, and the Kafka producer path (RecordAccumulator,
+* DefaultKafkaProducerFactory) is full of synchronized sections worth watching when
+* spring.threads.virtual.enabled=true.
+*
+* The JFR event jdk.VirtualThreadPinned is streamed in-process, so no recording file or jcmd is needed.
+* */
+@Component
+@ConditionalOnProperty(name = "product.virtual-threads.pinning-diagnostics", havingValue = "true")
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+
+    private final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private final AtomicLong pinnedCount = new AtomicLong();
+
+    @Value("${product.virtual-threads.pinning-threshold:20ms}")
+    private Duration threshold;
+
+    private RecordingStream recordingStream;
+
+    @Override
+    public void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::logPinnedThread);
+        recordingStream.startAsync();
+        LOGGER.info("**** Watching for virtual threads pinned longer than {} ****", threshold);
+    }
+
+    @Override
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+            recordingStream = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return recordingStream != null;
+    }
+
+    public long getPinnedCount() {
+        return pinnedCount.get();
+    }
+
+    private void logPinnedThread(RecordedEvent event) {
+        pinnedCount.incrementAndGet();
+        StringBuilder stack = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            for (int i = 0; i < Math.min(LOGGED_FRAMES, frames.size()); i++) {
+                RecordedFrame frame = frames.get(i);
+                stack.append("\n\tat ").append(frame.getMethod().getType().getName())
+                        .append('.').append(frame.getMethod().getName())
+                        .append(':').append(frame.getLineNumber());
+            }
+        }
+        LOGGER.warn("Virtual thread {} was pinned for {} ms{}",
+                event.getThread() != null ? event.getThread().getJavaName() : "unknown",
+                event.getDuration().toMillis(), stack);
+    }
+}
@@ -0,0 +1,14 @@
+package com.codedecode.kafkademo.id;
+
+import java.util.UUID;
+
+/*
+* Source of productIds and messageIds, picked with product.id.generator:
+*   time-ordered  TimeOrderedIdGenerator, UUIDv7 with a node id (default)
+*   random        RandomIdGenerator, UUID.randomUUID() as before
+* Both produce UUIDs, consumers keep reading them as the same 36 character text
+* */
+public interface IdGenerator {
+
+    UUID next();
+}
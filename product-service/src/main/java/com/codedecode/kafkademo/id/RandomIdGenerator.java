@@ -0,0 +1,19 @@
+package com.codedecode.kafkademo.id;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/*
+* Version 4 UUIDs from the JDK's shared SecureRandom, every call goes through its lock
+* */
+@Component
+@ConditionalOnProperty(name = "product.id.generator", havingValue = "random")
+public class RandomIdGenerator implements IdGenerator {
+
+    @Override
+    public UUID next() {
+        return UUID.randomUUID();
+    }
+}
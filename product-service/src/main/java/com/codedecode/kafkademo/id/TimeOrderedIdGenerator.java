@@ -0,0 +1,67 @@
+package com.codedecode.kafkademo.id;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* Version 7 UUIDs (RFC 9562), ordered by the time they were generated:
+*
+*   48 bits  unix time in ms
+*    4 bits  version 7
+*   12 bits  sequence within the ms
+*    2 bits  variant
+*   10 bits  node id, product.id.node-id, unique per running instance
+*   52 bits  random
+*
+* Time and sequence come from one AtomicLong advanced with a CAS, no lock and no SecureRandom: ids of this
+* instance are strictly increasing, also when the clock steps back or more than 4096 ids are taken in a ms,
+* the sequence then runs ahead of the clock until it catches up. The node id keeps instances apart.
+* The random bits are from ThreadLocalRandom, they are not meant to make ids unguessable.
+*
+* Inserts into a unique index on these ids (messageId in processed-events of email-notification-service)
+* go to the right end of the index instead of a random page
+* */
+@Component
+@ConditionalOnProperty(name = "product.id.generator", havingValue = "time-ordered", matchIfMissing = true)
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+    static final int MAX_NODE_ID = 1023;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = 0x000F_FFFF_FFFF_FFFFL;
+
+    private final Clock clock;
+    private final long node;
+    // unix ms << 12 | sequence of the last id
+    private final AtomicLong last = new AtomicLong();
+
+    @Autowired
+    public TimeOrderedIdGenerator(@Value("${product.id.node-id:0}") int nodeId) {
+        this(nodeId, Clock.systemUTC());
+    }
+
+    TimeOrderedIdGenerator(int nodeId, Clock clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("product.id.node-id has to be 0 to " + MAX_NODE_ID + ", got " + nodeId);
+        }
+        this.clock = clock;
+        this.node = (long) nodeId << 52;
+    }
+
+    @Override
+    public UUID next() {
+        long state = last.accumulateAndGet(clock.millis() << SEQUENCE_BITS, (previous, now) -> Math.max(previous + 1, now));
+        long mostSignificantBits = (state >>> SEQUENCE_BITS) << 16 | VERSION | (state & 0xFFF);
+        long leastSignificantBits = VARIANT | node | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+}
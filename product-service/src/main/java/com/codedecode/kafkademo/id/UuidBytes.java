@@ -0,0 +1,38 @@
+package com.codedecode.kafkademo.id;
+
+import java.util.UUID;
+
+/*
+* The canonical text of a UUID written straight into the header value, the 36 ASCII bytes
+* toString().getBytes() would give without the String and the charset encoder in between
+* */
+public final class UuidBytes {
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    private UuidBytes() {
+    }
+
+    public static byte[] ascii(UUID uuid) {
+        byte[] out = new byte[36];
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        hex(out, 0, msb >>> 32, 8);
+        out[8] = '-';
+        hex(out, 9, msb >>> 16, 4);
+        out[13] = '-';
+        hex(out, 14, msb, 4);
+        out[18] = '-';
+        hex(out, 19, lsb >>> 48, 4);
+        out[23] = '-';
+        hex(out, 24, lsb, 12);
+        return out;
+    }
+
+    private static void hex(byte[] out, int offset, long value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            out[i] = HEX_DIGITS[(int) value & 0xF];
+            value >>>= 4;
+        }
+    }
+}
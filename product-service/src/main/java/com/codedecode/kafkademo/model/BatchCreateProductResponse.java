@@ -0,0 +1,17 @@
+package com.codedecode.kafkademo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchCreateProductResponse {
+    private int total;
+    private int created;
+    private int failed;
+    private List<BatchItemResult> results;
+}
@@ -0,0 +1,18 @@
+package com.codedecode.kafkademo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+* Outcome of one product of a /products/batch request,
+* index is the position of the product in the request body
+* */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemResult {
+    private int index;
+    private String productId;
+    private String error;
+}
@@ -0,0 +1,14 @@
+package com.codedecode.kafkademo.model;
+
+/*
+ * How POST /products/createProduct waits for Kafka, selected with product.create.mode
+ * SYNC   -> request thread blocks until all in-sync replicas acknowledged the record (201)
+ * ASYNC  -> request thread is released, response is written once the broker acknowledged (201)
+ * ACCEPT -> response is written as soon as the record is in the producer buffer (202),
+ *           the broker confirmation is only logged
+ * */
+public enum ProductCreateMode {
+    SYNC,
+    ASYNC,
+    ACCEPT
+}
@@ -0,0 +1,226 @@
+package com.codedecode.kafkademo.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.ProducerListener;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+* The createProduct producer with two profiles, enabled with product.adaptive.enabled=true:
+*   latency     linger.ms=0, every record leaves at once, best while the rate is low
+*   throughput  linger, bigger batches and compression, fewer and larger produce requests once the rate is high
+*
+* KafkaTemplate asks its factory for the producer on every send, so this factory hands out the producer of the
+* active profile and every new send follows a switch right away. The other producer is neither closed nor reset:
+* records it already holds are sent after its linger.ms and acknowledged as usual, and it is ready for the way back.
+* flush() reaches both producers. Whoever reads producer metrics through the template (AdmissionControl) gets the
+* ones of the active producer and has to look them up again after a switch, active() tells which one that is.
+* Records of one key may overtake each other across a switch, productIds are never sent twice.
+*
+* Every evaluation-interval the send rate and the average acknowledgement latency of that interval decide:
+*  - latency -> throughput   at throughput-rate sends/s, or halfway between the two rates when acknowledgements take
+*                            longer than latency-target (small requests queue up behind max.in.flight.requests.per.connection)
+*  - throughput -> latency   below latency-rate
+* A profile is kept for at least min-dwell, the gap below both switch points keeps it from flapping. Linger costs
+* more than it saves at latency-rate already, the latency-target switch needs a rate where batching pays off.
+*
+* product.producer.profile.active{profile}         1 for the active profile, 0 for the other
+* product.producer.profile.switches{profile}       switches to the profile
+* product.producer.send.rate, product.producer.ack.latency   the inputs of the last evaluation
+* */
+public class AdaptiveProducerFactory<K, V> implements ProducerFactory<K, V>, ProducerListener<K, V>, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(AdaptiveProducerFactory.class);
+
+    public enum Profile {
+        LATENCY,
+        THROUGHPUT
+    }
+
+    /*
+    * Sends per second and acknowledgement latency that move createProduct between the profiles
+    * */
+    public record Thresholds(double throughputRate, double latencyRate, Duration latencyTarget, Duration minDwell) {
+        public Thresholds {
+            if (latencyRate <= 0 || latencyRate > throughputRate) {
+                throw new IllegalArgumentException("expected 0 < latency-rate <= throughput-rate, got "
+                        + latencyRate + ", " + throughputRate);
+            }
+        }
+    }
+
+    private final Map<Profile, ProducerFactory<K, V>> factories = new EnumMap<>(Profile.class);
+    private final Thresholds thresholds;
+    private final Map<Profile, Counter> switches = new EnumMap<>(Profile.class);
+    private final LongAdder sends = new LongAdder();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder ackLatencyMillis = new LongAdder();
+    private final ScheduledExecutorService evaluator;
+
+    private volatile Profile active = Profile.LATENCY;
+    private volatile double sendRate;
+    private volatile double ackLatency;
+    private long lastEvaluationNanos = System.nanoTime();
+    private long switchedNanos = System.nanoTime();
+
+    public AdaptiveProducerFactory(ProducerFactory<K, V> latencyFactory,
+                                   ProducerFactory<K, V> throughputFactory,
+                                   Thresholds thresholds,
+                                   Duration evaluationInterval,
+                                   MeterRegistry meterRegistry) {
+        factories.put(Profile.LATENCY, latencyFactory);
+        factories.put(Profile.THROUGHPUT, throughputFactory);
+        this.thresholds = thresholds;
+
+        for (Profile profile : Profile.values()) {
+            String name = profile.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("product.producer.profile.active", this, factory -> factory.active == profile ? 1 : 0)
+                    .description("1 while createProduct sends with this producer profile")
+                    .tag("profile", name)
+                    .register(meterRegistry);
+            switches.put(profile, Counter.builder("product.producer.profile.switches")
+                    .description("switches of createProduct to this producer profile")
+                    .tag("profile", name)
+                    .register(meterRegistry));
+        }
+        Gauge.builder("product.producer.send.rate", this, factory -> factory.sendRate)
+                .description("createProduct sends per second in the last evaluation interval")
+                .register(meterRegistry);
+        Gauge.builder("product.producer.ack.latency", this, factory -> factory.ackLatency)
+                .description("average send to acknowledgement latency in the last evaluation interval")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+
+        this.evaluator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "producer-profile-evaluator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = evaluationInterval.toMillis();
+        evaluator.scheduleAtFixedRate(this::evaluate, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Profile active() {
+        return active;
+    }
+
+    /*
+    * Called by KafkaTemplate on every send but also for metrics(), partitionsFor() and flush(), so the sends are
+    * counted when they complete in onSuccess and onError
+    * */
+    @Override
+    public Producer<K, V> createProducer() {
+        return factories.get(active).createProducer();
+    }
+
+    /*
+    * Flushes the producers of both profiles, records the idle one still holds included
+    * */
+    public void flush() {
+        for (ProducerFactory<K, V> factory : factories.values()) {
+            try (Producer<K, V> producer = factory.createProducer()) {
+                producer.flush();
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getConfigurationProperties() {
+        return factories.get(active).getConfigurationProperties();
+    }
+
+    @Override
+    public Duration getPhysicalCloseTimeout() {
+        return factories.get(active).getPhysicalCloseTimeout();
+    }
+
+    @Override
+    public void reset() {
+        factories.values().forEach(ProducerFactory::reset);
+    }
+
+    /*
+    * The producer sets the record timestamp in send(), the acknowledgement carries it back
+    * */
+    @Override
+    public void onSuccess(ProducerRecord<K, V> producerRecord, RecordMetadata recordMetadata) {
+        sends.increment();
+        if (recordMetadata.hasTimestamp()) {
+            acknowledged.increment();
+            ackLatencyMillis.add(Math.max(0, System.currentTimeMillis() - recordMetadata.timestamp()));
+        }
+    }
+
+    @Override
+    public void onError(ProducerRecord<K, V> producerRecord, RecordMetadata recordMetadata, Exception exception) {
+        sends.increment();
+    }
+
+    private void evaluate() {
+        evaluate(System.nanoTime());
+    }
+
+    void evaluate(long now) {
+        try {
+            double seconds = (now - lastEvaluationNanos) / 1_000_000_000.0;
+            lastEvaluationNanos = now;
+            long acks = acknowledged.sumThenReset();
+            long latencySum = ackLatencyMillis.sumThenReset();
+            decide(sends.sumThenReset() / seconds, acks == 0 ? 0 : (double) latencySum / acks, now);
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule, the profile would stay as it is for good
+            logger.error("Producer profile evaluation failed", e);
+        }
+    }
+
+    void decide(double sendsPerSecond, double ackLatencyMillis, long nowNanos) {
+        sendRate = sendsPerSecond;
+        ackLatency = ackLatencyMillis;
+        if (nowNanos - switchedNanos < thresholds.minDwell().toNanos()) {
+            return;
+        }
+        Profile next = active;
+        if (active == Profile.LATENCY) {
+            boolean slow = ackLatencyMillis > thresholds.latencyTarget().toMillis()
+                    && sendsPerSecond >= (thresholds.latencyRate() + thresholds.throughputRate()) / 2;
+            if (sendsPerSecond >= thresholds.throughputRate() || slow) {
+                next = Profile.THROUGHPUT;
+            }
+        } else if (sendsPerSecond < thresholds.latencyRate()) {
+            next = Profile.LATENCY;
+        }
+        if (next != active) {
+            active = next;
+            switchedNanos = nowNanos;
+            switches.get(next).increment();
+            logger.info("**** Switched createProduct to the {} producer profile: {} sends/s, ack latency {} ms ****",
+                    next.name().toLowerCase(Locale.ROOT), Math.round(sendsPerSecond), String.format("%.1f", ackLatencyMillis));
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        evaluator.shutdownNow();
+        // not beans of their own, closing them flushes what their producers still hold
+        for (ProducerFactory<K, V> factory : factories.values()) {
+            if (factory instanceof DisposableBean disposable) {
+                disposable.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.codedecode.kafkademo.service;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* A non-blocking semaphore: acquire() completes once a permit is free, in arrival order, without holding a thread
+* while it waits. A caller cancelled while waiting gives up its place, a permit granted to it is passed on.
+* Once acquire() completed the caller owns the permit and has to release() it
+* */
+final class InFlightLimit {
+
+    private final AtomicInteger available;
+    private final Queue<Waiter> waiting = new ConcurrentLinkedQueue<>();
+
+    InFlightLimit(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits has to be positive, got " + permits);
+        }
+        this.available = new AtomicInteger(permits);
+    }
+
+    Mono<Void> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            sink.onCancel(() -> {
+                if (waiter.cancel()) {
+                    release();
+                }
+            });
+            waiting.offer(waiter);
+            drain();
+        });
+    }
+
+    void release() {
+        available.incrementAndGet();
+        drain();
+    }
+
+    int available() {
+        return available.get();
+    }
+
+    /*
+    * Hands free permits to the waiters. Called after every change on both sides, whichever comes second
+    * sees the other one's change
+    * */
+    private void drain() {
+        while (!waiting.isEmpty()) {
+            int permits = available.get();
+            if (permits == 0) {
+                return;
+            }
+            if (!available.compareAndSet(permits, permits - 1)) {
+                continue;
+            }
+            Waiter waiter = waiting.poll();
+            if (waiter == null || !waiter.grant()) {
+                available.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final MonoSink<Void> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private Waiter(MonoSink<Void> sink) {
+            this.sink = sink;
+        }
+
+        private boolean grant() {
+            if (!state.compareAndSet(WAITING, GRANTED)) {
+                return false;
+            }
+            sink.success();
+            return true;
+        }
+
+        /*
+        * true when a permit was granted but the cancellation won the race against success(), which then
+        * dropped the signal: nobody owns that permit, the caller gives it back
+        * */
+        private boolean cancel() {
+            return !state.compareAndSet(WAITING, CANCELLED) && state.compareAndSet(GRANTED, CANCELLED);
+        }
+    }
+}
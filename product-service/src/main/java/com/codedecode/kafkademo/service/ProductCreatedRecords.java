@@ -0,0 +1,37 @@
+package com.codedecode.kafkademo.service;
+
+import com.codedecode.kafkademo.codec.PreEncodedCreateProductRestModel;
+import com.codedecode.kafkademo.id.IdGenerator;
+import com.codedecode.kafkademo.id.UuidBytes;
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.tracing.PublishTimestamp;
+import org.apache.kafka.clients.producer.ProducerRecord;
+
+/*
+* The record both web stacks publish for a product, so the servlet and the reactive variant write the same
+* key, value and headers: a fresh messageId per record, email-notification-service drops redeliveries by it
+* */
+final class ProductCreatedRecords {
+
+    static final String TOPIC = "product-created-events-topic";
+
+    private ProductCreatedRecords() {
+    }
+
+    static ProducerRecord<String, ProductCreatedEvent> create(String productId, CreateProductRestModel productRestModel,
+                                                             IdGenerator idGenerator) {
+        // read by CreateProductRequestConverter, the value is encoded already
+        ProductCreatedEvent productCreatedEvent = productRestModel instanceof PreEncodedCreateProductRestModel preEncoded
+                ? preEncoded.toEvent(productId)
+                : new ProductCreatedEvent(productId,
+                productRestModel.getTitle(),
+                productRestModel.getPrice(),
+                productRestModel.getQuantity());
+        ProducerRecord<String, ProductCreatedEvent> record = new ProducerRecord<>(TOPIC,
+                productId,productCreatedEvent);
+        record.headers().add("messageId", UuidBytes.ascii(idGenerator.next()));
+        // read by email-notification-service for the end to end latency
+        record.headers().add(PublishTimestamp.HEADER, PublishTimestamp.now());
+        return record;
+    }
+}
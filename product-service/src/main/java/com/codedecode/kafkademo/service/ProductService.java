@@ -1,8 +1,31 @@
 package com.codedecode.kafkademo.service;
 
+import com.codedecode.kafkademo.model.BatchCreateProductResponse;
 import com.codedecode.kafkademo.model.CreateProductRestModel;
 
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+
 public interface ProductService {
 
     String createProduct(CreateProductRestModel productRestModel) throws Exception;
+
+    /*
+    * Completes with the productId once the broker acknowledged the record,
+    * the calling thread is never blocked on the acknowledgement
+    * */
+    CompletableFuture<String> createProductAsync(CreateProductRestModel productRestModel);
+
+    /*
+    * Returns the productId as soon as the record was handed over to the producer buffer,
+    * the broker acknowledgement is only logged
+    * */
+    String acceptProduct(CreateProductRestModel productRestModel);
+
+    /*
+    * Publishes every product without waiting in between and waits once for all acknowledgements.
+    * A product that cannot be published is reported in its own result and does not fail the rest of the batch,
+    * reading stops at the first product that cannot be read from the iterator
+    * */
+    BatchCreateProductResponse createProducts(Iterator<CreateProductRestModel> products);
 }
@@ -1,16 +1,31 @@
 package com.codedecode.kafkademo.service;
 
+import com.codedecode.kafkademo.admission.AdmissionControl;
+import com.codedecode.kafkademo.id.IdGenerator;
+import com.codedecode.kafkademo.model.BatchCreateProductResponse;
+import com.codedecode.kafkademo.model.BatchItemResult;
 import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.model.ProductCreateMode;
+import com.codedecode.kafkademo.spool.ProductEventSpool;
+import com.codedecode.kafkademo.tracing.PublishLatency;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.kafka.core.KafkaTemplate;
 import  org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.stereotype.Service;
 
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class ProductServiceImpl implements ProductService{
@@ -19,18 +34,51 @@ public class ProductServiceImpl implements ProductService{
 
     KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
 
-    public ProductServiceImpl(KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate){
+    KafkaTemplate<String, ProductCreatedEvent> bulkKafkaTemplate;
+
+    /*
+    * Spring Boot's applicationTaskExecutor: a thread pool by default,
+    * a virtual thread per task when spring.threads.virtual.enabled=true
+    * */
+    Executor callbackExecutor;
+
+    PublishLatency publishLatency;
+
+    IdGenerator idGenerator;
+
+    /*
+    * null unless product.spool.enabled=true, takes the events the cluster could not take in time
+    * */
+    ProductEventSpool spool;
+
+    /*
+    * null unless product.admission.enabled=true, rejects createProduct before sending when the producer is overloaded
+    * */
+    AdmissionControl admission;
+
+    @Value("${product.bulk.max-items}")
+    private int bulkMaxItems;
+
+    public ProductServiceImpl(KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate,
+                              @Qualifier("createBulkKafkaTemplate") KafkaTemplate<String, ProductCreatedEvent> bulkKafkaTemplate,
+                              @Qualifier("applicationTaskExecutor") Executor callbackExecutor,
+                              PublishLatency publishLatency,
+                              IdGenerator idGenerator,
+                              Optional<ProductEventSpool> spool,
+                              Optional<AdmissionControl> admission){
         this.kafkaTemplate = kafkaTemplate;
+        this.bulkKafkaTemplate = bulkKafkaTemplate;
+        this.callbackExecutor = callbackExecutor;
+        this.publishLatency = publishLatency;
+        this.idGenerator = idGenerator;
+        this.spool = spool.orElse(null);
+        this.admission = admission.orElse(null);
     }
 
     @Override
     public String createProduct(CreateProductRestModel productRestModel) throws Exception{
-
-        String productId = UUID.randomUUID().toString();
-        ProductCreatedEvent productCreatedEvent = new ProductCreatedEvent(productId,
-                productRestModel.getTitle(),
-                productRestModel.getPrice(),
-                productRestModel.getQuantity());
+        long startedNanos = System.nanoTime();
+        String productId = idGenerator.next().toString();
         /*
         * Line#34 to Line$45 is asynchronous call,
         * if you add future.join()(at line#47), the thread wait for response from Kafka broker
@@ -48,15 +96,270 @@ public class ProductServiceImpl implements ProductService{
         });
         future.join(); // synchronous message call. */
         LOGGER.info("**** Before publishing product create event ****");
-        ProducerRecord<String, ProductCreatedEvent> record = new ProducerRecord<>("product-created-events-topic",
-                productId,productCreatedEvent);
-        record.headers().add("messageId", UUID.randomUUID().toString().getBytes());
-        SendResult<String, ProductCreatedEvent> result = kafkaTemplate.send(record).get(); // send() method may be slow here to process since it waits for response from all
-        // Kafka brokers that my message is stored in Kafka Topic successfully.
-        LOGGER.info("Topic: {}", result.getRecordMetadata().topic());
-        LOGGER.info("Partition: {}", result.getRecordMetadata().partition());
-        LOGGER.info("Offset: {}", result.getRecordMetadata().offset());
+        ProducerRecord<String, ProductCreatedEvent> record = createRecord(productId, productRestModel);
+        if (spool == null) {
+            SendResult<String, ProductCreatedEvent> result = sendAdmitted(record).get(); // send() method may be slow here to process since it waits for response from all
+            // Kafka brokers that my message is stored in Kafka Topic successfully.
+            logSendResult(result);
+        } else if (spool.isSpooling()) {
+            spool.append(record);
+        } else {
+            CompletableFuture<SendResult<String, ProductCreatedEvent>> future = null;
+            try {
+                future = sendAdmitted(record);
+            } catch (RuntimeException e) {
+                if (!spooled(record, e)) {
+                    throw e;
+                }
+            }
+            if (future != null) {
+                acknowledgedOrSpooled(productId, record, future).get();
+            }
+        }
+        publishLatency.created(ProductCreateMode.SYNC, startedNanos);
         LOGGER.info("**** Returning productId **********");
         return productId;
     }
+
+    @Override
+    public CompletableFuture<String> createProductAsync(CreateProductRestModel productRestModel) {
+        long startedNanos = System.nanoTime();
+        String productId = idGenerator.next().toString();
+        LOGGER.info("**** Before publishing product create event ****");
+        ProducerRecord<String, ProductCreatedEvent> record = createRecord(productId, productRestModel);
+        if (spool == null) {
+            // the future is completed by the producer I/O thread, the continuation is moved to callbackExecutor
+            // so that logging and writing the response never delay the next acknowledgement
+            return sendAdmitted(record)
+                    .thenApplyAsync(result -> {
+                        logSendResult(result);
+                        publishLatency.created(ProductCreateMode.ASYNC, startedNanos);
+                        return productId;
+                    }, callbackExecutor);
+        }
+        if (spool.isSpooling()) {
+            spool.append(record);
+            publishLatency.created(ProductCreateMode.ASYNC, startedNanos);
+            return CompletableFuture.completedFuture(productId);
+        }
+        CompletableFuture<SendResult<String, ProductCreatedEvent>> future;
+        try {
+            future = sendAdmitted(record);
+        } catch (RuntimeException e) {
+            if (!spooled(record, e)) {
+                throw e;
+            }
+            publishLatency.created(ProductCreateMode.ASYNC, startedNanos);
+            return CompletableFuture.completedFuture(productId);
+        }
+        return acknowledgedOrSpooled(productId, record, future)
+                .thenApplyAsync(ignored -> {
+                    publishLatency.created(ProductCreateMode.ASYNC, startedNanos);
+                    return productId;
+                }, callbackExecutor);
+    }
+
+    @Override
+    public String acceptProduct(CreateProductRestModel productRestModel) {
+        long startedNanos = System.nanoTime();
+        String productId = idGenerator.next().toString();
+        LOGGER.info("**** Before publishing product create event ****");
+        ProducerRecord<String, ProductCreatedEvent> record = createRecord(productId, productRestModel);
+        if (spool != null && spool.isSpooling()) {
+            spool.append(record);
+        } else {
+            CompletableFuture<SendResult<String, ProductCreatedEvent>> future;
+            try {
+                // send() returns once the record is appended to the producer buffer, the acknowledgement arrives later
+                future = sendAdmitted(record);
+            } catch (RuntimeException e) {
+                if (!spooled(record, e)) {
+                    throw e;
+                }
+                future = null;
+            }
+            if (future != null) {
+                future.whenCompleteAsync((result, exception) -> {
+                    if (exception == null) {
+                        logSendResult(result);
+                    } else {
+                        spooledOrLost(productId, record, exception);
+                    }
+                }, callbackExecutor);
+            }
+        }
+        publishLatency.created(ProductCreateMode.ACCEPT, startedNanos);
+        LOGGER.info("**** Returning accepted productId **********");
+        return productId;
+    }
+
+    @Override
+    public BatchCreateProductResponse createProducts(Iterator<CreateProductRestModel> products) {
+        long startedNanos = System.nanoTime();
+        List<BatchItemResult> results = new ArrayList<>();
+        List<CompletableFuture<?>> pendingSends = new ArrayList<>();
+        LOGGER.info("**** Before publishing product create events in bulk ****");
+        while (true) {
+            int index = results.size();
+            CreateProductRestModel productRestModel;
+            try {
+                if (!products.hasNext()) {
+                    break;
+                }
+                productRestModel = products.next();
+            } catch (RuntimeException e) {
+                // the body itself is broken, nothing after this point can be read
+                results.add(new BatchItemResult(index, null, e.getMessage()));
+                break;
+            }
+            if (index == bulkMaxItems) {
+                results.add(new BatchItemResult(index, null, "batch is limited to " + bulkMaxItems + " products"));
+                break;
+            }
+            BatchItemResult itemResult = new BatchItemResult(index, idGenerator.next().toString(), null);
+            results.add(itemResult);
+            try {
+                // no get() here, the producer keeps filling batches while we keep reading the request
+                pendingSends.add(send(bulkKafkaTemplate, createRecord(itemResult.getProductId(), productRestModel))
+                        .whenComplete((result, exception) -> {
+                            if (exception != null) {
+                                markFailed(itemResult, exception);
+                            }
+                        }));
+            } catch (RuntimeException e) {
+                markFailed(itemResult, e);
+            }
+        }
+        // a single wait for the whole batch, failures were already recorded per item
+        CompletableFuture.allOf(pendingSends.toArray(new CompletableFuture[0]))
+                .exceptionally(exception -> null)
+                .join();
+        publishLatency.createdInBulk(startedNanos);
+
+        int failed = (int) results.stream().filter(itemResult -> itemResult.getError() != null).count();
+        LOGGER.info("**** Published {} of {} products in bulk **********", results.size() - failed, results.size());
+        return new BatchCreateProductResponse(results.size(), results.size() - failed, failed, results);
+    }
+
+    private void markFailed(BatchItemResult itemResult, Throwable exception) {
+        Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+        itemResult.setProductId(null);
+        itemResult.setError(cause.getMessage());
+    }
+
+    /*
+    * A send of createProduct, holds an admission permit until the send completed.
+    * Throws AdmissionRejectedException without sending when the producer is overloaded
+    * */
+    private CompletableFuture<SendResult<String, ProductCreatedEvent>> sendAdmitted(ProducerRecord<String, ProductCreatedEvent> record) {
+        if (admission == null) {
+            return send(kafkaTemplate, record);
+        }
+        AdmissionControl.Permit permit = admission.admit();
+        CompletableFuture<SendResult<String, ProductCreatedEvent>> future;
+        try {
+            future = send(kafkaTemplate, record);
+        } catch (RuntimeException e) {
+            permit.release(e);
+            throw e;
+        }
+        future.whenComplete((result, exception) -> permit.release(exception));
+        return future;
+    }
+
+    /*
+    * Times the append to the producer buffer and the broker acknowledgement, see PublishLatency
+    * */
+    private CompletableFuture<SendResult<String, ProductCreatedEvent>> send(KafkaTemplate<String, ProductCreatedEvent> template,
+                                                                           ProducerRecord<String, ProductCreatedEvent> record) {
+        long startedNanos = System.nanoTime();
+        CompletableFuture<SendResult<String, ProductCreatedEvent>> future = template.send(record);
+        long appendedNanos = System.nanoTime();
+        future.whenComplete((result, exception) -> {
+            if (exception == null) {
+                publishLatency.sent(result.getRecordMetadata().partition(), startedNanos, appendedNanos);
+            }
+        });
+        return future;
+    }
+
+    /*
+    * Completes once the send was acknowledged, or spooled after a retriable failure, and after spool.ack-timeout
+    * at the latest. A send still in flight then is left to the producer, spooling it right away would deliver it
+    * twice whenever the cluster is just slow: it is spooled only if it fails with a retriable error later
+    * */
+    private CompletableFuture<Void> acknowledgedOrSpooled(String productId,
+                                                          ProducerRecord<String, ProductCreatedEvent> record,
+                                                          CompletableFuture<SendResult<String, ProductCreatedEvent>> future) {
+        CompletableFuture<Void> answer = new CompletableFuture<>();
+        // not on the producer I/O thread, spooling writes to disk
+        future.whenCompleteAsync((result, exception) -> {
+            if (exception == null) {
+                logSendResult(result);
+                answer.complete(null);
+                return;
+            }
+            // after the ack-timeout the caller has its answer, a failure can only be logged
+            try {
+                if (spooled(record, exception)) {
+                    answer.complete(null);
+                    return;
+                }
+            } catch (RuntimeException e) {
+                if (!answer.completeExceptionally(e)) {
+                    LOGGER.error("Failed to spool product {}: {}", productId, e.getMessage());
+                }
+                return;
+            }
+            if (!answer.completeExceptionally(exception)) {
+                LOGGER.error("Failed to confirm product {}: {}", productId, exception.getMessage());
+            }
+        }, callbackExecutor);
+        return answer.completeOnTimeout(null, spool.ackTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /*
+    * For a send that failed after the caller got its answer (acceptProduct), nobody is left to report a failure to
+    * */
+    private void spooledOrLost(String productId, ProducerRecord<String, ProductCreatedEvent> record, Throwable exception) {
+        try {
+            if (spooled(record, exception)) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to spool product {}: {}", productId, e.getMessage());
+            return;
+        }
+        LOGGER.error("Failed to confirm product {}: {}", productId, exception.getMessage());
+    }
+
+    /*
+    * Writes the record to the spool if there is one and the failure is one the cluster recovers from,
+    * the caller then answers as if the broker had acknowledged it. Throws SpoolFullException when the spool is full
+    * */
+    private boolean spooled(ProducerRecord<String, ProductCreatedEvent> record, Throwable exception) {
+        if (spool == null || !ProductEventSpool.isSpoolable(exception)) {
+            return false;
+        }
+        if (!spool.isSpooling()) {
+            LOGGER.warn("**** Spooling product created events until the cluster is back: {} ****", exception.getMessage());
+        }
+        spool.append(record);
+        return true;
+    }
+
+    private ProducerRecord<String, ProductCreatedEvent> createRecord(String productId, CreateProductRestModel productRestModel) {
+        return ProductCreatedRecords.create(productId, productRestModel, idGenerator);
+    }
+
+    /*
+    * Debug only, partition and offset are boxed for every record. PublishLatency and the producer metrics
+    * of KafkaProducerConfig are the per request feedback
+    * */
+    private void logSendResult(SendResult<String, ProductCreatedEvent> result) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Topic: {}, Partition: {}, Offset: {}", result.getRecordMetadata().topic(),
+                    result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+        }
+    }
 }
@@ -0,0 +1,236 @@
+package com.codedecode.kafkademo.service;
+
+import com.codedecode.kafkademo.id.IdGenerator;
+import com.codedecode.kafkademo.model.BatchCreateProductResponse;
+import com.codedecode.kafkademo.model.BatchItemResult;
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.model.ProductCreateMode;
+import com.codedecode.kafkademo.tracing.PublishLatency;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* ProductServiceImpl for the reactive stack (spring.main.web-application-type=reactive), same records, same topic.
+*
+* Backpressure from the broker to the HTTP client:
+*  - at most max-in-flight createProduct records are unacknowledged at a time, further requests wait for
+*    a permit without holding a thread, their clients wait for the response
+*  - a batch request has at most bulk-max-in-flight of its products unacknowledged, the request body is only
+*    read further as acknowledgements come in, so Netty stops reading the socket and TCP slows the client down
+*
+* send() runs on the product-sender thread. It can block for metadata or buffer space (max.block.ms), which must
+* never happen on a Netty event loop; with the limits above the buffer does not fill up in the first place
+* */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductService implements DisposableBean {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(ReactiveProductService.class);
+
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+    private final KafkaTemplate<String, ProductCreatedEvent> bulkKafkaTemplate;
+    private final PublishLatency publishLatency;
+    private final IdGenerator idGenerator;
+    private final InFlightLimit inFlight;
+    private final int bulkMaxInFlight;
+    private final int bulkMaxItems;
+    private final Scheduler sender = Schedulers.newSingle("product-sender", true);
+
+    public ReactiveProductService(KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate,
+                                  @Qualifier("createBulkKafkaTemplate") KafkaTemplate<String, ProductCreatedEvent> bulkKafkaTemplate,
+                                  PublishLatency publishLatency,
+                                  IdGenerator idGenerator,
+                                  @Value("${product.reactive.max-in-flight}") int maxInFlight,
+                                  @Value("${product.reactive.bulk-max-in-flight}") int bulkMaxInFlight,
+                                  @Value("${product.bulk.max-items}") int bulkMaxItems) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.bulkKafkaTemplate = bulkKafkaTemplate;
+        this.publishLatency = publishLatency;
+        this.idGenerator = idGenerator;
+        this.inFlight = new InFlightLimit(maxInFlight);
+        this.bulkMaxInFlight = bulkMaxInFlight;
+        this.bulkMaxItems = bulkMaxItems;
+    }
+
+    /*
+    * Completes with the productId once the broker acknowledged the record, for ACCEPT once it is in the producer
+    * buffer. SYNC and ASYNC are the same here, no thread waits for the acknowledgement either way
+    * */
+    public Mono<String> createProduct(CreateProductRestModel productRestModel, ProductCreateMode mode) {
+        return Mono.defer(() -> {
+            Permit permit = new Permit();
+            return inFlight.acquire()
+                    .doOnSuccess(ignored -> permit.acquired())
+                    .then(Mono.defer(() -> {
+                        long startedNanos = System.nanoTime();
+                        String productId = idGenerator.next().toString();
+                        LOGGER.info("**** Before publishing product create event ****");
+                        return send(kafkaTemplate, ProductCreatedRecords.create(productId, productRestModel, idGenerator), permit)
+                                .flatMap(future -> mode == ProductCreateMode.ACCEPT ? Mono.just(productId)
+                                        : Mono.fromFuture(future, true).thenReturn(productId))
+                                .doOnSuccess(id -> publishLatency.created(mode, startedNanos));
+                    }))
+                    // cancelled or failed before the record reached the producer
+                    .doFinally(signal -> permit.releaseUnlessSent());
+        });
+    }
+
+    /*
+    * Same result as ProductService.createProducts: every product gets its own result in request order,
+    * a product that cannot be published does not fail the rest, reading stops at a broken body or at bulk.max-items
+    * */
+    public Mono<BatchCreateProductResponse> createProducts(Flux<CreateProductRestModel> products) {
+        return Mono.defer(() -> {
+            long startedNanos = System.nanoTime();
+            AtomicInteger read = new AtomicInteger();
+            LOGGER.info("**** Before publishing product create events in bulk ****");
+            return products
+                    .map(product -> new BatchItem(read.getAndIncrement(), product, null))
+                    // the body itself is broken, nothing after this point can be read
+                    .onErrorResume(exception -> Mono.just(new BatchItem(read.get(), null, exception.getMessage())))
+                    .takeUntil(item -> item.index() >= bulkMaxItems)
+                    // requests bulk-max-in-flight products from the body and one more for every acknowledgement
+                    .flatMapSequential(this::publish, bulkMaxInFlight)
+                    .collectList()
+                    .map(results -> {
+                        publishLatency.createdInBulk(startedNanos);
+                        return response(results);
+                    });
+        });
+    }
+
+    private Mono<BatchItemResult> publish(BatchItem item) {
+        if (item.error() != null) {
+            return Mono.just(new BatchItemResult(item.index(), null, item.error()));
+        }
+        if (item.index() >= bulkMaxItems) {
+            return Mono.just(new BatchItemResult(item.index(), null, "batch is limited to " + bulkMaxItems + " products"));
+        }
+        String productId = idGenerator.next().toString();
+        return send(bulkKafkaTemplate, ProductCreatedRecords.create(productId, item.product(), idGenerator), null)
+                .flatMap(future -> Mono.fromFuture(future, true))
+                .thenReturn(new BatchItemResult(item.index(), productId, null))
+                .onErrorResume(exception -> {
+                    Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                    return Mono.just(new BatchItemResult(item.index(), null, cause.getMessage()));
+                });
+    }
+
+    private BatchCreateProductResponse response(List<BatchItemResult> results) {
+        int failed = (int) results.stream().filter(itemResult -> itemResult.getError() != null).count();
+        LOGGER.info("**** Published {} of {} products in bulk **********", results.size() - failed, results.size());
+        return new BatchCreateProductResponse(results.size(), results.size() - failed, failed, results);
+    }
+
+    /*
+    * Hands the record to the producer on the sender thread, times it like ProductServiceImpl, see PublishLatency.
+    * With a permit (createProduct) the record is only sent while the request still holds it, the permit is then
+    * given back on the acknowledgement, also when the request is cancelled before the future reaches it.
+    * Bulk sends are bounded by flatMapSequential instead
+    * */
+    private Mono<CompletableFuture<SendResult<String, ProductCreatedEvent>>> send(KafkaTemplate<String, ProductCreatedEvent> template,
+                                                                                ProducerRecord<String, ProductCreatedEvent> record,
+                                                                                Permit permit) {
+        return Mono.fromCallable(() -> {
+            if (permit != null && !permit.markSent()) {
+                // the request was cancelled meanwhile, nothing is sent
+                return null;
+            }
+            long startedNanos = System.nanoTime();
+            CompletableFuture<SendResult<String, ProductCreatedEvent>> future;
+            try {
+                future = template.send(record);
+            } catch (RuntimeException e) {
+                if (permit != null) {
+                    permit.release();
+                }
+                throw e;
+            }
+            long appendedNanos = System.nanoTime();
+            future.whenComplete((result, exception) -> {
+                if (permit != null) {
+                    permit.release();
+                }
+                if (exception == null) {
+                    publishLatency.sent(result.getRecordMetadata().partition(), startedNanos, appendedNanos);
+                }
+            });
+            return future;
+        }).subscribeOn(sender);
+    }
+
+    @Override
+    public void destroy() {
+        sender.dispose();
+    }
+
+    /*
+    * The in-flight permit of one createProduct request, given back to the InFlightLimit exactly once:
+    * on the acknowledgement once the record was sent, otherwise when the request ends, whichever way it ends
+    * and whatever thread gets there first
+    * */
+    private final class Permit {
+        private static final int WAITING = 0;
+        private static final int HELD = 1;
+        private static final int SENT = 2;
+        private static final int RELEASED = 3;
+
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private void acquired() {
+            if (!state.compareAndSet(WAITING, HELD)) {
+                // the request ended while the permit was handed over
+                inFlight.release();
+            }
+        }
+
+        /*
+        * false when the request has already given the permit back, the record must not be sent then
+        * */
+        private boolean markSent() {
+            return state.compareAndSet(HELD, SENT);
+        }
+
+        private void releaseUnlessSent() {
+            while (true) {
+                int current = state.get();
+                if (current == SENT || current == RELEASED) {
+                    return;
+                }
+                if (state.compareAndSet(current, RELEASED)) {
+                    // still WAITING: acquired() gives back a permit that comes in after this
+                    if (current == HELD) {
+                        inFlight.release();
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void release() {
+            if (state.getAndSet(RELEASED) != RELEASED) {
+                inFlight.release();
+            }
+        }
+    }
+
+    private record BatchItem(int index, CreateProductRestModel product, String error) {
+    }
+}
@@ -0,0 +1,317 @@
+package com.codedecode.kafkademo.spool;
+
+import com.codedecode.kafkademo.codec.ProductCreatedEventCodec;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.RetriableException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+* Keeps createProduct answering at full speed while the cluster is unreachable, enabled with product.spool.enabled=true.
+*
+* - ProductServiceImpl spools a record when send() could not append it within product.spool.max-block (no metadata,
+*   producer buffer full) or when the send failed with a retriable error. The caller gets the productId as if the
+*   broker had acknowledged the event, it is on local disk. createProduct answers after ack-timeout at the latest:
+*   a send still in flight then stays with the producer and is only spooled if it fails later, a slow but healthy
+*   cluster gets every record once
+* - at max-size payload bytes the spool takes no more records, append() throws SpoolFullException and the caller
+*   answers with an error (a send that failed after the caller was answered is logged and lost)
+* - while records wait in the spool new ones are spooled too, they are not published ahead of the waiting ones.
+*   Records that were already in the producer buffer when the outage started may still arrive after them
+* - the drainer thread replays up to replay-batch-size records at a time with its own producer (the bulk settings,
+*   max.block.ms of max-block) and moves the checkpoint once every one of them is acknowledged. A failed batch is
+*   replayed in full after retry-interval: delivery is at least once and records keep their messageId, the consumer
+*   drops the duplicates
+* - a record the broker rejects for good (too large, not authorized) is logged and dropped, it would block the spool
+*
+* product.spool.depth, product.spool.size        records and payload bytes waiting to be replayed
+* product.spool.appended, product.spool.replayed  counters, their rates are the spool and the replay rate
+* product.spool.dropped                           records the broker rejected during the replay
+* product.spool.rejected                          records not spooled because the spool was full
+*
+* The journal is local to the instance, see SpoolJournal for what it survives
+* */
+@Component
+@ConditionalOnProperty(name = "product.spool.enabled", havingValue = "true")
+public class ProductEventSpool implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(ProductEventSpool.class);
+
+    private static final Duration IDLE_POLL_INTERVAL = Duration.ofMillis(100);
+
+    private final KafkaTemplate<String, ProductCreatedEvent> replayTemplate;
+    private final SpoolJournal journal;
+    private final Duration ackTimeout;
+    private final int replayBatchSize;
+    private final Duration replayTimeout;
+    private final Duration retryInterval;
+    private final Counter appended;
+    private final Counter replayed;
+    private final Counter dropped;
+    private final Counter rejected;
+    private final long maxSize;
+    private final Thread drainer;
+
+    private volatile boolean running = true;
+
+    public ProductEventSpool(@Qualifier("createSpoolReplayKafkaTemplate") KafkaTemplate<String, ProductCreatedEvent> replayTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${product.spool.directory}") Path directory,
+                             @Value("${product.spool.segment-size:64MB}") DataSize segmentSize,
+                             @Value("${product.spool.force-writes:false}") boolean forceWrites,
+                             @Value("${product.spool.max-size:1GB}") DataSize maxSize,
+                             @Value("${product.spool.ack-timeout:2s}") Duration ackTimeout,
+                             @Value("${product.spool.replay-batch-size:1000}") int replayBatchSize,
+                             @Value("${product.spool.replay-timeout:30s}") Duration replayTimeout,
+                             @Value("${product.spool.retry-interval:5s}") Duration retryInterval) throws IOException {
+        this.replayTemplate = replayTemplate;
+        this.journal = SpoolJournal.open(directory, Math.toIntExact(segmentSize.toBytes()), forceWrites);
+        this.maxSize = maxSize.toBytes();
+        this.ackTimeout = ackTimeout;
+        this.replayBatchSize = replayBatchSize;
+        this.replayTimeout = replayTimeout;
+        this.retryInterval = retryInterval;
+
+        Gauge.builder("product.spool.depth", journal, SpoolJournal::records)
+                .description("product created events waiting in the local spool")
+                .register(meterRegistry);
+        Gauge.builder("product.spool.size", journal, SpoolJournal::bytes)
+                .description("payload bytes waiting in the local spool")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.appended = Counter.builder("product.spool.appended")
+                .description("product created events written to the local spool")
+                .register(meterRegistry);
+        this.replayed = Counter.builder("product.spool.replayed")
+                .description("spooled product created events acknowledged by the cluster")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("product.spool.dropped")
+                .description("spooled product created events the cluster rejected for good")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("product.spool.rejected")
+                .description("product created events not spooled because the spool reached its max-size")
+                .register(meterRegistry);
+
+        this.drainer = new Thread(this::drain, "product-spool-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /*
+    * true while records wait to be replayed, new records have to be spooled behind them
+    * */
+    public boolean isSpooling() {
+        return journal.records() > 0;
+    }
+
+    public Duration ackTimeout() {
+        return ackTimeout;
+    }
+
+    public long depth() {
+        return journal.records();
+    }
+
+    /*
+    * Throws SpoolFullException once max-size payload bytes wait in the spool. Appends running at the same time
+    * may go past it by a record each
+    * */
+    public void append(ProducerRecord<String, ProductCreatedEvent> record) {
+        byte[] payload = encode(record);
+        if (journal.bytes() + payload.length > maxSize) {
+            rejected.increment();
+            throw new SpoolFullException("product spool is full, " + journal.records() + " records wait to be replayed");
+        }
+        journal.append(payload);
+        appended.increment();
+        logger.debug("Spooled product {}", record.key());
+    }
+
+    /*
+    * Failures that another attempt can get past once the cluster is back: Kafka's retriable errors, its timeouts
+    * (metadata, buffer, delivery) among them
+    * */
+    public static boolean isSpoolable(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RetriableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                SpoolJournal.Batch batch = journal.read(replayBatchSize);
+                if (batch.payloads().isEmpty()) {
+                    Thread.sleep(IDLE_POLL_INTERVAL.toMillis());
+                    continue;
+                }
+                if (replay(batch.payloads())) {
+                    journal.commit(batch);
+                    replayed.increment(batch.payloads().size());
+                    if (journal.records() == 0) {
+                        logger.info("**** Spool drained ****");
+                    }
+                } else {
+                    Thread.sleep(retryInterval.toMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("**** Replaying spooled product created events failed, retrying in {} ****", retryInterval, e);
+                try {
+                    Thread.sleep(retryInterval.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+    * true once every record was acknowledged or rejected for good
+    * */
+    private boolean replay(List<byte[]> payloads) throws InterruptedException {
+        List<CompletableFuture<Throwable>> outcomes = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            ProducerRecord<String, ProductCreatedEvent> record = decode(payload);
+            CompletableFuture<SendResult<String, ProductCreatedEvent>> future;
+            try {
+                future = replayTemplate.send(record);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            outcomes.add(future.handle((result, exception) -> exception));
+            if (future.isCompletedExceptionally() && isSpoolable(future.exceptionNow())) {
+                // still unreachable, the rest of the batch would wait max.block each
+                logger.warn("**** Cluster still unreachable, {} records stay spooled ****", journal.records());
+                return false;
+            }
+        }
+        replayTemplate.flush();
+        try {
+            CompletableFuture.allOf(outcomes.toArray(new CompletableFuture[0]))
+                    .get(replayTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("**** Replayed batch not acknowledged within {}, {} records stay spooled ****", replayTimeout, journal.records());
+            return false;
+        } catch (ExecutionException e) {
+            // the outcomes never fail, they carry the exception as their value
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i < outcomes.size(); i++) {
+            Throwable exception = outcomes.get(i).join();
+            if (exception == null) {
+                continue;
+            }
+            if (isSpoolable(exception)) {
+                logger.warn("**** Replay failed, {} records stay spooled: {} ****", journal.records(), exception.getMessage());
+                return false;
+            }
+            logger.error("**** Dropping spooled product {}, the cluster rejected it: {} ****", decode(payloads.get(i)).key(), exception.getMessage());
+            dropped.increment();
+        }
+        return true;
+    }
+
+    /*
+    * string topic | string key | byte header count | (string name, int length, bytes) per header
+    * | ProductCreatedEventCodec bytes up to the end. string = int length (-1 for null) + UTF-8 bytes
+    * */
+    static byte[] encode(ProducerRecord<String, ProductCreatedEvent> record) {
+        byte[] topic = record.topic().getBytes(StandardCharsets.UTF_8);
+        byte[] key = record.key() == null ? null : record.key().getBytes(StandardCharsets.UTF_8);
+        Header[] headers = record.headers().toArray();
+        byte[][] headerNames = new byte[headers.length][];
+        byte[] value = ProductCreatedEventCodec.encode(record.value());
+
+        int size = Integer.BYTES + topic.length + Integer.BYTES + (key == null ? 0 : key.length) + 1 + value.length;
+        for (int i = 0; i < headers.length; i++) {
+            headerNames[i] = headers[i].key().getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + headerNames[i].length + Integer.BYTES + (headers[i].value() == null ? 0 : headers[i].value().length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        putBytes(buffer, topic);
+        putBytes(buffer, key);
+        buffer.put((byte) headers.length);
+        for (int i = 0; i < headers.length; i++) {
+            putBytes(buffer, headerNames[i]);
+            putBytes(buffer, headers[i].value());
+        }
+        buffer.put(value);
+        return buffer.array();
+    }
+
+    static ProducerRecord<String, ProductCreatedEvent> decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String topic = new String(getBytes(buffer), StandardCharsets.UTF_8);
+        byte[] key = getBytes(buffer);
+        int headerCount = Byte.toUnsignedInt(buffer.get());
+        List<Header> headers = new ArrayList<>(headerCount);
+        for (int i = 0; i < headerCount; i++) {
+            String name = new String(getBytes(buffer), StandardCharsets.UTF_8);
+            byte[] value = getBytes(buffer);
+            headers.add(new RecordHeader(name, value));
+        }
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return new ProducerRecord<>(topic, null, key == null ? null : new String(key, StandardCharsets.UTF_8),
+                ProductCreatedEventCodec.decode(value), headers);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        running = false;
+        drainer.interrupt();
+        drainer.join(replayTimeout.toMillis());
+        journal.close();
+    }
+}
@@ -0,0 +1,11 @@
+package com.codedecode.kafkademo.spool;
+
+/*
+* The spool reached product.spool.max-size, the record was not written to it
+* */
+public class SpoolFullException extends RuntimeException {
+
+    public SpoolFullException(String message) {
+        super(message);
+    }
+}
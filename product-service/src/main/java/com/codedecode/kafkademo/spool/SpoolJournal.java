@@ -0,0 +1,305 @@
+package com.codedecode.kafkademo.spool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/*
+* Append-only journal behind ProductEventSpool, a directory of segment files mapped into memory:
+*
+*   spool-00000000000000000000.seg, spool-00000000000000000001.seg, ...   records in the order they were appended
+*   checkpoint    segment and offset of the first record that was not replayed yet, in one long
+*
+* record:  int payload length | int CRC32C of the payload | payload
+* The length is written last, a length of 0 means nothing was appended there. A record that does not fit
+* into the rest of a segment goes to the next one, the rest stays zero. Segments are sparse files, only the
+* pages that were written take disk space, and a segment is deleted once the checkpoint moved past it.
+*
+* Opening the journal scans from the checkpoint to the end, that counts the records still to replay and finds
+* the append position. A record torn by a crash (its length is set but the payload fails the CRC) ends the scan
+* of the last segment, it and everything after it is zeroed.
+* Writes land in the page cache: they survive a crash of the JVM, a crash of the machine only with force-writes
+* */
+final class SpoolJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SpoolJournal.class);
+
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceWrites;
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+
+    private Segment readSegment;
+    private int readOffset;
+    private Segment writeSegment;
+    private int writeOffset;
+    // written under the lock, read without it by the request threads and the gauges
+    private volatile long records;
+    private volatile long bytes;
+
+    record Segment(long index, MappedByteBuffer buffer) {
+    }
+
+    /*
+    * Records read from the journal, they stay in it until commit(batch)
+    * */
+    record Batch(List<byte[]> payloads, long bytes, Segment segment, int offset) {
+    }
+
+    private SpoolJournal(Path directory, int segmentSize, boolean forceWrites) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceWrites = forceWrites;
+        this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+    }
+
+    static SpoolJournal open(Path directory, int segmentSize, boolean forceWrites) throws IOException {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("segment size has to be larger than " + RECORD_HEADER_SIZE + " bytes");
+        }
+        Files.createDirectories(directory);
+        SpoolJournal journal = new SpoolJournal(directory, segmentSize, forceWrites);
+        try {
+            journal.recover();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        long position = checkpoint.getLong(0);
+        long checkpointSegment = position >>> 32;
+        int checkpointOffset = (int) position;
+
+        List<Long> segments = new ArrayList<>();
+        for (long index : segmentIndexes()) {
+            if (index < checkpointSegment) {
+                // replayed, the crash came before it was deleted
+                Files.deleteIfExists(segmentFile(index));
+            } else {
+                segments.add(index);
+            }
+        }
+        if (segments.isEmpty() || segments.get(0) > checkpointSegment) {
+            checkpointOffset = 0;
+        }
+        if (segments.isEmpty()) {
+            segments.add(checkpointSegment);
+        }
+
+        readSegment = map(segments.get(0));
+        readOffset = checkpointOffset;
+        Segment segment = readSegment;
+        int offset = readOffset;
+        for (int i = 0; ; ) {
+            boolean last = i == segments.size() - 1;
+            int length = recordLength(segment.buffer(), offset);
+            if (length > 0) {
+                records++;
+                bytes += length;
+                offset += RECORD_HEADER_SIZE + length;
+                continue;
+            }
+            if (length < 0) {
+                if (last) {
+                    logger.warn("**** Dropping torn spool record at {}:{} ****", segmentFile(segment.index()), offset);
+                    zeroFrom(segment.buffer(), offset);
+                } else {
+                    logger.warn("**** Skipping the rest of {} after a torn record at {} ****", segmentFile(segment.index()), offset);
+                }
+            }
+            if (last) {
+                writeSegment = segment;
+                writeOffset = offset;
+                break;
+            }
+            segment = map(segments.get(++i));
+            offset = 0;
+        }
+        writeCheckpoint();
+        if (records > 0) {
+            logger.info("**** Spool in {} holds {} records ({} bytes) to replay ****", directory, records, bytes);
+        }
+    }
+
+    synchronized void append(byte[] payload) {
+        if (payload.length == 0 || RECORD_HEADER_SIZE + payload.length > segmentSize) {
+            throw new IllegalArgumentException("spool record has to be 1 to " + (segmentSize - RECORD_HEADER_SIZE)
+                    + " bytes, got " + payload.length);
+        }
+        int size = RECORD_HEADER_SIZE + payload.length;
+        if (writeOffset + size > writeSegment.buffer().capacity()) {
+            writeSegment = map(writeSegment.index() + 1);
+            writeOffset = 0;
+        }
+        MappedByteBuffer buffer = writeSegment.buffer();
+        buffer.put(writeOffset + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(writeOffset + Integer.BYTES, crc(buffer, writeOffset + RECORD_HEADER_SIZE, payload.length));
+        // written last, the record exists once its length is set
+        buffer.putInt(writeOffset, payload.length);
+        if (forceWrites) {
+            buffer.force(writeOffset, size);
+        }
+        writeOffset += size;
+        records++;
+        bytes += payload.length;
+    }
+
+    /*
+    * Up to maxRecords records from the checkpoint on, in the order they were appended
+    * */
+    synchronized Batch read(int maxRecords) {
+        List<byte[]> payloads = new ArrayList<>();
+        long payloadBytes = 0;
+        Segment segment = readSegment;
+        int offset = readOffset;
+        while (payloads.size() < maxRecords && (segment.index() != writeSegment.index() || offset != writeOffset)) {
+            int length = recordLength(segment.buffer(), offset);
+            if (length <= 0) {
+                if (segment.index() == writeSegment.index()) {
+                    throw new IllegalStateException("Spool record at " + offset + " is gone before the append position " + writeOffset);
+                }
+                // nothing more in this segment, a torn record was logged when the journal was opened
+                segment = segment.index() + 1 == writeSegment.index() ? writeSegment : map(segment.index() + 1);
+                offset = 0;
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer().get(offset + RECORD_HEADER_SIZE, payload);
+            payloads.add(payload);
+            payloadBytes += length;
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return new Batch(payloads, payloadBytes, segment, offset);
+    }
+
+    /*
+    * Moves the checkpoint past the batch and deletes the segments it emptied
+    * */
+    synchronized void commit(Batch batch) throws IOException {
+        long previousSegment = readSegment.index();
+        readSegment = batch.segment();
+        readOffset = batch.offset();
+        records -= batch.payloads().size();
+        bytes -= batch.bytes();
+        writeCheckpoint();
+        for (long index = previousSegment; index < readSegment.index(); index++) {
+            Files.deleteIfExists(segmentFile(index));
+        }
+    }
+
+    long records() {
+        return records;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writeSegment != null) {
+            writeSegment.buffer().force();
+            checkpoint.force();
+        }
+        checkpointChannel.close();
+    }
+
+    private void writeCheckpoint() {
+        // one long, a crash leaves the old or the new position
+        checkpoint.putLong(0, readSegment.index() << 32 | readOffset);
+        if (forceWrites) {
+            checkpoint.force();
+        }
+    }
+
+    /*
+    * > 0 a valid record, 0 nothing was appended at offset, < 0 a torn record
+    * */
+    private static int recordLength(MappedByteBuffer buffer, int offset) {
+        if (offset + RECORD_HEADER_SIZE > buffer.capacity()) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 0 || length > buffer.capacity() - offset - RECORD_HEADER_SIZE
+                || buffer.getInt(offset + Integer.BYTES) != crc(buffer, offset + RECORD_HEADER_SIZE, length)) {
+            return -1;
+        }
+        return length;
+    }
+
+    private static int crc(MappedByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    /*
+    * Only pages that hold data are written, reading a hole of the sparse file does not allocate it
+    * */
+    private static void zeroFrom(MappedByteBuffer buffer, int offset) {
+        for (int position = offset; position < buffer.capacity(); position++) {
+            if (position % Long.BYTES == 0 && position + Long.BYTES <= buffer.capacity()) {
+                if (buffer.getLong(position) != 0) {
+                    buffer.putLong(position, 0);
+                }
+                position += Long.BYTES - 1;
+            } else if (buffer.get(position) != 0) {
+                buffer.put(position, (byte) 0);
+            }
+        }
+    }
+
+    /*
+    * The mapping stays valid after the channel is closed. A new segment is extended to segmentSize by the mapping,
+    * an existing one keeps its size even if segment-size was changed since
+    * */
+    private Segment map(long index) {
+        try (FileChannel channel = FileChannel.open(segmentFile(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size() > 0 ? channel.size() : segmentSize;
+            return new Segment(index, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map spool segment " + segmentFile(index), e);
+        }
+    }
+
+    private List<Long> segmentIndexes() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length(), 10))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentFile(long index) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%020d", index) + SEGMENT_SUFFIX);
+    }
+}
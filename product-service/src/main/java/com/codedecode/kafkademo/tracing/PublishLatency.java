@@ -0,0 +1,107 @@
+package com.codedecode.kafkademo.tracing;
+
+import com.codedecode.kafkademo.model.ProductCreateMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+* Producer side of the latency breakdown of a product created event, exported as histograms:
+*
+* product.created.event.publish.latency{stage, partition}
+*   append      record built and handed to send() until it returned: serialization, partitioning and the append
+*               to the producer buffer, including the wait for metadata or for buffer space
+*   broker_ack  send() returned -> future completed: linger, the request and the replication
+* product.create.latency{mode}
+*   createProduct from the service call until its result is known: the broker acknowledgement for sync and async,
+*   the append for accept, the last acknowledgement of the request for bulk
+*
+* Both stages are recorded when the send completes, the partition is not known before. Failed sends are only
+* counted by the producer's own kafka.producer.record.error.rate.
+* Timers are registered once per partition and mode, recording does not look up or allocate meters.
+* The consumer side continues with product.created.event.processing.latency in email-notification-service
+* */
+@Component
+public class PublishLatency {
+
+    private static final String PUBLISH_METRIC_NAME = "product.created.event.publish.latency";
+    private static final String CREATE_METRIC_NAME = "product.create.latency";
+
+    private MeterRegistry meterRegistry;
+    private final Map<ProductCreateMode, Timer> createLatency = new EnumMap<>(ProductCreateMode.class);
+    private final Timer bulkCreateLatency;
+    // [partition][0] append, [partition][1] broker_ack, grown when a partition is seen for the first time
+    private volatile Timer[][] partitionTimers = new Timer[0][];
+
+    public PublishLatency(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (ProductCreateMode mode : ProductCreateMode.values()) {
+            createLatency.put(mode, createTimer(mode.name().toLowerCase(Locale.ROOT)));
+        }
+        this.bulkCreateLatency = createTimer("bulk");
+    }
+
+    /*
+    * Called from the send future's callback. startedNanos: before the record was built, appendedNanos: after send() returned
+    * */
+    public void sent(int partition, long startedNanos, long appendedNanos) {
+        Timer[] timers = timers(partition);
+        timers[0].record(appendedNanos - startedNanos, TimeUnit.NANOSECONDS);
+        timers[1].record(System.nanoTime() - appendedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void created(ProductCreateMode mode, long startedNanos) {
+        createLatency.get(mode).record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void createdInBulk(long startedNanos) {
+        bulkCreateLatency.record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer[] timers(int partition) {
+        Timer[][] timers = partitionTimers;
+        if (partition < timers.length) {
+            return timers[partition];
+        }
+        synchronized (this) {
+            timers = partitionTimers;
+            if (partition >= timers.length) {
+                Timer[][] grown = Arrays.copyOf(timers, partition + 1);
+                for (int newPartition = timers.length; newPartition <= partition; newPartition++) {
+                    grown[newPartition] = new Timer[]{publishTimer("append", newPartition), publishTimer("broker_ack", newPartition)};
+                }
+                partitionTimers = grown;
+                timers = grown;
+            }
+            return timers[partition];
+        }
+    }
+
+    private Timer publishTimer(String stage, int partition) {
+        return Timer.builder(PUBLISH_METRIC_NAME)
+                .tag("stage", stage)
+                .tag("partition", String.valueOf(partition))
+                .description("time a product created event spent in one stage of publishing it to Kafka")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(meterRegistry);
+    }
+
+    private Timer createTimer(String mode) {
+        return Timer.builder(CREATE_METRIC_NAME)
+                .tag("mode", mode)
+                .description("time createProduct took until its result was known")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(meterRegistry);
+    }
+}
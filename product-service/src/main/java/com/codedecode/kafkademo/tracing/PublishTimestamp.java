@@ -0,0 +1,22 @@
+package com.codedecode.kafkademo.tracing;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/*
+* publishTimestamp header added next to messageId: wall clock time the record was created, nanoseconds since
+* the epoch as an 8 byte big endian long. email-notification-service measures the broker dwell time
+* and the end to end latency from it
+* */
+public final class PublishTimestamp {
+
+    public static final String HEADER = "publishTimestamp";
+
+    private PublishTimestamp() {
+    }
+
+    public static byte[] now() {
+        Instant now = Instant.now();
+        return ByteBuffer.allocate(Long.BYTES).putLong(now.getEpochSecond() * 1_000_000_000L + now.getNano()).array();
+    }
+}
@@ -0,0 +1,27 @@
+package com.codedecode.kafkademo;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/*
+* product-service against an embedded 3 broker KRaft cluster, the target for the load-generator without a
+* docker compose cluster. The application creates its topic itself (3 partitions, 3 replicas, min.insync.replicas 2).
+*
+* Run with: mvn test -Plocal-stack, application arguments with -Dlocal-stack.args="--product.create.mode=accept"
+* */
+public class LocalStack {
+
+    public static void main(String[] args) {
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(3, 3);
+        broker.afterPropertiesSet();
+        Runtime.getRuntime().addShutdownHook(new Thread(broker::destroy));
+
+        String[] applicationArgs = Stream.concat(
+                Stream.of("--spring.kafka.producer.bootstrap-servers=" + broker.getBrokersAsString()),
+                Arrays.stream(args)).toArray(String[]::new);
+        SpringApplication.run(ProducerApplication.class, applicationArgs);
+    }
+}
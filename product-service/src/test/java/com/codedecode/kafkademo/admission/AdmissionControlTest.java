@@ -0,0 +1,153 @@
+package com.codedecode.kafkademo.admission;
+
+import com.codedecode.kafkademo.producer.AdaptiveProducerFactory;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+public class AdmissionControlTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AdmissionControl admission;
+
+    @BeforeEach
+    void setUp() {
+        MockProducer<String, ProductCreatedEvent> producer = new MockProducer<>(true, null, new StringSerializer(), new JsonSerializer<>());
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        admission = new AdmissionControl(kafkaTemplate, meterRegistry, 10, 2, 20, Duration.ofMillis(100), 0.5, 0.1, Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void testAdmit_whenLimitIsInFlight_rejectsWithoutCountingTheRequest() {
+        //Arrange
+        for (int i = 0; i < 10; i++) {
+            admission.admit();
+        }
+
+        //Act
+        AdmissionRejectedException rejected = assertThrows(AdmissionRejectedException.class, admission::admit);
+
+        //Assert
+        assertEquals(Duration.ofSeconds(1), rejected.getRetryAfter());
+        assertEquals(10, admission.inFlight());
+        assertEquals(1, meterRegistry.get("product.admission.rejected").tag("reason", "limit").counter().count());
+    }
+
+    @Test
+    public void testCompleted_whenAcknowledgementsAreSlow_lowersTheLimitOncePerLatencyTarget() {
+        //Arrange
+        for (int i = 0; i < 10; i++) {
+            admission.admit();
+        }
+
+        //Act
+        // the sends of one congested window report together, only the first one counts
+        for (int i = 0; i < 5; i++) {
+            admission.completed(SLOW, null);
+        }
+        admission.completed(FAST, new TimeoutException("Expiring 1 record(s)"));
+
+        //Assert
+        assertEquals(5, admission.limit());
+        assertEquals(4, admission.inFlight());
+        assertEquals(5, meterRegistry.get("product.admission.limit").gauge().value());
+    }
+
+    @Test
+    public void testCompleted_whenFastWhileBusy_raisesTheLimitUpToMax() {
+        //Act
+        for (int i = 0; i < 1000; i++) {
+            AdmissionControl.Permit[] permits = new AdmissionControl.Permit[(int) admission.limit()];
+            for (int j = 0; j < permits.length; j++) {
+                permits[j] = admission.admit();
+            }
+            for (int j = 0; j < permits.length; j++) {
+                admission.completed(FAST, null);
+            }
+        }
+
+        //Assert
+        assertEquals(20, admission.limit());
+        assertEquals(0, admission.inFlight());
+    }
+
+    @Test
+    public void testCompleted_whenIdle_keepsTheLimit() {
+        //Act
+        for (int i = 0; i < 100; i++) {
+            admission.admit();
+            admission.completed(FAST, null);
+        }
+
+        //Assert
+        assertEquals(10, admission.limit());
+        assertEquals(0, admission.inFlight());
+    }
+
+    @Test
+    public void testAdmit_afterAProducerProfileSwitch_watchesTheBufferOfTheActiveProducer() throws Exception {
+        //Arrange
+        MockProducer<String, ProductCreatedEvent> latencyProducer = producerWithBufferAvailable(1.0);
+        MockProducer<String, ProductCreatedEvent> throughputProducer = producerWithBufferAvailable(0.0);
+        AdaptiveProducerFactory<String, ProductCreatedEvent> producerFactory = spy(new AdaptiveProducerFactory<>(
+                new MockProducerFactory<>(() -> latencyProducer), new MockProducerFactory<>(() -> throughputProducer),
+                new AdaptiveProducerFactory.Thresholds(2000, 1000, Duration.ofMillis(20), Duration.ofSeconds(5)),
+                Duration.ofHours(1), meterRegistry));
+        admission = new AdmissionControl(new KafkaTemplate<>(producerFactory), meterRegistry, 10, 2, 20,
+                Duration.ofMillis(100), 0.5, 0.1, Duration.ofSeconds(1));
+        admission.admit();
+
+        //Act
+        // the switch as AdaptiveProducerFactory makes it, its decision is tested in AdaptiveProducerFactoryTest
+        doReturn(AdaptiveProducerFactory.Profile.THROUGHPUT).when(producerFactory).active();
+        doReturn(throughputProducer).when(producerFactory).createProducer();
+        AdmissionRejectedException rejected = assertThrows(AdmissionRejectedException.class, admission::admit);
+
+        //Assert
+        assertEquals("producer buffer is full", rejected.getMessage());
+        assertEquals(1, meterRegistry.get("product.admission.rejected").tag("reason", "buffer").counter().count());
+        producerFactory.destroy();
+    }
+
+    private static MockProducer<String, ProductCreatedEvent> producerWithBufferAvailable(double share) {
+        MockProducer<String, ProductCreatedEvent> producer = new MockProducer<>(true, null, new StringSerializer(), new JsonSerializer<>());
+        producer.setMockMetrics(new MetricName("buffer-total-bytes", "producer-metrics", "", Map.of()), metric(1000));
+        producer.setMockMetrics(new MetricName("buffer-available-bytes", "producer-metrics", "", Map.of()), metric(1000 * share));
+        return producer;
+    }
+
+    private static Metric metric(double value) {
+        return new Metric() {
+            @Override
+            public MetricName metricName() {
+                return null;
+            }
+
+            @Override
+            public Object metricValue() {
+                return value;
+            }
+        };
+    }
+}
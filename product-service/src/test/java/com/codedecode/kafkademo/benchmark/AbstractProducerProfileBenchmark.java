@@ -0,0 +1,148 @@
+package com.codedecode.kafkademo.benchmark;
+
+import com.codedecode.kafkademo.producer.AdaptiveProducerFactory;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Latency/throughput curve of the createProduct producer: product created events are sent through the primary
+ * KafkaTemplate at a fixed rate per step (open loop, the schedule does not wait for acknowledgements), and the
+ * latency from the scheduled send time to the acknowledgement is recorded. Once with the linger.ms=0 producer only,
+ * once with AdaptiveProducerFactory switching profiles. Each step runs step-warmup unmeasured first, time for the
+ * adaptive producer to settle on a profile, the first step a warmup at 1000 sends/s before that.
+ *
+ * Run with: mvn test -Pbenchmark -Dtest='*ProducerProfileBenchmark' [-Dbenchmark.rates=500,2000,8000]
+ * Every run appends one line per mode and rate to target/benchmark-results/producer-profile.csv
+ */
+@Tag("benchmark")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+                "product.admission.enabled=false"})
+abstract class AbstractProducerProfileBenchmark {
+
+    private static final String RATES = System.getProperty("benchmark.rates", "200,1000,3000,6000");
+    private static final int STEP_SECONDS = Integer.getInteger("benchmark.step-duration", 5);
+    private static final int STEP_WARMUP_SECONDS = Integer.getInteger("benchmark.step-warmup", 3);
+    private static final int WARMUP_SECONDS = Integer.getInteger("benchmark.warmup", 10);
+    private static final Path RESULTS = Path.of("target", "benchmark-results", "producer-profile.csv");
+
+    private final Logger logger = LoggerFactory.getLogger(AbstractProducerProfileBenchmark.class);
+
+    @Autowired
+    KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+
+    abstract String mode();
+
+    @Test
+    void benchmarkSend_atIncreasingRates() throws Exception {
+        // JIT and the first metadata requests, whichever mode runs first in the JVM would pay for them
+        run(1000, 1000 * WARMUP_SECONDS);
+
+        long failures = 0;
+        for (String rate : RATES.split(",")) {
+            int sendsPerSecond = Integer.parseInt(rate.trim());
+            run(sendsPerSecond, sendsPerSecond * STEP_WARMUP_SECONDS);
+
+            long[] latencies = new long[sendsPerSecond * STEP_SECONDS];
+            Step step = run(sendsPerSecond, latencies);
+            failures += step.failures();
+
+            Arrays.sort(latencies);
+            String line = String.format(Locale.ROOT, "%s,%d,%.1f,%.2f,%.2f,%.2f,%s%n", mode(), sendsPerSecond,
+                    latencies.length / (step.elapsedNanos() / 1_000_000_000.0), millis(latencies, 0.50),
+                    millis(latencies, 0.99), latencies[latencies.length - 1] / 1_000_000.0, profile());
+            report(line);
+        }
+
+        assertEquals(0, failures, "every send is expected to be acknowledged");
+    }
+
+    private void run(int sendsPerSecond, int sends) throws InterruptedException {
+        run(sendsPerSecond, new long[sends]);
+    }
+
+    /*
+    * Sends latencies.length records at sendsPerSecond and waits for every acknowledgement.
+    * A latency starts at the scheduled time, a sender that falls behind shows up in the numbers
+    * */
+    private Step run(int sendsPerSecond, long[] latencies) throws InterruptedException {
+        LongAdder failures = new LongAdder();
+        LongAdder completed = new LongAdder();
+        AtomicLong lastAckNanos = new AtomicLong();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / sendsPerSecond;
+        long start = System.nanoTime();
+        for (int i = 0; i < latencies.length; i++) {
+            int index = i;
+            long scheduled = start + i * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String productId = UUID.randomUUID().toString();
+            kafkaTemplate.send("product-created-events-topic", productId,
+                            new ProductCreatedEvent(productId, "Benchmark Product", new BigDecimal("12.34"), 1))
+                    .whenComplete((result, exception) -> {
+                        long now = System.nanoTime();
+                        latencies[index] = now - scheduled;
+                        lastAckNanos.accumulateAndGet(now, Math::max);
+                        if (exception != null) {
+                            failures.increment();
+                        }
+                        completed.increment();
+                    });
+        }
+        while (completed.sum() < latencies.length) {
+            Thread.sleep(10);
+        }
+        return new Step(lastAckNanos.get() - start, failures.sum());
+    }
+
+    private String profile() {
+        if (kafkaTemplate.getProducerFactory() instanceof AdaptiveProducerFactory<?, ?> adaptiveProducerFactory) {
+            return adaptiveProducerFactory.active().name().toLowerCase(Locale.ROOT);
+        }
+        return "latency";
+    }
+
+    private static double millis(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    private void report(String line) throws IOException {
+        Files.createDirectories(RESULTS.getParent());
+        if (Files.notExists(RESULTS)) {
+            Files.writeString(RESULTS, "mode,targetSendsPerSecond,sendsPerSecond,p50Ms,p99Ms,maxMs,profileAtEnd\n",
+                    StandardCharsets.UTF_8);
+        }
+        Files.writeString(RESULTS, line, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        logger.info("**** Producer profile benchmark: {} ****", line.strip());
+    }
+
+    private record Step(long elapsedNanos, long failures) {
+    }
+}
@@ -0,0 +1,128 @@
+package com.codedecode.kafkademo.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Fires the same burst of concurrent POST /products/createProduct requests (sync mode, so every request
+ * holds its thread for the whole broker round trip) at a product-service running on platform threads
+ * and on virtual threads, and records peak platform thread count and latency percentiles.
+ *
+ * Run with: mvn test -Pbenchmark -Dtest='*ThreadModeBenchmark'
+ * Every run appends one line per mode to target/benchmark-results/thread-mode.csv
+ */
+@Tag("benchmark")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+                "product.create.mode=sync"})
+abstract class AbstractThreadModeBenchmark {
+
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 5000);
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 500);
+    private static final int WARMUP_REQUESTS = Integer.getInteger("benchmark.warmup", 500);
+    private static final Path RESULTS = Path.of("target", "benchmark-results", "thread-mode.csv");
+    private static final String PRODUCT_JSON = "{\"title\":\"Benchmark Product\",\"price\":12.34,\"quantity\":1}";
+
+    private final Logger logger = LoggerFactory.getLogger(AbstractThreadModeBenchmark.class);
+
+    @LocalServerPort
+    int port;
+
+    abstract String mode();
+
+    @Test
+    void benchmarkCreateProduct_underConcurrentLoad() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/products/createProduct"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(PRODUCT_JSON))
+                .build();
+
+        fire(client, request, new long[WARMUP_REQUESTS]);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        // embedded brokers, producer and JFR threads are already running, only the growth is caused by the load
+        int idleThreads = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        long[] latencies = new long[REQUESTS];
+        long start = System.nanoTime();
+        long failures = fire(client, request, latencies);
+        long elapsed = System.nanoTime() - start;
+        int peakThreads = threads.getPeakThreadCount();
+
+        Arrays.sort(latencies);
+        double throughput = REQUESTS / (elapsed / 1_000_000_000.0);
+        String line = String.format("%s,%d,%d,%.1f,%.2f,%.2f,%.2f,%d,%d%n", mode(), REQUESTS, CONCURRENCY, throughput,
+                millis(latencies, 0.50), millis(latencies, 0.99), latencies[latencies.length - 1] / 1_000_000.0,
+                idleThreads, peakThreads);
+        report(line);
+
+        assertEquals(0, failures, "every request is expected to return 201");
+    }
+
+    private long fire(HttpClient client, HttpRequest request, long[] latencies) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        LongAdder failures = new LongAdder();
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < latencies.length; i++) {
+                int index = i;
+                inFlight.acquire();
+                callers.submit(() -> {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 201) {
+                            failures.increment();
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        failures.increment();
+                    } finally {
+                        latencies[index] = System.nanoTime() - sent;
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        return failures.sum();
+    }
+
+    private static double millis(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    private void report(String line) throws IOException {
+        Files.createDirectories(RESULTS.getParent());
+        if (Files.notExists(RESULTS)) {
+            Files.writeString(RESULTS, "mode,requests,concurrency,requestsPerSecond,p50Ms,p99Ms,maxMs,idlePlatformThreads,peakPlatformThreads\n",
+                    StandardCharsets.UTF_8);
+        }
+        Files.writeString(RESULTS, line, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        logger.info("**** Thread mode benchmark: {} ****", line.strip());
+    }
+}
@@ -0,0 +1,14 @@
+package com.codedecode.kafkademo.benchmark;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = {"product.adaptive.enabled=true",
+        "product.adaptive.evaluation-interval=500ms",
+        "product.adaptive.min-dwell=1s"})
+class AdaptiveProducerProfileBenchmark extends AbstractProducerProfileBenchmark {
+
+    @Override
+    String mode() {
+        return "adaptive";
+    }
+}
@@ -0,0 +1,88 @@
+package com.codedecode.kafkademo.benchmark;
+
+import com.codedecode.kafkademo.id.TimeOrderedIdGenerator;
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import com.codedecode.kafkademo.service.ProductServiceImpl;
+import com.codedecode.kafkademo.tracing.PublishLatency;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH: ProductServiceImpl.createProduct without a broker. The KafkaTemplate sends to a MockProducer that
+ * acknowledges immediately, so the score is our own per-request work: two UUIDs, the messageId and publishTimestamp headers,
+ * building the record, JSON serialization of the value and the template/producer call path.
+ *
+ * Run with: mvn test -Pjmh -Djmh.include=CreateProduct
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateProductBenchmark {
+
+    private MockProducer<String, ProductCreatedEvent> producer;
+    private ProductServiceImpl productService;
+    private CreateProductRestModel product;
+
+    @Setup
+    public void setUp() {
+        // the INFO lines of ProductServiceImpl would otherwise measure console output instead of the send path
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME))
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+
+        // KafkaTemplate closes the producer it got from a MockProducerFactory after every send,
+        // DefaultKafkaProducerFactory hands out a shared producer whose close() does nothing, so do the same here
+        producer = new MockProducer<>(true, null, new StringSerializer(), new JsonSerializer<>()) {
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        productService = new ProductServiceImpl(kafkaTemplate, kafkaTemplate, Runnable::run,
+                new PublishLatency(new SimpleMeterRegistry()), new TimeOrderedIdGenerator(0), Optional.empty(), Optional.empty());
+
+        product = new CreateProductRestModel();
+        product.setTitle("iPhone 15 Pro Max 256GB");
+        product.setPrice(new BigDecimal("1199.99"));
+        product.setQuantity(25);
+    }
+
+    /*
+    * MockProducer keeps every sent record in its history, drop it between iterations so the heap stays flat
+    * */
+    @TearDown(Level.Iteration)
+    public void clearSentRecords() {
+        producer.clear();
+    }
+
+    @Benchmark
+    public String createProduct() throws Exception {
+        return productService.createProduct(product);
+    }
+}
@@ -0,0 +1,12 @@
+package com.codedecode.kafkademo.benchmark;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "product.adaptive.enabled=false")
+class FixedProducerProfileBenchmark extends AbstractProducerProfileBenchmark {
+
+    @Override
+    String mode() {
+        return "fixed";
+    }
+}
@@ -0,0 +1,72 @@
+package com.codedecode.kafkademo.benchmark;
+
+import com.codedecode.kafkademo.id.IdGenerator;
+import com.codedecode.kafkademo.id.RandomIdGenerator;
+import com.codedecode.kafkademo.id.TimeOrderedIdGenerator;
+import com.codedecode.kafkademo.id.UuidBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH: what createProduct spends on its two ids, a productId as text and a messageId header value,
+ * with each IdGenerator. The *Contended variants run on 8 threads sharing one generator,
+ * the random one then queues on the SecureRandom lock, the time-ordered one retries its CAS.
+ *
+ * headerValue compares toString().getBytes() with UuidBytes.ascii() for the messageId header.
+ *
+ * Run with: mvn test -Pjmh -Djmh.include=IdGenerator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Param({"random", "time-ordered"})
+    public String generator;
+
+    private IdGenerator idGenerator;
+
+    @Setup
+    public void setUp() {
+        idGenerator = "random".equals(generator) ? new RandomIdGenerator() : new TimeOrderedIdGenerator(0);
+    }
+
+    @Benchmark
+    public void productAndMessageId(Blackhole blackhole) {
+        blackhole.consume(idGenerator.next().toString());
+        blackhole.consume(UuidBytes.ascii(idGenerator.next()));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void productAndMessageIdContended(Blackhole blackhole) {
+        blackhole.consume(idGenerator.next().toString());
+        blackhole.consume(UuidBytes.ascii(idGenerator.next()));
+    }
+
+    @Benchmark
+    public byte[] headerValueGetBytes() {
+        return idGenerator.next().toString().getBytes();
+    }
+
+    @Benchmark
+    public byte[] headerValueAscii() {
+        return UuidBytes.ascii(idGenerator.next());
+    }
+}
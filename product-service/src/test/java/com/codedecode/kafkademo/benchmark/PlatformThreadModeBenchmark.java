@@ -0,0 +1,12 @@
+package com.codedecode.kafkademo.benchmark;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "spring.threads.virtual.enabled=false")
+class PlatformThreadModeBenchmark extends AbstractThreadModeBenchmark {
+
+    @Override
+    String mode() {
+        return "platform";
+    }
+}
@@ -0,0 +1,89 @@
+package com.codedecode.kafkademo.benchmark;
+
+import com.codedecode.kafkademo.codec.ProductCreatedEventCodec;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH: cost of turning a ProductCreatedEvent into record bytes and back, with the JsonSerializer /
+ * JsonDeserializer pair the services are configured with and with the binary codec for comparison.
+ * The JSON path includes the __TypeId__ header the consumer uses to pick the target class.
+ *
+ * Run with: mvn test -Pjmh -Djmh.include=ProductCreatedEventSerde
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductCreatedEventSerdeBenchmark {
+
+    private static final String TOPIC = "product-created-events-topic";
+
+    private JsonSerializer<ProductCreatedEvent> jsonSerializer;
+    private JsonDeserializer<Object> jsonDeserializer;
+    private ProductCreatedEvent event;
+    private RecordHeaders jsonHeaders;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        jsonSerializer = new JsonSerializer<>();
+        jsonDeserializer = new JsonDeserializer<>();
+        // keep __TypeId__ on the headers so the same record can be read in every invocation
+        jsonDeserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "com.codedecode.kafkademo.service",
+                JsonDeserializer.REMOVE_TYPE_INFO_HEADERS, false), false);
+
+        event = new ProductCreatedEvent(UUID.randomUUID().toString(), "iPhone 15 Pro Max 256GB",
+                new BigDecimal("1199.99"), 25);
+        jsonHeaders = new RecordHeaders();
+        json = jsonSerializer.serialize(TOPIC, jsonHeaders, event);
+        binary = ProductCreatedEventCodec.encode(event);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jsonSerializer.close();
+        jsonDeserializer.close();
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return jsonSerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public Object deserializeJson() {
+        return jsonDeserializer.deserialize(TOPIC, jsonHeaders, json);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return ProductCreatedEventCodec.encode(event);
+    }
+
+    @Benchmark
+    public ProductCreatedEvent decodeBinary() {
+        return ProductCreatedEventCodec.decode(binary);
+    }
+}
@@ -0,0 +1,13 @@
+package com.codedecode.kafkademo.benchmark;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = {"spring.threads.virtual.enabled=true",
+        "product.virtual-threads.pinning-diagnostics=true"})
+class VirtualThreadModeBenchmark extends AbstractThreadModeBenchmark {
+
+    @Override
+    String mode() {
+        return "virtual";
+    }
+}
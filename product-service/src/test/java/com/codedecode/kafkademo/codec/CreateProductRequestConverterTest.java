@@ -0,0 +1,115 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CreateProductRequestConverterTest {
+
+    private static final String TOPIC = "product-created-events-topic";
+    private static final String PRODUCT_ID = "01928f3c-7a1e-7b2d-8c4f-5e6a7b8c9d0e";
+
+    // the ObjectMapper Spring Boot configures for Spring MVC
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final CreateProductRequestConverter converter = new CreateProductRequestConverter(objectMapper);
+
+    @Test
+    public void testRead_withPlainBodies_encodesTheRecordJsonSerializerWrites() throws IOException {
+        assertSameRecord("{\"title\":\"iPhone 15 Pro Max 256GB\",\"price\":1199.99,\"quantity\":25}");
+        assertSameRecord("{\"quantity\":-3,\"price\":1E+3,\"title\":\"Kaffee ☕ 😀 \\\"quoted\\\" back\\\\slash\"}");
+        assertSameRecord("{\"title\":\"tab\\t newline\\n bell\\u0007 unit\\u001F del\\u007F\",\"price\":-0.000001,\"quantity\":2147483647}");
+        assertSameRecord("{\"title\":null,\"price\":null,\"quantity\":null}");
+        assertSameRecord("{\"price\":123456789012345678901234567890.12,\"sku\":{\"ids\":[1,2]},\"title\":\"\"}");
+        assertSameRecord("{}");
+    }
+
+    @Test
+    public void testRead_withCoercedValues_fallsBackToTheObjectMapper() throws IOException {
+        //Act
+        CreateProductRestModel product = read("{\"title\":\"iPhone\",\"price\":\"999.99\",\"quantity\":\"5\"}");
+
+        //Assert
+        assertFalse(product instanceof PreEncodedCreateProductRestModel);
+        assertEquals(new BigDecimal("999.99"), product.getPrice());
+        assertEquals(5, product.getQuantity());
+    }
+
+    @Test
+    public void testRead_withMalformedBody_throwsHttpMessageNotReadableException() {
+        assertThrows(HttpMessageNotReadableException.class, () -> read("{\"title\":\"iPhone\",\"price\":"));
+    }
+
+    @Test
+    public void testToEvent_calledTwice_doesNotShareTheValue() throws IOException {
+        //Arrange
+        PreEncodedCreateProductRestModel product = (PreEncodedCreateProductRestModel) read("{\"title\":\"iPhone\",\"price\":1,\"quantity\":1}");
+
+        //Act
+        PreEncodedProductCreatedEvent first = (PreEncodedProductCreatedEvent) product.toEvent(PRODUCT_ID);
+        PreEncodedProductCreatedEvent second = (PreEncodedProductCreatedEvent) product.toEvent(PRODUCT_ID.replace('7', '6'));
+
+        //Assert
+        assertEquals(PRODUCT_ID, objectMapper.readTree(first.value()).get("productId").asText());
+        assertEquals(PRODUCT_ID.replace('7', '6'), objectMapper.readTree(second.value()).get("productId").asText());
+    }
+
+    @Test
+    public void testWrite_withPreEncodedProduct_writesOnlyTheRequestProperties() throws IOException {
+        //Arrange
+        CreateProductRestModel product = read("{\"title\":\"iPhone\",\"price\":999.99,\"quantity\":5}");
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+
+        //Act
+        converter.write(product, MediaType.APPLICATION_JSON, outputMessage);
+
+        //Assert
+        assertEquals(objectMapper.readTree("{\"title\":\"iPhone\",\"price\":999.99,\"quantity\":5}"),
+                objectMapper.readTree(outputMessage.getBodyAsBytes()));
+    }
+
+    private void assertSameRecord(String body) throws IOException {
+        //Arrange
+        CreateProductRestModel product = read(body);
+        PreEncodedCreateProductRestModel preEncoded = assertInstanceOf(PreEncodedCreateProductRestModel.class, product, body);
+        CreateProductRestModel mapped = objectMapper.readValue(body, CreateProductRestModel.class);
+        RecordHeaders expectedHeaders = new RecordHeaders();
+        RecordHeaders headers = new RecordHeaders();
+
+        //Act
+        byte[] expected;
+        byte[] value;
+        try (JsonSerializer<ProductCreatedEvent> jsonSerializer = new JsonSerializer<>();
+             ProductCreatedEventJsonSerializer serializer = new ProductCreatedEventJsonSerializer()) {
+            expected = jsonSerializer.serialize(TOPIC, expectedHeaders,
+                    new ProductCreatedEvent(PRODUCT_ID, mapped.getTitle(), mapped.getPrice(), mapped.getQuantity()));
+            value = serializer.serialize(TOPIC, headers, preEncoded.toEvent(PRODUCT_ID));
+        }
+
+        //Assert
+        assertEquals(new String(expected, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8), body);
+        assertArrayEquals(expected, value, body);
+        assertArrayEquals(expectedHeaders.toArray(), headers.toArray(), body);
+    }
+
+    private CreateProductRestModel read(String body) throws IOException {
+        return converter.read(CreateProductRestModel.class, new MockHttpInputMessage(body.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.codedecode.kafkademo.codec;
+
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ProductCreatedEventCodecTest {
+
+    @Test
+    public void testEncodeDecode_roundTripsAllFields() {
+        assertRoundTrip(new ProductCreatedEvent("3f1c9a2e-0b7d-4c55-9a1e-2f4b6d8c0e11", "iPhone 15", new BigDecimal("999.99"), 12));
+        assertRoundTrip(new ProductCreatedEvent("id", "Kaffee ☕ 😀", new BigDecimal("-0.000001"), Integer.MIN_VALUE));
+        assertRoundTrip(new ProductCreatedEvent("id", "", new BigDecimal("123456789012345678901234567890.12"), Integer.MAX_VALUE));
+        assertRoundTrip(new ProductCreatedEvent(null, null, null, null));
+    }
+
+    @Test
+    public void testSerialize_addsFormatHeader() {
+        //Arrange
+        ProductCreatedEvent event = new ProductCreatedEvent("id", "title", BigDecimal.ONE, 1);
+        RecordHeaders headers = new RecordHeaders();
+
+        //Act
+        byte[] data;
+        try (ProductCreatedEventBinarySerializer serializer = new ProductCreatedEventBinarySerializer()) {
+            data = serializer.serialize("product-created-events-topic", headers, event);
+        }
+
+        //Assert
+        assertArrayEquals(ProductCreatedEventCodec.encode(event), data);
+        assertArrayEquals(ProductCreatedEventCodec.BINARY_FORMAT.getBytes(StandardCharsets.UTF_8),
+                headers.lastHeader(ProductCreatedEventCodec.FORMAT_HEADER).value());
+    }
+
+    @Test
+    public void testDecode_whenPayloadIsCorrupt_throwsSerializationException() {
+        byte[] encoded = ProductCreatedEventCodec.encode(new ProductCreatedEvent("id", "title", BigDecimal.TEN, 1));
+        byte[] truncated = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        byte[] unknownVersion = encoded.clone();
+        unknownVersion[0] = 99;
+
+        assertThrows(SerializationException.class, () -> ProductCreatedEventCodec.decode(truncated));
+        assertThrows(SerializationException.class, () -> ProductCreatedEventCodec.decode(unknownVersion));
+    }
+
+    private void assertRoundTrip(ProductCreatedEvent event) {
+        ProductCreatedEvent decoded = ProductCreatedEventCodec.decode(ProductCreatedEventCodec.encode(event));
+        assertEquals(event.getProductId(), decoded.getProductId());
+        assertEquals(event.getTitle(), decoded.getTitle());
+        assertEquals(event.getPrice(), decoded.getPrice());
+        assertEquals(event.getQuantity(), decoded.getQuantity());
+    }
+}
@@ -0,0 +1,128 @@
+package com.codedecode.kafkademo.controller;
+
+import com.codedecode.kafkademo.admission.AdmissionRejectedException;
+import com.codedecode.kafkademo.model.BatchCreateProductResponse;
+import com.codedecode.kafkademo.model.BatchItemResult;
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * WebMvcTest -> only the web layer is started, ProductService is replaced by a mock,
+ * so no Kafka broker is needed. product.create.mode is switched through the properties attribute.
+ */
+@WebMvcTest(controllers = ProductController.class, properties = "product.create.mode=async")
+public class ProductControllerTest {
+
+    private static final String PRODUCT_JSON = "{\"title\":\"Test Product\",\"price\":12.34,\"quantity\":1}";
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockitoBean
+    ProductService productService;
+
+    @Test
+    public void testCreateProducts_whenAsyncModeAndBrokerAcknowledges_returnsCreated() throws Exception {
+        //Arrange
+        when(productService.createProductAsync(any())).thenReturn(CompletableFuture.completedFuture("product-1"));
+
+        //Act
+        MvcResult result = mockMvc.perform(post("/products/createProduct")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(PRODUCT_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isCreated())
+                .andExpect(content().string("product-1"));
+        verify(productService).createProductAsync(any());
+    }
+
+    @Test
+    public void testCreateProducts_whenAsyncModeAndSendFails_returnsExpectationFailed() throws Exception {
+        //Arrange
+        when(productService.createProductAsync(any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker unavailable")));
+
+        //Act
+        MvcResult result = mockMvc.perform(post("/products/createProduct")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(PRODUCT_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isExpectationFailed());
+    }
+
+    @Test
+    public void testCreateProducts_whenAdmissionIsRejected_returnsTooManyRequestsWithRetryAfter() throws Exception {
+        //Arrange
+        when(productService.createProductAsync(any()))
+                .thenThrow(new AdmissionRejectedException("too many product creations in flight, limit 10", Duration.ofMillis(1500)));
+
+        //Act
+        MvcResult result = mockMvc.perform(post("/products/createProduct")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(PRODUCT_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        //Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"))
+                .andExpect(jsonPath("$.message").value("too many product creations in flight, limit 10"));
+    }
+
+    @Test
+    public void testCreateProductsInBatch_whenGivenNdjsonBody_publishesEveryLine() throws Exception {
+        //Arrange
+        when(productService.createProducts(any())).thenAnswer(invocation -> {
+            Iterator<CreateProductRestModel> products = invocation.getArgument(0);
+            List<BatchItemResult> results = new ArrayList<>();
+            while (products.hasNext()) {
+                CreateProductRestModel product = products.next();
+                results.add(new BatchItemResult(results.size(), product.getTitle() + "-id", null));
+            }
+            return new BatchCreateProductResponse(results.size(), results.size(), 0, results);
+        });
+        String body = "{\"title\":\"first\",\"price\":1.5,\"quantity\":1}\n"
+                + "{\"title\":\"second\",\"price\":2.5,\"quantity\":2}\n";
+
+        //Act & Assert
+        mockMvc.perform(post("/products/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(2))
+                .andExpect(jsonPath("$.results[1].productId").value("second-id"));
+    }
+}
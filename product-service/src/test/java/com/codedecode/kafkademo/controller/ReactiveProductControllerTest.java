@@ -0,0 +1,91 @@
+package com.codedecode.kafkademo.controller;
+
+import com.codedecode.kafkademo.id.TimeOrderedIdGenerator;
+import com.codedecode.kafkademo.model.ProductCreateMode;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import com.codedecode.kafkademo.service.ReactiveProductService;
+import com.codedecode.kafkademo.tracing.PublishLatency;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * The controller on a WebTestClient with a real ReactiveProductService, the templates send to a MockProducer,
+ * so no Kafka broker and no Netty server are needed.
+ */
+public class ReactiveProductControllerTest {
+
+    private static final String PRODUCT_JSON = "{\"title\":\"Test Product\",\"price\":12.34,\"quantity\":1}";
+
+    private MockProducer<String, ProductCreatedEvent> producer;
+    private ReactiveProductService productService;
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        // DefaultKafkaProducerFactory hands out a shared producer whose close() does nothing, see CreateProductBenchmark
+        producer = new MockProducer<>(true, null, new StringSerializer(), new JsonSerializer<>()) {
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        productService = new ReactiveProductService(kafkaTemplate, kafkaTemplate, new PublishLatency(new SimpleMeterRegistry()),
+                new TimeOrderedIdGenerator(0), 4, 2, 3);
+        webTestClient = WebTestClient.bindToController(new ReactiveProductController(productService, ProductCreateMode.SYNC)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        productService.destroy();
+    }
+
+    @Test
+    public void testCreateProducts_whenBrokerAcknowledges_returnsCreatedWithProductId() {
+        //Act
+        String productId = webTestClient.post().uri("/products/createProduct")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(PRODUCT_JSON)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        //Assert
+        assertEquals(1, producer.history().size());
+        assertEquals(productId, producer.history().get(0).key());
+        assertNotNull(producer.history().get(0).headers().lastHeader("messageId"));
+    }
+
+    @Test
+    public void testCreateProductsInBatch_withNdjsonOverTheLimit_publishesUpToTheLimitInOrder() {
+        //Act
+        webTestClient.post().uri("/products/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(String.join("\n", PRODUCT_JSON, PRODUCT_JSON, PRODUCT_JSON, PRODUCT_JSON, PRODUCT_JSON))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.total").isEqualTo(4)
+                .jsonPath("$.created").isEqualTo(3)
+                .jsonPath("$.failed").isEqualTo(1)
+                .jsonPath("$.results[3].index").isEqualTo(3)
+                .jsonPath("$.results[3].error").isEqualTo("batch is limited to 3 products");
+
+        //Assert
+        assertEquals(3, producer.history().size());
+    }
+}
@@ -0,0 +1,141 @@
+package com.codedecode.kafkademo.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeOrderedIdGeneratorTest {
+
+    private static final long NOW = Instant.parse("2025-06-01T12:00:00Z").toEpochMilli();
+
+    @Test
+    public void testNext_returnsVersion7WithTimestampAndNodeId() {
+        //Arrange
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(513, fixedClock(NOW));
+
+        //Act
+        UUID id = generator.next();
+
+        //Assert
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(NOW, id.getMostSignificantBits() >>> 16);
+        assertEquals(513, (id.getLeastSignificantBits() >>> 52) & TimeOrderedIdGenerator.MAX_NODE_ID);
+    }
+
+    @Test
+    public void testNext_whenClockStandsStillOrStepsBack_keepsIncreasing() {
+        //Arrange
+        MutableClock clock = new MutableClock(NOW);
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(0, clock);
+
+        //Act
+        List<UUID> ids = new ArrayList<>();
+        // more than the 4096 ids one ms has room for
+        for (int i = 0; i < 5000; i++) {
+            ids.add(generator.next());
+        }
+        clock.millis = NOW - 1000;
+        for (int i = 0; i < 10; i++) {
+            ids.add(generator.next());
+        }
+
+        //Assert
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1).toString().compareTo(ids.get(i).toString()) < 0, "id " + i + " is not after the previous one");
+        }
+    }
+
+    @Test
+    public void testNext_fromManyThreads_neverRepeatsAnId() throws Exception {
+        //Arrange
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(0, Clock.systemUTC());
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        //Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    ids.add(generator.next());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //Assert
+        assertEquals(8 * 50_000, ids.size());
+    }
+
+    @Test
+    public void testConstructor_withNodeIdOutOfRange_throws() {
+        //Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(1024, Clock.systemUTC()));
+    }
+
+    @Test
+    public void testAscii_isTheCanonicalText() {
+        //Arrange
+        Set<UUID> samples = new HashSet<>(List.of(new UUID(0, 0), new UUID(-1, -1), UUID.randomUUID(),
+                new TimeOrderedIdGenerator(7, Clock.systemUTC()).next()));
+
+        //Act & Assert
+        for (UUID uuid : samples) {
+            assertArrayEquals(uuid.toString().getBytes(StandardCharsets.US_ASCII), UuidBytes.ascii(uuid), uuid.toString());
+        }
+    }
+
+    private static Clock fixedClock(long millis) {
+        return Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private static class MutableClock extends Clock {
+        private long millis;
+
+        MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
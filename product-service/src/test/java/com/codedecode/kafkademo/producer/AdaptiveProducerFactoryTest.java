@@ -0,0 +1,142 @@
+package com.codedecode.kafkademo.producer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.SendResult;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveProducerFactoryTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MockProducer<String, String> latencyProducer;
+    private MockProducer<String, String> throughputProducer;
+    private AdaptiveProducerFactory<String, String> producerFactory;
+    private long started;
+
+    @BeforeEach
+    void setUp() {
+        latencyProducer = sharedProducer();
+        throughputProducer = sharedProducer();
+        started = System.nanoTime();
+        // an evaluation interval longer than the test, decide() is called directly
+        producerFactory = new AdaptiveProducerFactory<>(new MockProducerFactory<>(() -> latencyProducer),
+                new MockProducerFactory<>(() -> throughputProducer),
+                new AdaptiveProducerFactory.Thresholds(2000, 1000, Duration.ofMillis(20), Duration.ofSeconds(5)),
+                Duration.ofHours(1), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        producerFactory.destroy();
+    }
+
+    @Test
+    public void testDecide_whenRateCrossesTheThresholds_switchesNewSendsBothWays() {
+        //Arrange
+        KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+
+        //Act
+        kafkaTemplate.send("topic", "before");
+        producerFactory.decide(2500, 2, started + 10 * SECOND);
+        kafkaTemplate.send("topic", "during");
+        producerFactory.decide(500, 2, started + 20 * SECOND);
+        kafkaTemplate.send("topic", "after");
+
+        //Assert
+        assertEquals(2, latencyProducer.history().size());
+        assertEquals("during", throughputProducer.history().get(0).value());
+        assertEquals(AdaptiveProducerFactory.Profile.LATENCY, producerFactory.active());
+        assertEquals(1, meterRegistry.get("product.producer.profile.switches").tag("profile", "throughput").counter().count());
+        assertEquals(1, meterRegistry.get("product.producer.profile.switches").tag("profile", "latency").counter().count());
+    }
+
+    @Test
+    public void testDecide_whenAcknowledgementsAreSlowBetweenTheRates_switchesToThroughputHalfway() {
+        //Act
+        producerFactory.decide(1200, 35, started + 10 * SECOND);
+        AdaptiveProducerFactory.Profile belowHalfway = producerFactory.active();
+        producerFactory.decide(1600, 35, started + 11 * SECOND);
+
+        //Assert
+        assertEquals(AdaptiveProducerFactory.Profile.LATENCY, belowHalfway);
+        assertEquals(AdaptiveProducerFactory.Profile.THROUGHPUT, producerFactory.active());
+        assertEquals(1, meterRegistry.get("product.producer.profile.active").tag("profile", "throughput").gauge().value());
+        assertEquals(1600, meterRegistry.get("product.producer.send.rate").gauge().value());
+    }
+
+    @Test
+    public void testDecide_withinMinDwell_keepsTheProfile() {
+        //Arrange
+        producerFactory.decide(2500, 2, started + 10 * SECOND);
+
+        //Act
+        producerFactory.decide(100, 2, started + 12 * SECOND);
+
+        //Assert
+        assertEquals(AdaptiveProducerFactory.Profile.THROUGHPUT, producerFactory.active());
+    }
+
+    @Test
+    public void testEvaluate_whenTemplateAlsoReadsMetrics_countsOnlyTheSends() {
+        //Arrange
+        KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        kafkaTemplate.setProducerListener(producerFactory);
+
+        //Act
+        for (int i = 0; i < 3; i++) {
+            kafkaTemplate.send("topic", "record-" + i);
+            kafkaTemplate.metrics();
+        }
+        producerFactory.evaluate(started + 10 * SECOND);
+
+        //Assert
+        assertEquals(0.3, meterRegistry.get("product.producer.send.rate").gauge().value(), 0.01);
+    }
+
+    @Test
+    public void testFlush_afterASwitch_flushesTheIdleProducerToo() throws Exception {
+        //Arrange
+        latencyProducer = new MockProducer<>(false, null, new StringSerializer(), new StringSerializer());
+        throughputProducer = new MockProducer<>(false, null, new StringSerializer(), new StringSerializer());
+        producerFactory.destroy();
+        producerFactory = new AdaptiveProducerFactory<>(new MockProducerFactory<>(() -> latencyProducer),
+                new MockProducerFactory<>(() -> throughputProducer),
+                new AdaptiveProducerFactory.Thresholds(2000, 1000, Duration.ofMillis(20), Duration.ZERO),
+                Duration.ofHours(1), meterRegistry);
+        KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        CompletableFuture<SendResult<String, String>> lingering = kafkaTemplate.send("topic", "before");
+        producerFactory.decide(2500, 2, System.nanoTime());
+
+        //Act
+        producerFactory.flush();
+
+        //Assert
+        assertTrue(lingering.isDone());
+        assertEquals(AdaptiveProducerFactory.Profile.THROUGHPUT, producerFactory.active());
+    }
+
+    /*
+    * DefaultKafkaProducerFactory hands out a shared producer whose close() does nothing, see CreateProductBenchmark
+    * */
+    private static MockProducer<String, String> sharedProducer() {
+        return new MockProducer<>(true, null, new StringSerializer(), new StringSerializer()) {
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package com.codedecode.kafkademo.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InFlightLimitTest {
+
+    @Test
+    public void testAcquire_whenNoPermitIsLeft_waitsForRelease() {
+        //Arrange
+        InFlightLimit limit = new InFlightLimit(2);
+        AtomicInteger granted = new AtomicInteger();
+
+        //Act
+        for (int i = 0; i < 3; i++) {
+            limit.acquire().subscribe(null, null, granted::incrementAndGet);
+        }
+
+        //Assert
+        assertEquals(2, granted.get());
+        limit.release();
+        assertEquals(3, granted.get());
+        assertEquals(0, limit.available());
+    }
+
+    @Test
+    public void testAcquire_whenCancelledWhileWaiting_passesThePermitOn() {
+        //Arrange
+        InFlightLimit limit = new InFlightLimit(1);
+        AtomicInteger granted = new AtomicInteger();
+        limit.acquire().subscribe(null, null, granted::incrementAndGet);
+        Disposable cancelled = limit.acquire().subscribe(null, null, granted::incrementAndGet);
+        limit.acquire().subscribe(null, null, granted::incrementAndGet);
+
+        //Act
+        cancelled.dispose();
+        limit.release();
+
+        //Assert
+        assertEquals(2, granted.get());
+        limit.release();
+        assertEquals(1, limit.available());
+    }
+}
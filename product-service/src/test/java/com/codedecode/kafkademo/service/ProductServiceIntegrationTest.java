@@ -1,6 +1,8 @@
 package com.codedecode.kafkademo.service;
 
 import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.tracing.PublishTimestamp;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -31,6 +33,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 /***
@@ -79,6 +82,9 @@ public class ProductServiceIntegrationTest {
     @Autowired
     Environment environment;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
     /**
      * KafkaMessageListenerContainer -> It is a Spring Kafka component that provides a way to consume messages
      * from Kafka topics in a more controlled manner. It is built on top of the Kafka consumer API and
@@ -169,6 +175,16 @@ public class ProductServiceIntegrationTest {
         assert(productCreatedEvent.getPrice().compareTo(price) == 0);
         assert(productCreatedEvent.getQuantity().equals(quantity));
 
+        // publish timestamp for the end to end latency, and the producer side of it
+        assertNotNull(message.headers().lastHeader(PublishTimestamp.HEADER));
+        assertEquals(Long.BYTES, message.headers().lastHeader(PublishTimestamp.HEADER).value().length);
+        assertEquals(1, meterRegistry.get("product.created.event.publish.latency")
+                .tag("stage", "broker_ack").tag("partition", String.valueOf(message.partition())).timer().count());
+        assertEquals(1, meterRegistry.get("product.create.latency").tag("mode", "sync").timer().count());
+        // the producer's own metrics, bound by KafkaProducerConfig
+        assertNotNull(meterRegistry.get("kafka.producer.record.queue.time.avg").tag("producer", "single").gauge());
+        assertNotNull(meterRegistry.get("kafka.producer.buffer.available.bytes").tag("producer", "single").gauge());
+
     }
 
     /**
@@ -0,0 +1,120 @@
+package com.codedecode.kafkademo.service;
+
+import com.codedecode.kafkademo.id.TimeOrderedIdGenerator;
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.model.ProductCreateMode;
+import com.codedecode.kafkademo.tracing.PublishLatency;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import reactor.core.Disposable;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The in-flight permits of createProduct with requests cancelled after their permit was granted. Nothing is
+ * acknowledged until the test completes the sends, so every permit handed out stays taken until then.
+ */
+public class ReactiveProductServiceTest {
+
+    private final CountDownLatch sendStarted = new CountDownLatch(1);
+    private final CountDownLatch sendBlocked = new CountDownLatch(1);
+    private MockProducer<String, ProductCreatedEvent> producer;
+    private ReactiveProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        // the first send blocks the product-sender thread until sendBlocked is counted down
+        producer = new MockProducer<>(false, null, new StringSerializer(), new JsonSerializer<>()) {
+            @Override
+            public synchronized Future<RecordMetadata> send(ProducerRecord<String, ProductCreatedEvent> record, Callback callback) {
+                if (history().isEmpty()) {
+                    sendStarted.countDown();
+                    try {
+                        sendBlocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.send(record, callback);
+            }
+
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        productService = new ReactiveProductService(kafkaTemplate, kafkaTemplate, new PublishLatency(new SimpleMeterRegistry()),
+                new TimeOrderedIdGenerator(0), 2, 2, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sendBlocked.countDown();
+        productService.destroy();
+    }
+
+    @Test
+    public void testCreateProduct_whenCancelledBeforeItsRecordIsSent_givesThePermitBack() throws InterruptedException {
+        //Arrange
+        productService.createProduct(product(), ProductCreateMode.ACCEPT).subscribe();
+        assertTrue(sendStarted.await(5, TimeUnit.SECONDS));
+        // holds the second permit, its send waits behind the blocked one
+        Disposable cancelled = productService.createProduct(product(), ProductCreateMode.ACCEPT).subscribe();
+
+        //Act
+        cancelled.dispose();
+        sendBlocked.countDown();
+        producer.completeNext();
+
+        //Assert
+        // both permits are free again, neither of these waits for an acknowledgement
+        assertNotNull(productService.createProduct(product(), ProductCreateMode.ACCEPT).block(Duration.ofSeconds(5)));
+        assertNotNull(productService.createProduct(product(), ProductCreateMode.ACCEPT).block(Duration.ofSeconds(5)));
+        // the cancelled request never reached the producer
+        assertEquals(3, producer.history().size());
+    }
+
+    @Test
+    public void testCreateProduct_whenCancelledWhileItsRecordIsSent_givesThePermitBackOnTheAcknowledgement() throws InterruptedException {
+        //Arrange
+        Disposable cancelled = productService.createProduct(product(), ProductCreateMode.SYNC).subscribe();
+        assertTrue(sendStarted.await(5, TimeUnit.SECONDS));
+
+        //Act
+        cancelled.dispose();
+        sendBlocked.countDown();
+        assertNotNull(productService.createProduct(product(), ProductCreateMode.ACCEPT).block(Duration.ofSeconds(5)));
+        // the record of the cancelled request is out, it keeps its permit until it is acknowledged
+        producer.completeNext();
+
+        //Assert
+        assertNotNull(productService.createProduct(product(), ProductCreateMode.ACCEPT).block(Duration.ofSeconds(5)));
+        assertEquals(3, producer.history().size());
+    }
+
+    private static CreateProductRestModel product() {
+        CreateProductRestModel product = new CreateProductRestModel();
+        product.setTitle("iPhone 15 Pro Max 256GB");
+        product.setPrice(new BigDecimal("1199.99"));
+        product.setQuantity(25);
+        return product;
+    }
+}
@@ -0,0 +1,170 @@
+package com.codedecode.kafkademo.spool;
+
+import com.codedecode.kafkademo.id.TimeOrderedIdGenerator;
+import com.codedecode.kafkademo.model.CreateProductRestModel;
+import com.codedecode.kafkademo.service.ProductCreatedEvent;
+import com.codedecode.kafkademo.service.ProductServiceImpl;
+import com.codedecode.kafkademo.tracing.PublishLatency;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.unit.DataSize;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProductEventSpoolTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MockProducer<String, ProductCreatedEvent> producer;
+    private ProductEventSpool spool;
+    private ProductServiceImpl productService;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        spool.destroy();
+    }
+
+    @Test
+    public void testCreateProduct_whenClusterIsUnreachable_spoolsAndReplaysInOrderOnceItIsBack() throws Exception {
+        //Arrange
+        start(true, Duration.ofSeconds(2));
+        producer.sendException = new TimeoutException("Topic product-created-events-topic not present in metadata after 1000 ms.");
+
+        //Act
+        List<String> productIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            productIds.add(productService.createProduct(product()));
+        }
+
+        //Assert
+        assertEquals(5, spool.depth());
+        assertEquals(5, meterRegistry.get("product.spool.appended").counter().count());
+        producer.sendException = null;
+        assertTrue(eventually(() -> spool.depth() == 0), "expected the spool to be drained");
+        assertEquals(productIds, producer.history().stream().map(ProducerRecord::key).toList());
+        assertTrue(producer.history().stream().allMatch(record -> record.headers().lastHeader("messageId") != null));
+        assertEquals(5, meterRegistry.get("product.spool.replayed").counter().count());
+        assertEquals(0, meterRegistry.get("product.spool.depth").gauge().value());
+    }
+
+    @Test
+    public void testCreateProduct_whenAcknowledgementIsLate_answersAfterAckTimeoutWithoutSpooling() throws Exception {
+        //Arrange
+        start(false, Duration.ofMillis(200));
+
+        //Act
+        String productId = productService.createProduct(product());
+        producer.completeNext();
+
+        //Assert
+        // a slow cluster gets the record once, the send in flight is not spooled as well
+        assertEquals(0, spool.depth());
+        assertEquals(0, meterRegistry.get("product.spool.appended").counter().count());
+        assertEquals(1, producer.history().size());
+        assertEquals(productId, producer.history().get(0).key());
+    }
+
+    @Test
+    public void testCreateProduct_whenLateSendFailsAfterAckTimeout_spoolsAndReplaysIt() throws Exception {
+        //Arrange
+        start(false, Duration.ofMillis(200));
+        String productId = productService.createProduct(product());
+
+        //Act
+        producer.errorNext(new TimeoutException("Expiring 1 record(s) for product-created-events-topic-0"));
+
+        //Assert
+        assertEquals(1, meterRegistry.get("product.spool.appended").counter().count());
+        // nothing is acknowledged until the drainer flushes the producer
+        assertTrue(eventually(() -> spool.depth() == 0), "expected the spool to be drained");
+        assertEquals(2, producer.history().size());
+        assertEquals(productId, producer.history().get(1).key());
+    }
+
+    @Test
+    public void testCreateProduct_whenSpoolIsFull_rejectsTheProduct() throws Exception {
+        //Arrange
+        start(true, Duration.ofSeconds(2), DataSize.ofBytes(1));
+        producer.sendException = new TimeoutException("Topic product-created-events-topic not present in metadata after 1000 ms.");
+
+        //Act & Assert
+        assertThrows(SpoolFullException.class, () -> productService.createProduct(product()));
+        assertEquals(0, spool.depth());
+        assertEquals(1, meterRegistry.get("product.spool.rejected").counter().count());
+    }
+
+    @Test
+    public void testStart_withRecordsLeftByAPreviousProcess_replaysThem() throws Exception {
+        //Arrange
+        SpoolJournal journal = SpoolJournal.open(directory, 64 * 1024, false);
+        ProducerRecord<String, ProductCreatedEvent> record = new ProducerRecord<>("product-created-events-topic", "left-behind",
+                new ProductCreatedEvent("left-behind", "test title", new BigDecimal("10.50"), 11));
+        journal.append(ProductEventSpool.encode(record));
+
+        //Act
+        start(true, Duration.ofSeconds(2));
+
+        //Assert
+        assertTrue(eventually(() -> spool.depth() == 0), "expected the spool to be drained");
+        assertEquals("left-behind", producer.history().get(0).key());
+        assertEquals(new BigDecimal("10.50"), producer.history().get(0).value().getPrice());
+    }
+
+    private void start(boolean autoComplete, Duration ackTimeout) throws Exception {
+        start(autoComplete, ackTimeout, DataSize.ofMegabytes(1));
+    }
+
+    private void start(boolean autoComplete, Duration ackTimeout, DataSize maxSize) throws Exception {
+        // DefaultKafkaProducerFactory hands out a shared producer whose close() does nothing, see CreateProductBenchmark
+        producer = new MockProducer<>(autoComplete, null, new StringSerializer(), new JsonSerializer<>()) {
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+        spool = new ProductEventSpool(kafkaTemplate, meterRegistry, directory, DataSize.ofKilobytes(64), false, maxSize,
+                ackTimeout, 2, Duration.ofSeconds(5), Duration.ofMillis(100));
+        productService = new ProductServiceImpl(kafkaTemplate, kafkaTemplate, Runnable::run,
+                new PublishLatency(meterRegistry), new TimeOrderedIdGenerator(0), Optional.of(spool), Optional.empty());
+    }
+
+    private static CreateProductRestModel product() {
+        CreateProductRestModel product = new CreateProductRestModel();
+        product.setTitle("iPhone 15 Pro Max 256GB");
+        product.setPrice(new BigDecimal("1199.99"));
+        product.setQuantity(25);
+        return product;
+    }
+
+    private boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
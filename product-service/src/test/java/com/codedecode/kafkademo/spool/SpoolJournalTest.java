@@ -0,0 +1,117 @@
+package com.codedecode.kafkademo.spool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SpoolJournalTest {
+
+    // room for 4 records of payload(i) per segment
+    private static final int SEGMENT_SIZE = 4 * (SpoolJournal.RECORD_HEADER_SIZE + 24);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRead_afterAppendAcrossSegments_returnsRecordsInOrder() throws IOException {
+        //Arrange
+        SpoolJournal journal = SpoolJournal.open(directory, SEGMENT_SIZE, false);
+        for (int i = 0; i < 10; i++) {
+            journal.append(payload(i));
+        }
+
+        //Act
+        SpoolJournal.Batch first = journal.read(6);
+        journal.commit(first);
+        SpoolJournal.Batch rest = journal.read(100);
+
+        //Assert
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), numbers(first));
+        assertEquals(List.of(6, 7, 8, 9), numbers(rest));
+        assertEquals(4, journal.records());
+        assertEquals(4 * 24, journal.bytes());
+        // the first segment was replayed and deleted
+        assertEquals(2, segmentCount());
+        journal.close();
+    }
+
+    @Test
+    public void testOpen_afterCrash_resumesAtTheCheckpoint() throws IOException {
+        //Arrange
+        SpoolJournal journal = SpoolJournal.open(directory, SEGMENT_SIZE, false);
+        for (int i = 0; i < 10; i++) {
+            journal.append(payload(i));
+        }
+        journal.commit(journal.read(5));
+        // read but not committed, the crash comes before the acknowledgement
+        journal.read(3);
+
+        //Act
+        // no close(), the mappings of the old journal are what a killed process leaves in the page cache
+        SpoolJournal reopened = SpoolJournal.open(directory, SEGMENT_SIZE, false);
+        reopened.append(payload(10));
+
+        //Assert
+        assertEquals(6, reopened.records());
+        assertEquals(List.of(5, 6, 7, 8, 9, 10), numbers(reopened.read(100)));
+        reopened.close();
+    }
+
+    @Test
+    public void testOpen_withTornLastRecord_dropsItAndAppendsInItsPlace() throws IOException {
+        //Arrange
+        SpoolJournal journal = SpoolJournal.open(directory, SEGMENT_SIZE, false);
+        for (int i = 0; i < 3; i++) {
+            journal.append(payload(i));
+        }
+        journal.close();
+        // the third record has its length but only part of its payload
+        try (FileChannel segment = FileChannel.open(onlySegment(), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[10]), 2L * (SpoolJournal.RECORD_HEADER_SIZE + 24) + SpoolJournal.RECORD_HEADER_SIZE + 14);
+        }
+
+        //Act
+        SpoolJournal reopened = SpoolJournal.open(directory, SEGMENT_SIZE, false);
+        reopened.append(payload(3));
+
+        //Assert
+        assertEquals(List.of(0, 1, 3), numbers(reopened.read(100)));
+        reopened.close();
+    }
+
+    /*
+    * 24 bytes: "spooled product 00000042"
+    * */
+    private static byte[] payload(int number) {
+        return String.format("spooled product %08d", number).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static List<Integer> numbers(SpoolJournal.Batch batch) {
+        return batch.payloads().stream()
+                .map(payload -> Integer.parseInt(new String(payload, 16, 8, StandardCharsets.US_ASCII)))
+                .toList();
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).count();
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.codedecode.kafkademo.tracing;
+
+import com.codedecode.kafkademo.model.ProductCreateMode;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PublishLatencyTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PublishLatency publishLatency;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        publishLatency = new PublishLatency(meterRegistry);
+    }
+
+    @Test
+    public void testSent_whenPartitionsAreSeenOutOfOrder_recordsBothStagesPerPartition() {
+        //Arrange
+        long startedNanos = System.nanoTime() - Duration.ofMillis(30).toNanos();
+        long appendedNanos = startedNanos + Duration.ofMillis(10).toNanos();
+
+        //Act
+        publishLatency.sent(2, startedNanos, appendedNanos);
+        publishLatency.sent(0, startedNanos, appendedNanos);
+        publishLatency.sent(2, startedNanos, appendedNanos);
+
+        //Assert
+        assertEquals(2, stage("append", 2).count());
+        assertEquals(2, stage("broker_ack", 2).count());
+        assertEquals(1, stage("append", 0).count());
+        assertEquals(0, stage("append", 1).count());
+        assertEquals(10, stage("append", 0).totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertTrue(stage("broker_ack", 0).totalTime(TimeUnit.MILLISECONDS) >= 20);
+    }
+
+    @Test
+    public void testCreated_recordsPerMode() {
+        //Act
+        publishLatency.created(ProductCreateMode.ACCEPT, System.nanoTime());
+        publishLatency.createdInBulk(System.nanoTime());
+
+        //Assert
+        assertEquals(1, meterRegistry.get("product.create.latency").tag("mode", "accept").timer().count());
+        assertEquals(0, meterRegistry.get("product.create.latency").tag("mode", "sync").timer().count());
+        assertEquals(1, meterRegistry.get("product.create.latency").tag("mode", "bulk").timer().count());
+    }
+
+    private Timer stage(String stage, int partition) {
+        return meterRegistry.get("product.created.event.publish.latency")
+                .tag("stage", stage).tag("partition", String.valueOf(partition)).timer();
+    }
+}